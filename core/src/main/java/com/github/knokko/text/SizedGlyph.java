@@ -59,7 +59,7 @@ public class SizedGlyph {
 
 	@Override
 	public int hashCode() {
-		return id ^ faceIndex ^ size ^ scale;
+		return 31 * (31 * (31 * id + faceIndex) + size) + scale;
 	}
 
 	@Override
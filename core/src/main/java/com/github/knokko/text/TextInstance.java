@@ -6,14 +6,41 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.util.freetype.FT_Face;
 import org.lwjgl.util.freetype.FreeType;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static com.github.knokko.text.FreeTypeFailureException.assertFtSuccess;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.util.freetype.FreeType.*;
 
 /**
  * The 'root' of the text renderer hierarchy. Anything in this library requires a <i>TextInstance</i>, either
- * directly or indirectly. You should create 1 <i>TextInstance</i> per FT_Library... so usually just 1. This class is
- * completely thread-safe.
+ * directly or indirectly. You should usually create just 1 <i>TextInstance</i>. This class is completely thread-safe.
+ * <p>
+ *     Each <i>TextInstance</i> owns 1 or more <i>FT_Library</i>s, which are called <i>shards</i>. FreeType requires
+ *     that faces of the same library are not created or destroyed concurrently, so each shard has its own lock.
+ *     Threads are assigned to the shards in a round-robin fashion, so using more shards allows more threads to
+ *     create faces at the same time.
+ * </p>
+ * Regarding sharing between shards:
+ * <ul>
+ *     <li>
+ *         The font data (the files or <i>ByteBuffer</i>s of a <i>FontData</i>) is shared by all shards. It is only
+ *         read by FreeType.
+ *     </li>
+ *     <li>
+ *         An <i>FT_Face</i> belongs to the shard that created it, and must be destroyed using
+ *         {@link #destroyFreeTypeFace}. A face can be used from any thread, but only by 1 thread at a time.
+ *     </li>
+ *     <li>
+ *         An <i>FT_Size</i> and the glyph slot of a face belong to that face, so they are never shared.
+ *     </li>
+ *     <li>
+ *         The <i>hb_face_t</i>s and immutable <i>hb_font_t</i>s of the HarfBuzz shaping backend don't use FreeType
+ *         at all, so they can be shared by all threads.
+ *     </li>
+ * </ul>
  */
 public class TextInstance {
 
@@ -29,14 +56,35 @@ public class TextInstance {
 		}
 	}
 
-	private final long ftLibrary;
+	private static long[] createLibraries(int numShards) {
+		if (numShards <= 0) throw new IllegalArgumentException("numShards (" + numShards + ") must be positive");
+		long[] libraries = new long[numShards];
+		for (int index = 0; index < numShards; index++) libraries[index] = createLibrary();
+		return libraries;
+	}
+
+	private final long[] ftLibraries;
+	private final Object[] shardLocks;
+	private final Map<Long, Integer> faceShards = new ConcurrentHashMap<>();
+
+	private final AtomicInteger nextShard = new AtomicInteger();
+	private final ThreadLocal<Integer> threadShard;
+
+	private TextInstance(long[] ftLibraries) {
+		this.ftLibraries = ftLibraries;
+		this.shardLocks = new Object[ftLibraries.length];
+		for (int index = 0; index < shardLocks.length; index++) shardLocks[index] = new Object();
+		this.threadShard = ThreadLocal.withInitial(
+				() -> Math.floorMod(nextShard.getAndIncrement(), ftLibraries.length)
+		);
+	}
 
 	/**
-	 * Creates a <i>TextInstance</i> that will use the given <i>FT_Library</i>. This constructor is recommended when
-	 * you want to create and/or also use the FT_Library yourself.
+	 * Creates a <i>TextInstance</i> that will use the given <i>FT_Library</i> as its only shard. This constructor is
+	 * recommended when you want to create and/or also use the FT_Library yourself.
 	 */
 	public TextInstance(long ftLibrary) {
-		this.ftLibrary = ftLibrary;
+		this(new long[] { ftLibrary });
 	}
 
 	/**
@@ -44,20 +92,98 @@ public class TextInstance {
 	 * use the <i>FT_Library</i> yourself.
 	 */
 	public TextInstance() {
-		this(createLibrary());
+		this(createLibraries(1));
+	}
+
+	/**
+	 * Creates a new <i>TextInstance</i> with {@code numShards} new <i>FT_Library</i>s. This is recommended when many
+	 * threads need to create faces at the same time.
+	 */
+	public static TextInstance sharded(int numShards) {
+		return new TextInstance(createLibraries(numShards));
+	}
+
+	/**
+	 * This method is recommended for internal library use only. It creates a FT_Face from a source, using the shard
+	 * of the current thread.
+	 */
+	public FT_Face createFreeTypeFace(FreeTypeFaceSource source, MemoryStack stack) {
+		return createFreeTypeFace(source, stack, threadShard.get());
+	}
+
+	/**
+	 * This method is recommended for internal library use only. It creates a FT_Face from a source, using the given
+	 * shard.
+	 */
+	public FT_Face createFreeTypeFace(FreeTypeFaceSource source, MemoryStack stack, int shard) {
+		FT_Face face;
+		synchronized (shardLocks[shard]) {
+			face = source.createFreeTypeFace(ftLibraries[shard], stack);
+		}
+		faceShards.put(face.address(), shard);
+		return face;
+	}
+
+	/**
+	 * This method is recommended for internal library use only. It destroys a face that was created using
+	 * {@link #createFreeTypeFace}.
+	 */
+	public void destroyFreeTypeFace(FT_Face face) {
+		Integer shard = faceShards.remove(face.address());
+		if (shard == null) throw new IllegalArgumentException("The face was not created by this instance");
+		synchronized (shardLocks[shard]) {
+			assertFtSuccess(FT_Done_Face(face), "Done_Face", "TextInstance.destroyFreeTypeFace");
+		}
+	}
+
+	/**
+	 * This method is recommended for internal library use only. It returns the shard that
+	 * {@link #createFreeTypeFace(FreeTypeFaceSource, MemoryStack)} uses on the current thread.
+	 */
+	public int getCurrentShard() {
+		return threadShard.get();
+	}
+
+	/**
+	 * @return The number of <i>FT_Library</i> shards of this instance
+	 */
+	public int getNumShards() {
+		return ftLibraries.length;
 	}
 
 	/**
-	 * This method is recommended for internal library use only. It creates a FT_Face from a source
+	 * This method is recommended for internal library use only. It returns the <i>FT_Library</i> of the given shard.
+	 * Note that you must synchronize on {@link #getShardLock} when you create or destroy faces in this library.
 	 */
-	public synchronized FT_Face createFreeTypeFace(FreeTypeFaceSource source, MemoryStack stack) {
-		return source.createFreeTypeFace(ftLibrary, stack);
+	public long getFreeTypeLibrary(int shard) {
+		return ftLibraries[shard];
+	}
+
+	/**
+	 * This method is recommended for internal library use only. It returns the object that must be synchronized on
+	 * while creating or destroying faces of the given shard.
+	 */
+	public Object getShardLock(int shard) {
+		return shardLocks[shard];
+	}
+
+	/**
+	 * @return The version of the FreeType library, formatted like "2.13.2"
+	 */
+	public String getFreeTypeVersion() {
+		try (var stack = stackPush()) {
+			var pMajor = stack.callocInt(1);
+			var pMinor = stack.callocInt(1);
+			var pPatch = stack.callocInt(1);
+			FT_Library_Version(ftLibraries[0], pMajor, pMinor, pPatch);
+			return pMajor.get(0) + "." + pMinor.get(0) + "." + pPatch.get(0);
+		}
 	}
 
 	/**
 	 * You should call this method when you no longer need this instance, nor any of its children.
 	 */
 	public void destroy() {
-		FT_Done_FreeType(ftLibrary);
+		for (long ftLibrary : ftLibraries) FT_Done_FreeType(ftLibrary);
 	}
 }
@@ -0,0 +1,127 @@
+package com.github.knokko.text.bitmap;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+
+/**
+ * An alternative to the slot-based {@link BitmapGlyphsBuffer} that treats the buffer as a 2D atlas of
+ * {@link #getAtlasWidth()} by {@link #getAtlasHeight()} pixels, and packs each whole glyph into a rectangle of this
+ * atlas using a shelf packer. Every glyph is stored in exactly 1 section, so every placed glyph will be rendered
+ * using exactly 1 {@link GlyphQuad}.
+ * <p>
+ *     The {@link GlyphQuad#sectionWidth} of the quads will be the atlas width, since that is the distance between
+ *     the rows of a glyph in the buffer. The built-in renderers already handle this.
+ * </p>
+ */
+public class AtlasGlyphsBuffer extends BitmapGlyphsBuffer {
+
+	private final int atlasWidth;
+	private final ShelfPacker packer;
+
+	/**
+	 * Constructs a new <i>AtlasGlyphsBuffer</i> that will store the rasterized glyphs in a 'buffer' starting at
+	 * memory address <i>address</i>, with a size of <i>size</i> bytes.
+	 * @param address The start memory address of the glyph buffer
+	 * @param size The size of the glyph buffer, in bytes
+	 * @param atlasWidth The width of the atlas, in pixels (bytes). The atlas height will be {@code size / atlasWidth}.
+	 *                   This must be at least as large as the width of the widest glyph.
+	 */
+	public AtlasGlyphsBuffer(long address, int size, int atlasWidth) {
+		this(address, size, atlasWidth, GlyphStorageFormat.INTENSITY_8);
+	}
+
+	/**
+	 * Constructs a new <i>AtlasGlyphsBuffer</i> that will store the rasterized glyphs in the given format. The atlas
+	 * height will be {@code size * format.texelsPerByte() / atlasWidth}.
+	 * @param address The start memory address of the glyph buffer
+	 * @param size The size of the glyph buffer, in bytes
+	 * @param atlasWidth The width of the atlas, in pixels (texels)
+	 * @param format The format in which the glyph intensities will be stored
+	 */
+	public AtlasGlyphsBuffer(long address, int size, int atlasWidth, GlyphStorageFormat format) {
+		super(memByteBuffer(address, size), format);
+		if (atlasWidth <= 0 || atlasWidth > size * format.texelsPerByte()) {
+			throw new IllegalArgumentException("Invalid atlas width " + atlasWidth + " for size " + size);
+		}
+		this.atlasWidth = atlasWidth;
+		this.packer = new ShelfPacker(atlasWidth, getAtlasHeight());
+	}
+
+	/**
+	 * Constructs a new <i>AtlasGlyphsBuffer</i> with an atlas width of 1024 pixels
+	 * @param address The start memory address of the glyph buffer
+	 * @param size The size of the glyph buffer, in bytes
+	 */
+	public AtlasGlyphsBuffer(long address, int size) {
+		this(address, size, 1024);
+	}
+
+	/**
+	 * @return The width of the atlas, in pixels. This is also the row stride of all glyphs in the buffer, in texels.
+	 */
+	public int getAtlasWidth() {
+		return atlasWidth;
+	}
+
+	/**
+	 * @return The height of the atlas, in pixels
+	 */
+	public int getAtlasHeight() {
+		return getTexelCapacity() / atlasWidth;
+	}
+
+	@Override
+	List<BitmapGlyphSection> storeSections(ByteBuffer bitmap, int bitmapWidth, int bitmapHeight) {
+		if (bitmapWidth == 0 || bitmapHeight == 0) return Collections.emptyList();
+		if (bitmapWidth > atlasWidth) throw new GlyphBufferCapacityException();
+
+		int index = packer.allocate(bitmapWidth, bitmapHeight);
+		while (index == -1) {
+			evictGlyph();
+			index = packer.allocate(bitmapWidth, bitmapHeight);
+		}
+		return List.of(new BitmapGlyphSection(index, 0, 0, bitmapWidth, bitmapHeight));
+	}
+
+	@Override
+	void freeSections(List<BitmapGlyphSection> sections) {
+		for (var section : sections) packer.free(section.bufferIndex(), section.width(), section.height());
+	}
+
+	@Override
+	int relocate(BitmapGlyphSection section) {
+		int newIndex = packer.allocate(section.width(), section.height());
+		if (newIndex == -1) return section.bufferIndex();
+
+		if (newIndex < section.bufferIndex()) {
+			packer.free(section.bufferIndex(), section.width(), section.height());
+			return newIndex;
+		} else {
+			packer.free(newIndex, section.width(), section.height());
+			return section.bufferIndex();
+		}
+	}
+
+	@Override
+	int getRowStride(BitmapGlyphSection section) {
+		return atlasWidth;
+	}
+
+	@Override
+	int getFootprint(BitmapGlyphSection section) {
+		return section.width() * section.height();
+	}
+
+	@Override
+	int getStorageCapacity() {
+		return atlasWidth * getAtlasHeight();
+	}
+
+	@Override
+	int getFreeSpace() {
+		return packer.getFreeArea();
+	}
+}
@@ -13,50 +13,86 @@ import java.util.List;
  * @param offsetY The lowest Y-coordinate of the rasterized glyph section that is stored here
  * @param width The width of the rasterized glyph section, in pixels
  * @param height The height of the rasterized glyph section, in pixels
+ * @param page The page in which the section is stored. This is 0 unless the section is stored in a spill-over page,
+ *             see {@link GlyphPageProvider}.
  */
-public record BitmapGlyphSection(int bufferIndex, int offsetX, int offsetY, int width, int height) {
+public record BitmapGlyphSection(int bufferIndex, int offsetX, int offsetY, int width, int height, int page) {
+
+	/**
+	 * Constructs a section that is stored in page 0, which is the glyphs buffer itself
+	 */
+	public BitmapGlyphSection(int bufferIndex, int offsetX, int offsetY, int width, int height) {
+		this(bufferIndex, offsetX, offsetY, width, height, 0);
+	}
 
-	@SuppressWarnings("SuspiciousNameCombination")
 	static List<BitmapGlyphSection> coverRectangle(
 			int slotSize, int width, int height,
 			BufferSlotAllocator allocator
 	) {
 		if (width < 0 || height < 0) throw new IllegalArgumentException();
 		if (width == 0 || height == 0) return Collections.emptyList();
+		return coverRectangle(planRectangle(slotSize, width, height), allocator);
+	}
 
-		var rowWise = coverRectangleRowWise(slotSize, width, height);
-		var columnWise = coverRectangleRowWise(slotSize, height, width);
+	/**
+	 * Instantiates the sections of the given tiling plan, and asks the allocator for their buffer indices. Sections
+	 * for which the allocator returns -1 are skipped.
+	 * @param plan A tiling plan that was created by {@link #planRectangle}
+	 */
+	static List<BitmapGlyphSection> coverRectangle(int[] plan, BufferSlotAllocator allocator) {
+		List<BitmapGlyphSection> result = new ArrayList<>(plan.length / 4);
+		for (int index = 0; index < plan.length; index += 4) {
+			int offsetX = plan[index];
+			int offsetY = plan[index + 1];
+			int width = plan[index + 2];
+			int height = plan[index + 3];
 
-		int resultSize = Math.min(rowWise.size(), columnWise.size());
-		List<BitmapGlyphSection> result = new ArrayList<>(resultSize);
+			int bufferIndex = allocator.allocateIndex(offsetX, offsetY, width, height);
+			if (bufferIndex == -1) continue;
+			result.add(new BitmapGlyphSection(bufferIndex, offsetX, offsetY, width, height));
+		}
+		return result;
+	}
 
-		for (int index = 0; index < resultSize; index++) {
+	/**
+	 * Computes how a rectangle of the given size should be split into sections of at most {@code slotSize} pixels.
+	 * Both a row-wise and a column-wise tiling are considered, and the one with the fewest sections is chosen.
+	 * @return The tiling plan: section i is described by (offsetX, offsetY, width, height) at indices
+	 * {@code 4i} to {@code 4i + 3}
+	 */
+	@SuppressWarnings("SuspiciousNameCombination")
+	static int[] planRectangle(int slotSize, int width, int height) {
+		if (width < 0 || height < 0) throw new IllegalArgumentException();
+		if (width == 0 || height == 0) return new int[0];
 
-			BitmapGlyphSection dummy;
-			if (rowWise.size() <= columnWise.size()) {
-				dummy = rowWise.get(index);
-			} else {
-				BitmapGlyphSection section = columnWise.get(index);
-				dummy = new BitmapGlyphSection(0, section.offsetY, section.offsetX, section.height, section.width);
-			}
+		int numRowWise = tileRowWise(slotSize, width, height, null, false);
+		int numColumnWise = tileRowWise(slotSize, height, width, null, true);
 
-			int bufferIndex = allocator.allocateIndex(dummy.offsetX, dummy.offsetY, dummy.width, dummy.height);
-			if (bufferIndex == -1) continue;
-			result.add(new BitmapGlyphSection(bufferIndex, dummy.offsetX, dummy.offsetY, dummy.width, dummy.height));
+		if (numRowWise <= numColumnWise) {
+			int[] plan = new int[4 * numRowWise];
+			tileRowWise(slotSize, width, height, plan, false);
+			return plan;
+		} else {
+			int[] plan = new int[4 * numColumnWise];
+			tileRowWise(slotSize, height, width, plan, true);
+			return plan;
 		}
-
-		return result;
 	}
 
-	private static List<BitmapGlyphSection> coverRectangleRowWise(int slotSize, int width, int height) {
+	/**
+	 * Splits the rectangle row by row, and stores the sections in {@code plan} (unless it is null)
+	 * @param transpose True if the width and height were swapped by the caller, in which case the coordinates and
+	 *                  sizes of the sections will be swapped back before they are stored in the plan
+	 * @return The number of sections
+	 */
+	private static int tileRowWise(int slotSize, int width, int height, int[] plan, boolean transpose) {
 		int desiredSlotWidth = (int) Math.sqrt(slotSize);
 		int desiredNumColumns = Math.max(1, width / desiredSlotWidth);
 		int slotWidth = width / desiredNumColumns;
 		if (slotWidth * desiredNumColumns < width) slotWidth += 1;
 		int slotHeight = slotSize / slotWidth;
 
-		List<BitmapGlyphSection> sections = new ArrayList<>((1 + width / slotWidth) * (1 + height / slotHeight));
-
+		int numSections = 0;
 		int x;
 		int y = 0;
 		while (y < height) {
@@ -64,17 +100,26 @@ public record BitmapGlyphSection(int bufferIndex, int offsetX, int offsetY, int
 			x = 0;
 			while (x < width) {
 				int currentWidth = Math.min(Math.max(slotWidth, slotSize / slotHeight), width - x);
-				sections.add(new BitmapGlyphSection(0, x, y, currentWidth, slotHeight));
+				if (plan != null) {
+					int index = 4 * numSections;
+					plan[index] = transpose ? y : x;
+					plan[index + 1] = transpose ? x : y;
+					plan[index + 2] = transpose ? slotHeight : currentWidth;
+					plan[index + 3] = transpose ? currentWidth : slotHeight;
+				}
+				numSections += 1;
 				x += currentWidth;
 			}
 			y += slotHeight;
 		}
 
-		return sections;
+		return numSections;
 	}
 
 	@Override
 	public String toString() {
-		return "BGSection(index=" + bufferIndex + ", rect=(" + offsetX + ", " + offsetY + ", " + width + ", " + height + "))";
+		String pageString = page != 0 ? ", page=" + page : "";
+		return "BGSection(index=" + bufferIndex + pageString + ", rect=(" + offsetX + ", " + offsetY + ", " +
+				width + ", " + height + "))";
 	}
 }
@@ -5,6 +5,10 @@ import com.github.knokko.text.placement.PlacedGlyph;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.lwjgl.system.MemoryUtil.memByteBuffer;
 
@@ -19,13 +23,51 @@ import static org.lwjgl.system.MemoryUtil.memByteBuffer;
  */
 public class BitmapGlyphsBuffer {
 
-	private final Map<GlyphKey, BufferedBitmapGlyph> glyphMap = new HashMap<>();
-	private final SortedSet<BufferedBitmapGlyph> glyphSet = new TreeSet<>();
-	private final List<Integer> bufferSlots = new ArrayList<>();
-	private final ByteBuffer buffer;
+	private static final int MAX_TILING_PLANS = 4096;
+
+	private final GlyphMap glyphMap = new GlyphMap();
+	// The variant IDs are read by peekGlyph, which may run concurrently with packKey
+	private final Map<GlyphVariant, Integer> variantIDs = new ConcurrentHashMap<>();
+	private final Map<VariantFamily, List<VariantSize>> variantSizes = new HashMap<>();
+	private GlyphVariant lastVariant;
+	private int lastVariantID;
+	private BufferedBitmapGlyph oldestGlyph, newestGlyph;
+	private int recentFootprint;
+	private GlyphEvictionPolicy evictionPolicy = GlyphEvictionPolicy.leastRecentlyUsed();
+	private long evictionCandidate;
+	private int evictionCandidateSize;
+	private int pinnedFootprint;
+	private FreeSlots freeSlots;
+	ByteBuffer buffer;
+	final GlyphStorageFormat format;
 	private final int slotSize;
+	private boolean preferContiguousSlots;
+
+	private long compactionBudget;
+	private GlyphMoveListener moveListener;
+	private BufferedBitmapGlyph compactionCursor;
+	private boolean compactionFinished, movedDuringPass;
+
+	private final DirtyRanges dirtyRanges = new DirtyRanges();
+
+	private final Map<Long, int[]> tilingPlans = new HashMap<>();
+
+	private SpillPages spillPages;
+
+	private final InkBounds inkBounds = new InkBounds();
+	private boolean deduplicateBitmaps;
+	private final Map<Long, SharedBitmap> sharedBitmaps = new HashMap<>();
+	private ByteBuffer trimBuffer;
+
+	private RasterizationBudget rasterizationBudget;
+
+	private GlyphMemoryResizer resizer;
+	private int minResizeSize, maxResizeSize, shrinkDelay, lowUseFrames;
 
 	private long currentFrame;
+	private boolean trackFrameCompletion;
+	private final ArrayDeque<Long> pendingFrames = new ArrayDeque<>();
+	private boolean shared;
 
 	/**
 	 * Constructs a new <i>BitmapGlyphsBuffer</i> that will store the rasterized glyphs in a 'buffer' starting at
@@ -41,11 +83,34 @@ public class BitmapGlyphsBuffer {
 	 *                 slot size is 120 (bytes), which is divisible by quite some numbers.
 	 */
 	public BitmapGlyphsBuffer(long address, int size, int slotSize) {
+		this(address, size, slotSize, GlyphStorageFormat.INTENSITY_8);
+	}
+
+	/**
+	 * Constructs a new <i>BitmapGlyphsBuffer</i> that will store the rasterized glyphs in the given format. When a
+	 * packed format is used, the slot size, the buffer indices, and the row strides are measured in texels rather
+	 * than bytes, see {@link GlyphStorageFormat}.
+	 * @param address The start memory address of the glyph buffer
+	 * @param size The size of the glyph buffer, in bytes
+	 * @param slotSize The 'slot size', in texels, see {@link #BitmapGlyphsBuffer(long, int, int)}
+	 * @param format The format in which the glyph intensities will be stored
+	 */
+	public BitmapGlyphsBuffer(long address, int size, int slotSize, GlyphStorageFormat format) {
 		this.buffer = memByteBuffer(address, size);
+		this.format = format;
 		this.slotSize = slotSize;
+		this.freeSlots = new FreeSlots(size * format.texelsPerByte() / slotSize);
+	}
 
-		int numSlots = size / slotSize;
-		for (int index = numSlots - 1; index >= 0; index--) bufferSlots.add(index);
+	/**
+	 * This constructor is meant for subclasses that don't use slots. They must override all package-private methods
+	 * that use slots.
+	 */
+	BitmapGlyphsBuffer(ByteBuffer buffer, GlyphStorageFormat format) {
+		this.buffer = buffer;
+		this.format = format;
+		this.slotSize = 0;
+		this.freeSlots = null;
 	}
 
 	/**
@@ -58,12 +123,413 @@ public class BitmapGlyphsBuffer {
 		this(address, size, 120);
 	}
 
+	/**
+	 * @return The format in which this buffer stores the glyph intensities
+	 */
+	public GlyphStorageFormat getStorageFormat() {
+		return format;
+	}
+
+	/**
+	 * When {@code preferContiguousSlots} is true, this buffer will try to store each glyph that is larger than the
+	 * slot size in adjacent slots, such that the whole glyph can be rendered using a single {@link GlyphQuad}. When
+	 * there are not enough adjacent free slots, the glyph will be split in multiple sections as usual.
+	 * <p>
+	 *     Note that this reduces the number of quads to render, at the cost of also storing the fully transparent
+	 *     parts within the ink bounds of such glyphs. This is false by default.
+	 * </p>
+	 * This method must be called <b>before</b> using this buffer.
+	 */
+	public void setPreferContiguousSlots(boolean preferContiguousSlots) {
+		this.preferContiguousSlots = preferContiguousSlots;
+	}
+
+	/**
+	 * Enables incremental compaction: during each call to {@link #startFrame()}, this buffer will spend at most
+	 * {@code nanosPerFrame} nanoseconds on moving glyphs to free space with a lower buffer index. This moves the free
+	 * space towards the end of the buffer, which prevents fragmentation from causing
+	 * {@link GlyphBufferCapacityException}s while there is plenty of free space left. This is mostly useful for
+	 * the {@link AtlasGlyphsBuffer}, the {@link BuddyGlyphsBuffer}, and when contiguous slots are preferred.
+	 * <p>
+	 *     Note that the sections and quads that were returned <b>before</b> the call to <i>startFrame</i> may become
+	 *     invalid, so you should not use them anymore.
+	 * </p>
+	 * This method must be called <b>before</b> using this buffer.
+	 * @param nanosPerFrame The maximum time to spend on compaction per frame, in nanoseconds. When this is 0 (the
+	 *                      default), compaction is disabled.
+	 * @param moveListener The listener that will be notified about every texel range that is moved, or null
+	 */
+	public void setCompactionBudget(long nanosPerFrame, GlyphMoveListener moveListener) {
+		if (nanosPerFrame < 0) throw new IllegalArgumentException("Budget (" + nanosPerFrame + ") must not be negative");
+		this.compactionBudget = nanosPerFrame;
+		this.moveListener = moveListener;
+	}
+
+	/**
+	 * When {@code trackFrameCompletion} is true, this buffer won't evict or move glyphs that were used during a frame
+	 * until {@link #frameCompleted(long)} has been called for that frame. This allows a single glyph buffer to be
+	 * shared by multiple frames in flight: the space of a glyph will only be reused after every frame that could
+	 * still read it has completed. This is false by default, in which case glyphs can be evicted as soon as the next
+	 * frame starts.
+	 * <p>
+	 *     Note that {@link #countAvailableSpace()} only takes the current frame into account, so it can be too
+	 *     optimistic when this is true.
+	 * </p>
+	 * This method must be called <b>before</b> using this buffer.
+	 */
+	public void setTrackFrameCompletion(boolean trackFrameCompletion) {
+		this.trackFrameCompletion = trackFrameCompletion;
+	}
+
+	/**
+	 * @return True if frame completion is tracked, see {@link #setTrackFrameCompletion(boolean)}
+	 */
+	public boolean isTrackingFrameCompletion() {
+		return trackFrameCompletion;
+	}
+
+	/**
+	 * Sets the policy that decides which glyph should be evicted when this buffer needs space, see
+	 * {@link GlyphEvictionPolicy}. The default policy evicts the least recently used glyph.
+	 * <p>
+	 *     This method must be called <b>before</b> using this buffer.
+	 * </p>
+	 */
+	public void setEvictionPolicy(GlyphEvictionPolicy evictionPolicy) {
+		this.evictionPolicy = evictionPolicy;
+	}
+
+	/**
+	 * When {@code deduplicateBitmaps} is true, this buffer will hash the (trimmed) bitmap of each rasterized glyph,
+	 * and store glyphs with byte-identical bitmaps only once. This happens surprisingly often, for instance when
+	 * multiple fallback fonts contain the same digits or punctuation, or when a glyph is used with multiple scales.
+	 * The stored bitmap is released once all glyphs that share it have been evicted. This is false by default.
+	 * <p>
+	 *     Glyphs that share their bitmap with another glyph are not moved by compaction.
+	 * </p>
+	 * This method must be called <b>before</b> using this buffer.
+	 */
+	public void setDeduplicateBitmaps(boolean deduplicateBitmaps) {
+		this.deduplicateBitmaps = deduplicateBitmaps;
+	}
+
+	/**
+	 * Limits the amount of time that the <i>bufferGlyphs</i> methods spend on rasterizing new glyphs per frame, so that
+	 * the frame time stays bounded when many new glyphs appear at once (for instance after switching the language or
+	 * zooming). Once the budget of the current frame is exhausted, new glyphs are rasterized in the background
+	 * instead, and they will appear in a later frame. In the meantime, the glyph is drawn using a smaller stored size
+	 * of the same glyph, upscaled by the integer factor that brings it closest to the needed size (for instance size
+	 * 12 upscaled by 2 when size 24 is needed, or size 16 without upscaling when size 20 is needed and size 16 is the
+	 * only smaller size). The glyph is skipped when no smaller size is stored.
+	 * <p>
+	 *     The budget is only used by the <i>bufferGlyphs</i> methods: <i>getSections</i> always rasterizes the glyph
+	 *     immediately. The background rasterizer must rasterize glyphs in the same way as the rasterizers that are
+	 *     passed to <i>bufferGlyphs</i>, but it must be a different instance. You must not destroy it until all tasks
+	 *     of the executor have finished. A glyph that was rasterized in the background is kept for 60 frames, so it
+	 *     won't be rasterized again when it is needed during any of these frames. When the background rasterizer
+	 *     throws an exception for a glyph, that glyph won't be rasterized again: the <i>bufferGlyphs</i> methods will
+	 *     rethrow the exception whenever they need the glyph.
+	 * </p>
+	 * This method must be called <b>before</b> using this buffer.
+	 * @param maxGlyphsPerFrame The maximum number of glyphs that will be rasterized per frame
+	 * @param maxNanosPerFrame The maximum time to spend on rasterizing glyphs per frame, in nanoseconds. Note that the
+	 *                         last glyph that is rasterized during a frame can exceed this budget.
+	 * @param executor The executor on which the background rasterizer will be used
+	 * @param backgroundRasterizer The rasterizer that will rasterize the glyphs that don't fit in the budget
+	 */
+	public void setRasterizationBudget(
+			int maxGlyphsPerFrame, long maxNanosPerFrame, Executor executor, GlyphRasterizer backgroundRasterizer
+	) {
+		this.rasterizationBudget = new RasterizationBudget(
+				maxGlyphsPerFrame, maxNanosPerFrame, executor, backgroundRasterizer
+		);
+	}
+
+	/**
+	 * Makes this buffer resize its memory when needed, which is useful when you own the memory of this buffer and
+	 * don't know in advance how much you need. Whenever this buffer would throw a {@link GlyphBufferCapacityException}
+	 * because all its glyphs are in use, it will double its size (up to {@code maxSize} bytes) instead. When
+	 * {@code shrinkDelay} is positive, this buffer will halve its size (but not below its initial size) after
+	 * {@code shrinkDelay} consecutive frames during which less than a quarter of it was used. The glyphs in the upper
+	 * half are evicted when it shrinks. When 1 of them can't be evicted (for instance because it is pinned or was used
+	 * during the last frame), this buffer won't shrink, and won't evict any of them.
+	 * <p>
+	 *     The buffer indices are relative to the start of this buffer, so the sections and quads stay valid when the
+	 *     memory is resized, but {@link #getPage(int)} will return the new memory. The memory can only be resized
+	 *     during <i>startFrame</i>, <i>getSections</i>, and <i>bufferGlyphs</i>. A resizable buffer can't be shared
+	 *     using a {@link ConcurrentGlyphsBuffer}, and the {@link AtlasGlyphsBuffer} and {@link BuddyGlyphsBuffer}
+	 *     don't support resizing.
+	 * </p>
+	 * This method must be called <b>before</b> using this buffer.
+	 * @param resizer Resizes the memory, for instance {@code MemoryUtil::memRealloc}
+	 * @param maxSize The maximum size of this buffer, in bytes
+	 * @param shrinkDelay The number of consecutive frames with low usage after which this buffer shrinks, or 0 to
+	 *                    never shrink
+	 */
+	public void setAutoResize(GlyphMemoryResizer resizer, int maxSize, int shrinkDelay) {
+		if (freeSlots == null) throw new UnsupportedOperationException(getClass().getSimpleName() + " can't resize");
+		this.resizer = resizer;
+		this.minResizeSize = buffer.capacity();
+		this.maxResizeSize = maxSize;
+		this.shrinkDelay = shrinkDelay;
+	}
+
+	/**
+	 * Prepares this buffer to be shared by a {@link ConcurrentGlyphsBuffer}. The per-frame bookkeeping of
+	 * {@link #startFrame()} (dirty ranges, compaction, resizing, and the rasterization budget) assumes that there is
+	 * only 1 frame at a time, so it is not supported in shared mode.
+	 */
+	void share() {
+		if (resizer != null) throw new IllegalArgumentException("Resizable glyph buffers can't be shared");
+		if (compactionBudget > 0) throw new IllegalArgumentException("Shared glyph buffers can't be compacted");
+		if (rasterizationBudget != null) {
+			throw new IllegalArgumentException("Shared glyph buffers can't have a rasterization budget");
+		}
+		this.trackFrameCompletion = true;
+		this.shared = true;
+	}
+
+	private void checkNotShared() {
+		if (shared) throw new IllegalStateException("This buffer is shared by a ConcurrentGlyphsBuffer");
+	}
+
+	/**
+	 * Makes this buffer store glyphs in spill-over pages when it would otherwise throw a
+	 * {@link GlyphBufferCapacityException} because all its space is used by glyphs of the current frame (or of
+	 * frames that haven't completed yet). The extra pages are requested from the given provider when needed. Each
+	 * spilled glyph is stored as 1 section in 1 page, and the {@link GlyphQuad#page} of its quads will be the index
+	 * of that page. The space in a page is reused once all glyphs in it have been evicted.
+	 * <p>
+	 *     The dirty ranges, compaction, and monitoring methods of this buffer only consider page 0, which is the
+	 *     buffer itself.
+	 * </p>
+	 * This method must be called <b>before</b> using this buffer.
+	 */
+	public void setPageProvider(GlyphPageProvider pageProvider) {
+		this.spillPages = pageProvider != null ? new SpillPages(pageProvider, format) : null;
+	}
+
+	/**
+	 * @return The number of pages: this buffer itself (page 0) plus the number of spill-over pages
+	 */
+	public int getNumPages() {
+		return spillPages != null ? 1 + spillPages.size() : 1;
+	}
+
+	/**
+	 * Gets the memory of the page with the given index, which is this buffer itself when {@code pageIndex} is 0, and
+	 * a spill-over page that was provided by the {@link GlyphPageProvider} otherwise
+	 */
+	public ByteBuffer getPage(int pageIndex) {
+		return pageIndex == 0 ? buffer : spillPages.get(pageIndex);
+	}
+
+	/**
+	 * Gets the byte ranges of this buffer that were modified since the last call to {@link #startFrame()} (including
+	 * the glyphs that were moved by compaction during that call). Overlapping and adjacent ranges are merged, and
+	 * the ranges are sorted by offset. Note that the range of a glyph section includes all bytes between its first
+	 * and last row, which matters for the {@link AtlasGlyphsBuffer}.
+	 * <p>
+	 *     This is useful when the glyph buffer needs to be flushed or copied to another buffer or texture, since only
+	 *     these ranges need to be synchronized.
+	 * </p>
+	 */
+	public List<ByteRange> getDirtyRanges() {
+		checkNotShared();
+		var ranges = new ArrayList<ByteRange>(dirtyRanges.size());
+		for (int index = 0; index < dirtyRanges.size(); index++) {
+			ranges.add(new ByteRange(dirtyRanges.start(index), dirtyRanges.end(index) - dirtyRanges.start(index)));
+		}
+		return ranges;
+	}
+
 	/**
 	 * Starts the next frame. Calling this method allows this glyph buffer to delete glyphs that were rasterized
 	 * <b>before</b> this method call. Old glyphs will be deleted if this buffer needs space for other glyphs.
+	 * @return The token of the new frame. When frame completion is tracked (see
+	 * {@link #setTrackFrameCompletion(boolean)}), you must pass this token to {@link #frameCompleted(long)} once the
+	 * GPU has finished the frame.
 	 */
-	public void startFrame() {
+	public long startFrame() {
+		checkNotShared();
+		if (resizer != null && shrinkDelay > 0) considerShrinking();
+		if (rasterizationBudget != null) rasterizationBudget.startFrame();
 		currentFrame += 1;
+		recentFootprint = 0;
+		dirtyRanges.clear();
+		if (trackFrameCompletion) pendingFrames.addLast(currentFrame);
+		if (compactionBudget > 0) compact(System.nanoTime() + compactionBudget);
+		return currentFrame;
+	}
+
+	/**
+	 * Starts a frame of 1 of the threads that share this buffer via a {@link ConcurrentGlyphsBuffer}. Unlike
+	 * {@link #startFrame()}, this doesn't do any per-frame bookkeeping. Frames of different threads share the same
+	 * frame number until a thread starts a frame while its previous frame had the current number. This way, a glyph
+	 * that is used by 1 thread is also protected for the frames of the other threads in the same round.
+	 * @param previousToken The token of the previous frame of the calling thread, or -1 if it doesn't have one
+	 */
+	long startSharedFrame(long previousToken) {
+		if (currentFrame == 0 || previousToken == currentFrame) {
+			currentFrame += 1;
+			recentFootprint = 0;
+			dirtyRanges.clear();
+		}
+		pendingFrames.addLast(currentFrame);
+		return currentFrame;
+	}
+
+	/**
+	 * Indicates that the frame with the given token (returned by {@link #startFrame()}) has completed, so the glyphs
+	 * that were used during that frame (and not during a later pending frame) can be evicted. This method should only
+	 * be used when frame completion is tracked, see {@link #setTrackFrameCompletion(boolean)}. Frames may be
+	 * completed in any order.
+	 */
+	public void frameCompleted(long frameToken) {
+		if (!trackFrameCompletion) throw new IllegalStateException("Frame completion is not tracked");
+		if (!pendingFrames.remove(frameToken)) {
+			throw new IllegalArgumentException("Frame " + frameToken + " is not pending");
+		}
+	}
+
+	/**
+	 * Halves the size of this buffer when less than a quarter of it was used during each of the last
+	 * {@link #shrinkDelay} frames, see {@link #setAutoResize}
+	 */
+	private void considerShrinking() {
+		int newSize = buffer.capacity() / 2;
+		if (newSize < minResizeSize || 4 * (recentFootprint + pinnedFootprint) >= getStorageCapacity()) {
+			lowUseFrames = 0;
+			return;
+		}
+
+		lowUseFrames += 1;
+		if (lowUseFrames < shrinkDelay) return;
+		lowUseFrames = 0;
+
+		// Find the evictable glyphs in the upper half, and check whether evicting them would free the upper half
+		int newNumSlots = newSize * format.texelsPerByte() / slotSize;
+		long firstUnsafeFrame = getFirstUnsafeFrame();
+		var victims = new ArrayList<BufferedBitmapGlyph>();
+		var sharedVictims = new HashMap<SharedBitmap, Integer>();
+		int releasedSlots = 0;
+		for (var glyph = oldestGlyph; glyph != null && glyph.lastUsed < firstUnsafeFrame; glyph = glyph.next) {
+			var sharedBitmap = glyph.sharedBitmap;
+			int upperSlots = countSlotsFrom(sharedBitmap != null ? sharedBitmap.sections : glyph.sections, newNumSlots);
+			if (upperSlots == 0) continue;
+
+			victims.add(glyph);
+			// The sections of a shared bitmap are only released when all glyphs that use it are evicted
+			if (sharedBitmap == null || sharedVictims.merge(sharedBitmap, 1, Integer::sum) == sharedBitmap.refCount) {
+				releasedSlots += upperSlots;
+			}
+		}
+		if (releasedSlots != freeSlots.countUsedSlots(newNumSlots)) return;
+
+		for (var victim : victims) evict(victim);
+		resize(newSize);
+	}
+
+	/**
+	 * @return The number of slots of the given sections in page 0 whose index is at least {@code firstSlot}
+	 */
+	private int countSlotsFrom(List<BitmapGlyphSection> sections, int firstSlot) {
+		int numSlots = 0;
+		for (var section : sections) {
+			if (section.page() != 0) continue;
+			int startSlot = section.bufferIndex() / slotSize;
+			int endSlot = (section.bufferIndex() + getFootprint(section) - 1) / slotSize;
+			numSlots += Math.max(0, 1 + endSlot - Math.max(startSlot, firstSlot));
+		}
+		return numSlots;
+	}
+
+	/**
+	 * Doubles the size of this buffer (but not beyond its maximum size) when auto-resizing is enabled
+	 * @return true if this buffer has grown, false otherwise
+	 */
+	private boolean grow() {
+		if (resizer == null || buffer.capacity() >= maxResizeSize) return false;
+		resize((int) Math.min(maxResizeSize, 2L * buffer.capacity()));
+		lowUseFrames = 0;
+		return true;
+	}
+
+	private void resize(int newSize) {
+		buffer = resizer.resize(buffer, newSize);
+		freeSlots = freeSlots.resize(newSize * format.texelsPerByte() / slotSize);
+	}
+
+	/**
+	 * @return The first frame that may still read glyphs from this buffer. Glyphs that were last used before this
+	 * frame can be evicted and moved.
+	 */
+	private long getFirstUnsafeFrame() {
+		if (trackFrameCompletion && !pendingFrames.isEmpty()) return pendingFrames.peekFirst();
+		return currentFrame;
+	}
+
+	/**
+	 * Moves glyphs to lower buffer indices until the deadline is reached or no glyph can be moved anymore. This
+	 * walks from the most recently used glyph to the least recently used glyph, so the glyphs that are most likely
+	 * to stay are packed first. The walk continues where it stopped during the previous frame.
+	 */
+	private void compact(long deadline) {
+		while (!compactionFinished && newestGlyph != null) {
+			if (compactionCursor == null) compactionCursor = newestGlyph;
+
+			var glyph = compactionCursor;
+			compactionCursor = glyph.previous;
+			if (compactGlyph(glyph)) movedDuringPass = true;
+
+			if (compactionCursor == null) {
+				// A whole pass without moving anything means that compaction is done until space is freed again
+				if (!movedDuringPass) compactionFinished = true;
+				movedDuringPass = false;
+			}
+
+			if (System.nanoTime() - deadline >= 0) return;
+		}
+	}
+
+	private boolean compactGlyph(BufferedBitmapGlyph glyph) {
+		if (glyph.lastUsed >= getFirstUnsafeFrame()) return false;
+		var sharedBitmap = glyph.sharedBitmap;
+		if (sharedBitmap != null && sharedBitmap.refCount > 1) return false;
+
+		List<BitmapGlyphSection> newSections = null;
+		for (int index = 0; index < glyph.sections.size(); index++) {
+			var section = glyph.sections.get(index);
+			if (section.page() != 0) continue;
+			int newIndex = relocate(section);
+			if (newIndex == section.bufferIndex()) continue;
+
+			int rowStride = getRowStride(section);
+			for (int y = 0; y < section.height(); y++) {
+				int rowOffset = y * rowStride;
+				format.copyTexels(buffer, section.bufferIndex() + rowOffset, newIndex + rowOffset, section.width());
+			}
+			int length = (section.height() - 1) * rowStride + section.width();
+			markDirty(newIndex, newIndex + length);
+			if (moveListener != null) moveListener.glyphMoved(section.bufferIndex(), newIndex, length);
+
+			if (newSections == null) newSections = new ArrayList<>(glyph.sections);
+			newSections.set(index, new BitmapGlyphSection(
+					newIndex, section.offsetX(), section.offsetY(), section.width(), section.height()
+			));
+		}
+
+		if (newSections == null) return false;
+		if (sharedBitmap != null) {
+			var oldSection = glyph.sections.get(0);
+			var sharedSection = sharedBitmap.sections.get(0);
+			sharedBitmap.sections = shiftSections(
+					newSections, sharedSection.offsetX() - oldSection.offsetX(),
+					sharedSection.offsetY() - oldSection.offsetY()
+			);
+		}
+		glyph.sections = newSections;
+		return true;
 	}
 
 	/**
@@ -77,36 +543,226 @@ public class BitmapGlyphsBuffer {
 	 */
 	public List<GlyphQuad> bufferGlyphs(GlyphRasterizer rasterizer, List<PlacedGlyph> placedGlyphs) {
 		var glyphQuads = new ArrayList<GlyphQuad>(placedGlyphs.size());
-		for (var placedGlyph : placedGlyphs) {
+		bufferGlyphs(
+				rasterizer, placedGlyphs, Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+				new QuadCollector(glyphQuads)
+		);
+		return glyphQuads;
+	}
+
+	/**
+	 * Does the same as {@link #bufferGlyphs(GlyphRasterizer, List)}, except that the quads are passed to the given
+	 * {@link GlyphQuadSink} rather than being returned as a list of {@link GlyphQuad} objects, and that the quads
+	 * that are completely outside the given clip rectangle are skipped. Glyphs that are certainly outside the clip
+	 * rectangle won't even be rasterized. This method doesn't allocate any memory when all glyphs are already in
+	 * this buffer, which is useful for renderers that need to put the quads in a (mapped) buffer anyway.
+	 * @param rasterizer The rasterizer that should render the glyphs
+	 * @param placedGlyphs The glyphs to be rasterized
+	 * @param clipMinX The minimum x-coordinate of the visible area, in pixels
+	 * @param clipMinY The minimum y-coordinate of the visible area, in pixels
+	 * @param clipMaxX The maximum x-coordinate of the visible area, in pixels (inclusive)
+	 * @param clipMaxY The maximum y-coordinate of the visible area, in pixels (inclusive)
+	 * @param sink The sink that will receive the quads
+	 * @return The number of quads that were passed to the sink
+	 * @throws GlyphBufferCapacityException When there is not enough space left in the glyph buffer to rasterize
+	 * the glyphs
+	 */
+	public int bufferGlyphs(
+			GlyphRasterizer rasterizer, List<PlacedGlyph> placedGlyphs,
+			int clipMinX, int clipMinY, int clipMaxX, int clipMaxY, GlyphQuadSink sink
+	) {
+		int numQuads = 0;
+		for (int glyphIndex = 0; glyphIndex < placedGlyphs.size(); glyphIndex++) {
+			var placedGlyph = placedGlyphs.get(glyphIndex);
+			if (isOutside(placedGlyph, clipMinX, clipMinY, clipMaxX, clipMaxY)) continue;
+
 			int scale = placedGlyph.glyph.scale;
-			var sections = getSections(rasterizer, placedGlyph.glyph, placedGlyph.request.userData);
+			List<BitmapGlyphSection> sections;
+			if (rasterizationBudget != null) {
+				var bufferedGlyph = getGlyphWithinBudget(rasterizer, placedGlyph.glyph, placedGlyph.request.userData);
+				if (bufferedGlyph == null) continue;
+				scale *= placedGlyph.glyph.size / bufferedGlyph.glyph.size;
+				sections = bufferedGlyph.sections;
+			} else sections = getSections(rasterizer, placedGlyph.glyph, placedGlyph.request.userData);
+			numQuads += addQuads(placedGlyph, sections, scale, clipMinX, clipMinY, clipMaxX, clipMaxY, sink);
+		}
+
+		return numQuads;
+	}
+
+	/**
+	 * Passes the quads of the given sections of the given glyph to the sink, except the quads that are outside the
+	 * clip rectangle or the bounds of the request of the glyph. This method only reads the sections, so
+	 * {@link ConcurrentGlyphsBuffer} can call it without holding its lock.
+	 * @param scale The scale of the quads, which is larger than the scale of the glyph when the sections belong to a
+	 *              smaller size of the glyph
+	 * @return The number of quads that were passed to the sink
+	 */
+	int addQuads(
+			PlacedGlyph placedGlyph, List<BitmapGlyphSection> sections, int scale,
+			int clipMinX, int clipMinY, int clipMaxX, int clipMaxY, GlyphQuadSink sink
+	) {
+		int numQuads = 0;
+		for (int sectionIndex = 0; sectionIndex < sections.size(); sectionIndex++) {
+			var section = sections.get(sectionIndex);
+			int desiredMinX = placedGlyph.minX + scale * section.offsetX();
+			int desiredMinY = placedGlyph.minY + scale * section.offsetY();
+			int desiredMaxX = desiredMinX + scale * section.width() - 1;
+			int desiredMaxY = desiredMinY + scale * section.height() - 1;
+			int minX = Math.max(placedGlyph.request.minX, desiredMinX);
+			int maxX = Math.min(placedGlyph.request.maxX, desiredMaxX);
 
-			for (var section : sections) {
-				int desiredMinX = placedGlyph.minX + scale * section.offsetX();
-				int desiredMinY = placedGlyph.minY + scale * section.offsetY();
-				int desiredMaxX = desiredMinX + scale * section.width() - 1;
-				int desiredMaxY = desiredMinY + scale * section.height() - 1;
-				int minX = Math.max(placedGlyph.request.minX, desiredMinX);
-				int maxX = Math.min(placedGlyph.request.maxX, desiredMaxX);
+			while ((1 + maxX - minX) % scale != 0) maxX -= 1;
 
-				while ((1 + maxX - minX) % scale != 0) maxX -= 1;
+			int minY = Math.max(placedGlyph.request.minY, desiredMinY);
+			int maxY = Math.min(placedGlyph.request.maxY, desiredMaxY);
 
-				int minY = Math.max(placedGlyph.request.minY, desiredMinY);
-				int maxY = Math.min(placedGlyph.request.maxY, desiredMaxY);
+			while ((1 + maxY - minY) % scale != 0) maxY -= 1;
 
-				while ((1 + maxY - minY) % scale != 0) maxY -= 1;
+			if (minX > clipMaxX || minY > clipMaxY || maxX < clipMinX || maxY < clipMinY) continue;
 
-				glyphQuads.add(new GlyphQuad(
-						section.bufferIndex() + minX - desiredMinX + section.width() * (minY - desiredMinY),
-						minX, minY, maxX, maxY, scale, section.width(),
-						placedGlyph.charIndex, placedGlyph.request
-				));
-			}
+			int rowStride = rowStride(section);
+			sink.addQuad(
+					section.page(), section.bufferIndex() + minX - desiredMinX + rowStride * (minY - desiredMinY),
+					minX, minY, maxX, maxY, scale, rowStride, placedGlyph
+			);
+			numQuads += 1;
 		}
+		return numQuads;
+	}
 
+	/**
+	 * Checks whether the given glyph is certainly outside the clip rectangle, without rasterizing it. The glyph
+	 * starts at its (minX, minY), and its size is only known when stage 1 computed it.
+	 */
+	static boolean isOutside(PlacedGlyph glyph, int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+		if (glyph.minX > clipMaxX || glyph.minY > clipMaxY) return true;
+		if (glyph.width < 0 || glyph.height < 0) return false;
+		return (long) glyph.minX + glyph.width <= clipMinX || (long) glyph.minY + glyph.height <= clipMinY;
+	}
+
+	/**
+	 * Does the same as {@link #bufferGlyphs(GlyphRasterizer, List)}, but rasterizes the missing glyphs concurrently.
+	 * First, it collects the unique glyphs that are not yet in this buffer. Then, the calling thread and
+	 * {@code rasterizers.length - 1} tasks on the {@code executor} rasterize these glyphs, where each thread uses its
+	 * own rasterizer. Finally, the rasterized glyphs are stored in the same order as
+	 * {@link #bufferGlyphs(GlyphRasterizer, List)} would, so the result doesn't depend on the scheduling.
+	 * <p>
+	 *     This is useful when a frame has many new glyphs, for instance the first frame that shows a page of Chinese
+	 *     text. All rasterizers must rasterize glyphs in the same way, and have the same <i>getUserDataKey</i>
+	 *     behavior. They must not be used by other threads while this method is running.
+	 * </p>
+	 * <p>
+	 *     When this buffer has a rasterization budget (see {@link #setRasterizationBudget}), at most the remaining
+	 *     number of glyphs of the budget is rasterized concurrently, and the threads stop claiming glyphs once the
+	 *     remaining time of the budget has passed. The glyphs that were not rasterized are rasterized in the
+	 *     background instead.
+	 * </p>
+	 * @param rasterizers The rasterizers that should render the glyphs. The first rasterizer will be used on the
+	 *                    calling thread, and each other rasterizer will be used by at most 1 task on the executor.
+	 * @param executor The executor on which the other rasterizers will be used
+	 * @param placedGlyphs The glyphs to be rasterized
+	 * @return The list of corresponding <i>GlyphQuad</i>s
+	 * @throws GlyphBufferCapacityException When there is not enough space left in the glyph buffer to rasterize
+	 * the glyphs
+	 */
+	public List<GlyphQuad> bufferGlyphs(
+			GlyphRasterizer[] rasterizers, Executor executor, List<PlacedGlyph> placedGlyphs
+	) {
+		var glyphQuads = new ArrayList<GlyphQuad>(placedGlyphs.size());
+		bufferGlyphs(
+				rasterizers, executor, placedGlyphs,
+				Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+				new QuadCollector(glyphQuads)
+		);
 		return glyphQuads;
 	}
 
+	/**
+	 * Combines {@link #bufferGlyphs(GlyphRasterizer[], Executor, List)} with
+	 * {@link #bufferGlyphs(GlyphRasterizer, List, int, int, int, int, GlyphQuadSink)}: the missing glyphs are
+	 * rasterized concurrently, and the quads are passed to the sink. Glyphs that are certainly outside the clip
+	 * rectangle won't be rasterized.
+	 * @return The number of quads that were passed to the sink
+	 */
+	public int bufferGlyphs(
+			GlyphRasterizer[] rasterizers, Executor executor, List<PlacedGlyph> placedGlyphs,
+			int clipMinX, int clipMinY, int clipMaxX, int clipMaxY, GlyphQuadSink sink
+	) {
+		var mainRasterizer = rasterizers[0];
+		if (rasterizers.length == 1) {
+			return bufferGlyphs(mainRasterizer, placedGlyphs, clipMinX, clipMinY, clipMaxX, clipMaxY, sink);
+		}
+
+		// Don't rasterize more glyphs in advance than the rasterization budget allows
+		int maxMisses = Integer.MAX_VALUE;
+		long maxNanos = Long.MAX_VALUE;
+		if (rasterizationBudget != null) {
+			maxMisses = rasterizationBudget.hasBudgetLeft() ? rasterizationBudget.getRemainingGlyphs() : 0;
+			maxNanos = rasterizationBudget.getRemainingNanos();
+		}
+		var batch = new BatchRasterizer(mainRasterizer);
+		for (var placedGlyph : placedGlyphs) {
+			if (batch.missingGlyphs.size() >= maxMisses) break;
+			if (isOutside(placedGlyph, clipMinX, clipMinY, clipMaxX, clipMaxY)) continue;
+			Object userData = placedGlyph.request.userData;
+			long key = packKey(placedGlyph.glyph, mainRasterizer.getUserDataKey(userData));
+			boolean completed = rasterizationBudget != null && rasterizationBudget.isCompleted(key);
+			if (glyphMap.get(key) == null && !completed && !batch.missIndices.containsKey(key)) {
+				batch.missIndices.put(key, batch.missingGlyphs.size());
+				batch.missingGlyphs.add(placedGlyph);
+			}
+		}
+
+		if (batch.missingGlyphs.size() > 1) {
+			int numMisses = batch.missingGlyphs.size();
+			batch.results = new RasterizedGlyph[numMisses];
+
+			var nextMiss = new AtomicInteger();
+			long startTime = System.nanoTime();
+			long batchNanos = maxNanos;
+			int numTasks = Math.min(rasterizers.length, numMisses);
+			var tasks = new CompletableFuture<?>[numTasks - 1];
+			for (int index = 1; index < numTasks; index++) {
+				var rasterizer = rasterizers[index];
+				tasks[index - 1] = CompletableFuture.runAsync(
+						() -> batch.rasterize(rasterizer, nextMiss, startTime, batchNanos), executor
+				);
+			}
+			try {
+				batch.rasterize(mainRasterizer, nextMiss, startTime, batchNanos);
+			} catch (Throwable failed) {
+				// Stop the tasks early, and wait until they no longer use their rasterizers before propagating
+				nextMiss.set(numMisses);
+				try {
+					CompletableFuture.allOf(tasks).join();
+				} catch (RuntimeException taskFailed) {
+					failed.addSuppressed(taskFailed);
+				}
+				throw failed;
+			}
+			CompletableFuture.allOf(tasks).join();
+
+			if (rasterizationBudget != null) {
+				// The budget already paid for these glyphs, so they are handed over like glyphs that were rasterized in
+				// the background, which are used regardless of the remaining budget
+				int numRasterized = 0;
+				for (int index = 0; index < numMisses; index++) {
+					var result = batch.results[index];
+					if (result == null) continue;
+					var placedGlyph = batch.missingGlyphs.get(index);
+					long key = packKey(placedGlyph.glyph, result.getUserDataKey(placedGlyph.request.userData));
+					rasterizationBudget.addCompleted(key, result);
+					numRasterized += 1;
+				}
+				rasterizationBudget.countRasterization(numRasterized, System.nanoTime() - startTime);
+				return bufferGlyphs(mainRasterizer, placedGlyphs, clipMinX, clipMinY, clipMaxX, clipMaxY, sink);
+			}
+		}
+
+		return bufferGlyphs(batch, placedGlyphs, clipMinX, clipMinY, clipMaxX, clipMaxY, sink);
+	}
+
 	/**
 	 * Rasterizes a single glyph, and stores the rasterized fragments into this buffer. The sections in which the glyph
 	 * is stored, will be returned
@@ -117,68 +773,309 @@ public class BitmapGlyphsBuffer {
 	 * the glyph
 	 */
 	public List<BitmapGlyphSection> getSections(GlyphRasterizer rasterizer, SizedGlyph glyph, Object userData) {
-		var key = new GlyphKey(glyph, rasterizer.getUserDataKey(userData));
+		return getGlyph(rasterizer, glyph, userData).sections;
+	}
+
+	/**
+	 * Does the same as {@link #getSections}, but returns the buffered glyph rather than only its sections
+	 */
+	private BufferedBitmapGlyph getGlyph(GlyphRasterizer rasterizer, SizedGlyph glyph, Object userData) {
+		String userDataKey = rasterizer.getUserDataKey(userData);
+		long key = packKey(glyph, userDataKey);
 		var bufferedGlyph = glyphMap.get(key);
 
 		if (bufferedGlyph == null) {
 
 			rasterizer.set(glyph, userData);
 			ByteBuffer bitmap = rasterizer.getBuffer();
-			List<BitmapGlyphSection> sections = BitmapGlyphSection.coverRectangle(
-					slotSize, rasterizer.getBufferWidth(), rasterizer.getBufferHeight(), (x, y, width, height) -> {
-						boolean hasNonZero = false;
-						for (int offsetY = 0; offsetY < height; offsetY++) {
-							for (int offsetX = 0; offsetX < width; offsetX++) {
-								if (bitmap.get(x + offsetX + (y + offsetY) * rasterizer.getBufferWidth()) != 0) {
-									hasNonZero = true;
-									break;
-								}
-							}
-						}
-
-						if (hasNonZero) {
-							while (bufferSlots.isEmpty()) {
-								var oldestGlyph = glyphSet.first();
-								if (oldestGlyph.lastUsed < currentFrame) {
-									if (!glyphSet.remove(oldestGlyph)) {
-										throw new IllegalStateException("Failed to remove oldest glyph");
-									}
-									if (glyphMap.remove(new GlyphKey(oldestGlyph.glyph, oldestGlyph.userData)) != oldestGlyph) {
-										throw new IllegalStateException("Unexpected oldest glyph was removed");
-									}
-									for (var section : oldestGlyph.sections) {
-										bufferSlots.add(section.bufferIndex() / slotSize);
-									}
-								} else throw new GlyphBufferCapacityException();
-							}
-							return slotSize * bufferSlots.remove(bufferSlots.size() - 1);
-						} else return -1;
-					}
-			);
+			int bitmapWidth = rasterizer.getBufferWidth();
+			int bitmapHeight = rasterizer.getBufferHeight();
+
+			List<BitmapGlyphSection> sections = Collections.emptyList();
+			SharedBitmap sharedBitmap = null;
+			int footprint = 0;
+			int trimX = 0, trimY = 0;
+			if (inkBounds.compute(bitmap, bitmapWidth, bitmapHeight)) {
+				trimX = inkBounds.minX;
+				trimY = inkBounds.minY;
+				bitmap = trim(bitmap, bitmapWidth);
+				bitmapWidth = inkBounds.getWidth();
+				bitmapHeight = inkBounds.getHeight();
 
-			for (BitmapGlyphSection section : sections) {
-				int baseIndex = section.bufferIndex();
-				for (int bufferY = 0; bufferY < section.height(); bufferY++) {
-					buffer.put(
-							baseIndex + bufferY * section.width(), bitmap,
-							section.offsetX() + (bufferY + section.offsetY()) * rasterizer.getBufferWidth(), section.width()
-					);
+				long hash = 0L;
+				if (deduplicateBitmaps) {
+					hash = SharedBitmap.hash(bitmap, bitmapWidth, bitmapHeight);
+					sharedBitmap = findSharedBitmap(hash, bitmap, bitmapWidth, bitmapHeight);
+				}
+
+				if (sharedBitmap != null) {
+					sharedBitmap.refCount += 1;
+					sections = sharedBitmap.sections;
+				} else {
+					evictionCandidate = key;
+					evictionCandidateSize = bitmapWidth * bitmapHeight;
+					sections = storeOrSpill(bitmap, bitmapWidth, bitmapHeight);
+					footprint = storeTexels(bitmap, bitmapWidth, sections);
+					if (deduplicateBitmaps) {
+						// The footprint belongs to the shared bitmap, so it stays counted until the last glyph that
+						// uses the bitmap is evicted
+						sharedBitmap = new SharedBitmap(hash, bitmapWidth, bitmapHeight, sections, footprint);
+						sharedBitmaps.putIfAbsent(hash, sharedBitmap);
+						footprint = 0;
+					}
 				}
 			}
 
-			bufferedGlyph = new BufferedBitmapGlyph(glyph, key.userData, sections, currentFrame);
-			if (glyphMap.put(key, bufferedGlyph) != null) throw new RuntimeException("Didn't expect existing element");
-			if (!glyphSet.add(bufferedGlyph)) throw new RuntimeException("Didn't expect existing element in glyph set");
+			if (trimX != 0 || trimY != 0) sections = shiftSections(sections, trimX, trimY);
+
+			bufferedGlyph = new BufferedBitmapGlyph(glyph, userDataKey, key, sections, footprint, currentFrame);
+			bufferedGlyph.sharedBitmap = sharedBitmap;
+			glyphMap.put(key, bufferedGlyph);
+			append(bufferedGlyph);
+			evictionPolicy.inserted(bufferedGlyph);
+			countRecentFootprint(bufferedGlyph);
 		} else {
-			if (bufferedGlyph.lastUsed != currentFrame) {
-				if (!glyphSet.remove(bufferedGlyph)) throw new IllegalStateException("Glyph was not in set");
+			if (bufferedGlyph.pinCount > 0) {
+				// Pinned glyphs are not in the recency list, and their footprint is always counted
+				bufferedGlyph.lastUsed = currentFrame;
+				if (bufferedGlyph.sharedBitmap != null) bufferedGlyph.sharedBitmap.lastUsed = currentFrame;
+			} else if (bufferedGlyph.lastUsed != currentFrame) {
+				unlink(bufferedGlyph);
 				bufferedGlyph.lastUsed = currentFrame;
-				if (!glyphSet.add(bufferedGlyph))
-					throw new IllegalStateException("Glyph should just have been removed");
+				append(bufferedGlyph);
+				evictionPolicy.used(bufferedGlyph);
+				countRecentFootprint(bufferedGlyph);
 			}
 		}
 
-		return bufferedGlyph.sections;
+		return bufferedGlyph;
+	}
+
+	/**
+	 * Adds the footprint of the given unpinned glyph to the recent footprint. Glyphs that share a bitmap also share
+	 * its footprint, which is only counted once per frame, and not while 1 of these glyphs is pinned.
+	 */
+	private void countRecentFootprint(BufferedBitmapGlyph glyph) {
+		var sharedBitmap = glyph.sharedBitmap;
+		if (sharedBitmap == null) recentFootprint += glyph.footprint;
+		else if (sharedBitmap.lastUsed != currentFrame) {
+			sharedBitmap.lastUsed = currentFrame;
+			if (sharedBitmap.numPinnedGlyphs == 0) recentFootprint += sharedBitmap.footprint;
+		}
+	}
+
+	/**
+	 * Gets the given glyph when it is already stored in this buffer, or when rasterizing it fits in the rasterization
+	 * budget of the current frame (see {@link #setRasterizationBudget}). Otherwise, the glyph will be rasterized in
+	 * the background, and a smaller size of the same glyph will be returned when possible.
+	 * @return The glyph, or a smaller size of the glyph, or null if the glyph can't be shown during this frame
+	 * @throws RuntimeException The exception that the background rasterizer threw when it rasterized the glyph
+	 */
+	private BufferedBitmapGlyph getGlyphWithinBudget(GlyphRasterizer rasterizer, SizedGlyph glyph, Object userData) {
+		String userDataKey = rasterizer.getUserDataKey(userData);
+		long key = packKey(glyph, userDataKey);
+		if (glyphMap.get(key) != null) return getGlyph(rasterizer, glyph, userData);
+
+		var completedGlyph = rasterizationBudget.takeCompleted(key);
+		if (completedGlyph != null) return getGlyph(completedGlyph, glyph, userData);
+
+		var failure = rasterizationBudget.getFailure(key);
+		if (failure != null) throw failure;
+
+		if (rasterizationBudget.hasBudgetLeft()) {
+			long startTime = System.nanoTime();
+			var bufferedGlyph = getGlyph(rasterizer, glyph, userData);
+			rasterizationBudget.countRasterization(1, System.nanoTime() - startTime);
+			return bufferedGlyph;
+		}
+
+		rasterizationBudget.rasterizeInBackground(key, glyph, userData, userDataKey);
+
+		var smallerGlyph = findSmallerSize(glyph, userDataKey);
+		if (smallerGlyph == null) return null;
+
+		// This marks the smaller glyph as used during the current frame
+		return getGlyph(rasterizer, smallerGlyph.glyph, userData);
+	}
+
+	/**
+	 * Finds the smaller size of the given glyph that is stored in this buffer, and that comes closest to the size of
+	 * the given glyph when it is upscaled by {@code glyph.size / smallerSize}. The quads only support integer scales,
+	 * so the upscaled glyph can be slightly smaller than the given glyph. When 2 sizes come equally close, the
+	 * largest size is chosen, since it needs the least upscaling.
+	 * @return The stored glyph with that size, or null if there is none
+	 */
+	private BufferedBitmapGlyph findSmallerSize(SizedGlyph glyph, String userDataKey) {
+		var sizes = variantSizes.get(new VariantFamily(glyph.faceIndex, userDataKey));
+		if (sizes == null) return null;
+
+		BufferedBitmapGlyph best = null;
+		int bestUpscaledSize = 0;
+		for (var variant : sizes) {
+			if (variant.size <= 0 || variant.size >= glyph.size) continue;
+			int upscaledSize = variant.size * (glyph.size / variant.size);
+			if (upscaledSize < bestUpscaledSize) continue;
+			if (upscaledSize == bestUpscaledSize && best.glyph.size >= variant.size) continue;
+
+			var candidate = glyphMap.get(((long) variant.variantID << 32) | (glyph.id & 0xFFFF_FFFFL));
+			if (candidate != null) {
+				best = candidate;
+				bestUpscaledSize = upscaledSize;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Stores the texels of the given (trimmed) bitmap in the given sections, and marks them as dirty
+	 * @return The footprint of the sections
+	 */
+	private int storeTexels(ByteBuffer bitmap, int bitmapWidth, List<BitmapGlyphSection> sections) {
+		int footprint = 0;
+		for (BitmapGlyphSection section : sections) {
+			int baseIndex = section.bufferIndex();
+			int rowStride = rowStride(section);
+			var target = getPage(section.page());
+			for (int bufferY = 0; bufferY < section.height(); bufferY++) {
+				format.storeTexels(
+						target, baseIndex + bufferY * rowStride, bitmap,
+						section.offsetX() + (bufferY + section.offsetY()) * bitmapWidth, section.width()
+				);
+			}
+
+			// The footprint and dirty ranges are only tracked for page 0
+			if (section.page() != 0) continue;
+			footprint += getFootprint(section);
+			if (section.height() > 0) {
+				markDirty(baseIndex, baseIndex + (section.height() - 1) * rowStride + section.width());
+			}
+		}
+		return footprint;
+	}
+
+	/**
+	 * Finds the shared bitmap with the given hash, and checks that its stored texels are equal to the given bitmap,
+	 * so that a hash collision can't cause the wrong glyph to be shown. (Fully transparent tiles are not stored, so
+	 * they are only covered by the hash.)
+	 * @return The shared bitmap, or null if there is no matching shared bitmap
+	 */
+	private SharedBitmap findSharedBitmap(long hash, ByteBuffer bitmap, int bitmapWidth, int bitmapHeight) {
+		var sharedBitmap = sharedBitmaps.get(hash);
+		if (sharedBitmap == null || sharedBitmap.width != bitmapWidth || sharedBitmap.height != bitmapHeight) {
+			return null;
+		}
+
+		for (var section : sharedBitmap.sections) {
+			var page = getPage(section.page());
+			int rowStride = rowStride(section);
+			for (int y = 0; y < section.height(); y++) {
+				int bufferIndex = section.bufferIndex() + y * rowStride;
+				int bitmapIndex = section.offsetX() + (y + section.offsetY()) * bitmapWidth;
+				if (!format.texelsEqual(page, bufferIndex, bitmap, bitmapIndex, section.width())) return null;
+			}
+		}
+		return sharedBitmap;
+	}
+
+	/**
+	 * @return A copy of the given sections, whose offsets are shifted by (offsetX, offsetY)
+	 */
+	private static List<BitmapGlyphSection> shiftSections(List<BitmapGlyphSection> sections, int offsetX, int offsetY) {
+		var shiftedSections = new ArrayList<BitmapGlyphSection>(sections.size());
+		for (var section : sections) {
+			shiftedSections.add(new BitmapGlyphSection(
+					section.bufferIndex(), section.offsetX() + offsetX, section.offsetY() + offsetY,
+					section.width(), section.height(), section.page()
+			));
+		}
+		return shiftedSections;
+	}
+
+	/**
+	 * Pins the given glyphs: they will be stored in this buffer (if they weren't already), and they will never be
+	 * evicted until they are unpinned. This is useful for glyphs that must always be available quickly, for instance
+	 * the glyphs of the HUD of a game. Glyphs can be pinned multiple times, in which case they must be unpinned
+	 * equally often.
+	 * <p>
+	 *     Note that pinned glyphs are not moved by compaction, and that pinning too many glyphs will cause
+	 *     {@link GlyphBufferCapacityException}s.
+	 * </p>
+	 * @param rasterizer The rasterizer that should render the glyphs that are not yet in this buffer
+	 * @param placedGlyphs The glyphs to pin, which are usually the result of placing the text that they belong to
+	 */
+	public void pinGlyphs(GlyphRasterizer rasterizer, List<PlacedGlyph> placedGlyphs) {
+		for (var placedGlyph : placedGlyphs) {
+			Object userData = placedGlyph.request.userData;
+			getSections(rasterizer, placedGlyph.glyph, userData);
+
+			var glyph = glyphMap.get(packKey(placedGlyph.glyph, rasterizer.getUserDataKey(userData)));
+			glyph.pinCount += 1;
+			if (glyph.pinCount == 1) {
+				unlink(glyph);
+				evictionPolicy.removed(glyph);
+				var sharedBitmap = glyph.sharedBitmap;
+				if (sharedBitmap == null) {
+					pinnedFootprint += glyph.footprint;
+					if (glyph.lastUsed == currentFrame) recentFootprint -= glyph.footprint;
+				} else if (sharedBitmap.numPinnedGlyphs++ == 0) {
+					pinnedFootprint += sharedBitmap.footprint;
+					if (sharedBitmap.lastUsed == currentFrame) recentFootprint -= sharedBitmap.footprint;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Unpins glyphs that were pinned using {@link #pinGlyphs}, so that they can be evicted again
+	 * @param rasterizer The rasterizer that was used to pin the glyphs
+	 * @param placedGlyphs The glyphs to unpin
+	 * @throws IllegalArgumentException When one of the glyphs is not pinned
+	 */
+	public void unpinGlyphs(GlyphRasterizer rasterizer, List<PlacedGlyph> placedGlyphs) {
+		for (var placedGlyph : placedGlyphs) {
+			String userDataKey = rasterizer.getUserDataKey(placedGlyph.request.userData);
+			var glyph = glyphMap.get(packKey(placedGlyph.glyph, userDataKey));
+			if (glyph == null || glyph.pinCount == 0) {
+				throw new IllegalArgumentException("Glyph " + placedGlyph.glyph + " is not pinned");
+			}
+
+			glyph.pinCount -= 1;
+			if (glyph.pinCount == 0) {
+				// Keep the recency list sorted, which is conservative since this glyph will be evicted a bit later
+				if (newestGlyph != null) glyph.lastUsed = Math.max(glyph.lastUsed, newestGlyph.lastUsed);
+				append(glyph);
+				evictionPolicy.inserted(glyph);
+				var sharedBitmap = glyph.sharedBitmap;
+				if (sharedBitmap == null) {
+					pinnedFootprint -= glyph.footprint;
+					if (glyph.lastUsed == currentFrame) recentFootprint += glyph.footprint;
+				} else {
+					if (glyph.lastUsed == currentFrame) sharedBitmap.lastUsed = currentFrame;
+					if (--sharedBitmap.numPinnedGlyphs == 0) {
+						pinnedFootprint -= sharedBitmap.footprint;
+						if (sharedBitmap.lastUsed == currentFrame) recentFootprint += sharedBitmap.footprint;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the part of the bitmap within the {@link #inkBounds}, which must have been computed already. The part is
+	 * sliced from the bitmap when only rows are trimmed, and copied to the {@link #trimBuffer} otherwise.
+	 */
+	private ByteBuffer trim(ByteBuffer bitmap, int bitmapWidth) {
+		int width = inkBounds.getWidth();
+		int height = inkBounds.getHeight();
+		if (width == bitmapWidth) return bitmap.slice(inkBounds.minY * bitmapWidth, width * height);
+
+		if (trimBuffer == null || trimBuffer.capacity() < width * height) {
+			trimBuffer = ByteBuffer.allocate(2 * width * height);
+		}
+		for (int y = 0; y < height; y++) {
+			trimBuffer.put(y * width, bitmap, inkBounds.minX + (inkBounds.minY + y) * bitmapWidth, width);
+		}
+		return trimBuffer;
 	}
 
 	/**
@@ -186,7 +1083,7 @@ public class BitmapGlyphsBuffer {
 	 * purposes.
 	 */
 	public int getUsedSpace() {
-		return buffer.capacity() - slotSize * bufferSlots.size();
+		return (getTexelCapacity() - getFreeSpace()) / format.texelsPerByte();
 	}
 
 	/**
@@ -194,13 +1091,363 @@ public class BitmapGlyphsBuffer {
 	 * reclaim from old glyphs. This method is meant for monitoring purposes.
 	 */
 	public int countAvailableSpace() {
-		int freeSlots = bufferSlots.size();
-		int availableSlots = 0;
-		for (var glyph : glyphSet) {
-			if (glyph.lastUsed < currentFrame) availableSlots += glyph.sections.size();
+		checkNotShared();
+		// All space is either free, used by old glyphs, used by pinned glyphs, or used by glyphs that were used during
+		// the current frame
+		return (getStorageCapacity() - recentFootprint - pinnedFootprint) / format.texelsPerByte();
+	}
+
+	/**
+	 * Allocates space for the given rasterized glyph, and returns the sections in which it should be stored. This
+	 * method should call {@link #evictGlyph} when it needs more space.
+	 */
+	List<BitmapGlyphSection> storeSections(ByteBuffer bitmap, int bitmapWidth, int bitmapHeight) {
+		if (preferContiguousSlots && bitmapWidth * bitmapHeight > slotSize) {
+			int firstSlot = freeSlots.allocateRun(numSlots(bitmapWidth, bitmapHeight));
+			if (firstSlot != -1) {
+				return List.of(new BitmapGlyphSection(slotSize * firstSlot, 0, 0, bitmapWidth, bitmapHeight));
+			}
+		}
+
+		int[] plan = getTilingPlan(bitmapWidth, bitmapHeight);
+		var sections = new ArrayList<BitmapGlyphSection>(plan.length / 4);
+		try {
+			for (int index = 0; index < plan.length; index += 4) {
+				int x = plan[index];
+				int y = plan[index + 1];
+				int width = plan[index + 2];
+				int height = plan[index + 3];
+				if (InkBounds.isTransparent(bitmap, bitmapWidth, x, y, width, height)) continue;
+
+				int slot = freeSlots.allocate();
+				while (slot == -1) {
+					evictGlyph();
+					slot = freeSlots.allocate();
+				}
+				sections.add(new BitmapGlyphSection(slotSize * slot, x, y, width, height));
+			}
+		} catch (GlyphBufferCapacityException outOfSpace) {
+			// Don't leak the slots of the sections that were already allocated
+			freeSections(sections);
+			throw outOfSpace;
+		}
+		return sections;
+	}
+
+	/**
+	 * Stores the given rasterized glyph in this buffer when possible, and in a spill-over page otherwise
+	 */
+	private List<BitmapGlyphSection> storeOrSpill(ByteBuffer bitmap, int bitmapWidth, int bitmapHeight) {
+		try {
+			return storeSections(bitmap, bitmapWidth, bitmapHeight);
+		} catch (GlyphBufferCapacityException outOfSpace) {
+			if (spillPages == null) throw outOfSpace;
+			return List.of(spillPages.allocate(bitmapWidth, bitmapHeight));
 		}
-		return slotSize * (freeSlots + availableSlots);
 	}
 
-	private record GlyphKey(SizedGlyph glyph, String userData) {}
+	/**
+	 * Releases the space of the given sections, which can be stored in this buffer or in a spill-over page
+	 */
+	private void releaseSections(List<BitmapGlyphSection> sections) {
+		if (sections.isEmpty()) return;
+		int pageIndex = sections.get(0).page();
+		if (pageIndex == 0) freeSections(sections);
+		else spillPages.free(pageIndex);
+	}
+
+	/**
+	 * @return The row stride of the given section, which is always its width in spill-over pages
+	 */
+	private int rowStride(BitmapGlyphSection section) {
+		return section.page() == 0 ? getRowStride(section) : section.width();
+	}
+
+	/**
+	 * Gets the tiling plan for glyphs of the given size, see {@link BitmapGlyphSection#planRectangle}. Glyphs of the
+	 * same font size tend to have the same dimensions, so the plans are cached.
+	 */
+	private int[] getTilingPlan(int width, int height) {
+		long key = ((long) width << 32) | (height & 0xFFFF_FFFFL);
+		int[] plan = tilingPlans.get(key);
+		if (plan == null) {
+			// Prevent the cache from growing forever when many font sizes are used (e.g. while zooming)
+			if (tilingPlans.size() >= MAX_TILING_PLANS) tilingPlans.clear();
+			plan = BitmapGlyphSection.planRectangle(slotSize, width, height);
+			tilingPlans.put(key, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Releases the space of the given sections, which were returned by {@link #storeSections}
+	 */
+	void freeSections(List<BitmapGlyphSection> sections) {
+		for (var section : sections) {
+			freeSlots.free(section.bufferIndex() / slotSize, numSlots(section.width(), section.height()));
+		}
+	}
+
+	/**
+	 * Tries to find space for the given section at a lower buffer index, without evicting any glyphs. When such
+	 * space is found, it is claimed and the space of the section is released, but the data is not copied yet.
+	 * @return The new buffer index of the section, or its current buffer index if there is no better space
+	 */
+	int relocate(BitmapGlyphSection section) {
+		int numSlots = numSlots(section.width(), section.height());
+		int newSlot = numSlots == 1 ? freeSlots.allocate() : freeSlots.allocateRun(numSlots);
+		if (newSlot == -1) return section.bufferIndex();
+
+		int oldSlot = section.bufferIndex() / slotSize;
+		if (newSlot < oldSlot) {
+			freeSlots.free(oldSlot, numSlots);
+			return slotSize * newSlot;
+		} else {
+			freeSlots.free(newSlot, numSlots);
+			return section.bufferIndex();
+		}
+	}
+
+	/**
+	 * Marks the bytes that contain the texels in [startTexel, endTexel) as dirty
+	 */
+	private void markDirty(int startTexel, int endTexel) {
+		int texelsPerByte = format.texelsPerByte();
+		dirtyRanges.add(startTexel / texelsPerByte, (endTexel + texelsPerByte - 1) / texelsPerByte);
+	}
+
+	/**
+	 * @return The number of texels that fit in the buffer
+	 */
+	int getTexelCapacity() {
+		return buffer.capacity() * format.texelsPerByte();
+	}
+
+	/**
+	 * @return The distance between the start of 2 rows of the given section, in texels
+	 */
+	int getRowStride(BitmapGlyphSection section) {
+		return section.width();
+	}
+
+	/**
+	 * @return The amount of space that the given section occupies, in texels
+	 */
+	int getFootprint(BitmapGlyphSection section) {
+		return slotSize * numSlots(section.width(), section.height());
+	}
+
+	/**
+	 * @return The amount of texels that can be used to store glyphs
+	 */
+	int getStorageCapacity() {
+		return slotSize * (getTexelCapacity() / slotSize);
+	}
+
+	/**
+	 * @return The amount of texels that are not used by any glyph
+	 */
+	int getFreeSpace() {
+		return slotSize * freeSlots.count();
+	}
+
+	private int numSlots(int width, int height) {
+		return Math.max(1, (width * height + slotSize - 1) / slotSize);
+	}
+
+	/**
+	 * Evicts the glyph that is chosen by the {@link GlyphEvictionPolicy}, and releases its sections. When no glyph can
+	 * be evicted, this buffer will try to grow instead, see {@link #setAutoResize}.
+	 * @throws GlyphBufferCapacityException When all glyphs were used during the current frame (or during a frame that
+	 * hasn't completed yet) or are pinned, or when the eviction policy decides that the new glyph should be spilled
+	 */
+	void evictGlyph() {
+		var evictedGlyph = evictionPolicy.selectVictim(oldestGlyph, getFirstUnsafeFrame());
+		if (evictedGlyph == null) {
+			if (grow()) return;
+			throw new GlyphBufferCapacityException();
+		}
+
+		// When the policy rejects the new glyph, it should be spilled right away, without growing this buffer
+		boolean canSpill = spillPages != null && spillPages.canSpill(evictionCandidateSize);
+		if (canSpill && !evictionPolicy.admits(evictedGlyph, evictionCandidate)) {
+			throw new GlyphBufferCapacityException();
+		}
+		evict(evictedGlyph);
+	}
+
+	/**
+	 * Removes the given glyph from this buffer, and releases its sections (unless they are shared)
+	 */
+	private void evict(BufferedBitmapGlyph evictedGlyph) {
+		unlink(evictedGlyph);
+		evictionPolicy.removed(evictedGlyph);
+		if (glyphMap.remove(evictedGlyph.key) != evictedGlyph) {
+			throw new IllegalStateException("Unexpected evicted glyph was removed");
+		}
+		var sharedBitmap = evictedGlyph.sharedBitmap;
+		if (sharedBitmap == null) releaseSections(evictedGlyph.sections);
+		else {
+			sharedBitmap.refCount -= 1;
+			if (sharedBitmap.refCount == 0) {
+				sharedBitmaps.remove(sharedBitmap.hash, sharedBitmap);
+				releaseSections(sharedBitmap.sections);
+			}
+		}
+		compactionFinished = false;
+	}
+
+	private void unlink(BufferedBitmapGlyph glyph) {
+		if (glyph == compactionCursor) compactionCursor = glyph.previous;
+		if (glyph.previous != null) glyph.previous.next = glyph.next;
+		else oldestGlyph = glyph.next;
+		if (glyph.next != null) glyph.next.previous = glyph.previous;
+		else newestGlyph = glyph.previous;
+		glyph.previous = null;
+		glyph.next = null;
+	}
+
+	private void append(BufferedBitmapGlyph glyph) {
+		glyph.previous = newestGlyph;
+		if (newestGlyph != null) newestGlyph.next = glyph;
+		else oldestGlyph = glyph;
+		newestGlyph = glyph;
+	}
+
+	/**
+	 * Looks up the given glyph without rasterizing it or modifying any state of this buffer. Unlike the other
+	 * methods, this method tolerates concurrent modifications (it may return a wrong result, but it won't throw), so
+	 * {@link ConcurrentGlyphsBuffer} can use it during an optimistic read.
+	 * @return The buffered glyph, or null if it is not in this buffer
+	 */
+	BufferedBitmapGlyph peekGlyph(SizedGlyph glyph, String userDataKey) {
+		Integer variantID = variantIDs.get(new GlyphVariant(glyph.faceIndex, glyph.size, glyph.scale, userDataKey));
+		if (variantID == null) return null;
+		return glyphMap.getOptimistic(((long) variantID << 32) | (glyph.id & 0xFFFF_FFFFL));
+	}
+
+	/**
+	 * Packs the glyph ID in the lower 32 bits, and the ID of the (face index, size, scale, user data key) combination
+	 * in the upper 32 bits. Consecutive glyphs usually have the same combination, so the last combination is
+	 * remembered to avoid a hash map lookup.
+	 */
+	private long packKey(SizedGlyph glyph, String userDataKey) {
+		var last = lastVariant;
+		if (last == null || last.faceIndex != glyph.faceIndex || last.size != glyph.size ||
+				last.scale != glyph.scale || !last.userData.equals(userDataKey)) {
+			last = new GlyphVariant(glyph.faceIndex, glyph.size, glyph.scale, userDataKey);
+			Integer variantID = variantIDs.get(last);
+			if (variantID == null) {
+				variantID = variantIDs.size();
+				variantIDs.put(last, variantID);
+				variantSizes.computeIfAbsent(
+						new VariantFamily(last.faceIndex, last.userData), family -> new ArrayList<>()
+				).add(new VariantSize(last.size, variantID));
+			}
+			lastVariant = last;
+			lastVariantID = variantID;
+		}
+		return ((long) lastVariantID << 32) | (glyph.id & 0xFFFF_FFFFL);
+	}
+
+	record QuadCollector(List<GlyphQuad> glyphQuads) implements GlyphQuadSink {
+
+		@Override
+		public void addQuad(
+				int page, int bufferIndex, int minX, int minY, int maxX, int maxY,
+				int scale, int sectionWidth, PlacedGlyph placedGlyph
+		) {
+			glyphQuads.add(new GlyphQuad(
+					page, bufferIndex, minX, minY, maxX, maxY, scale, sectionWidth,
+					placedGlyph.charIndex, placedGlyph.request
+			));
+		}
+	}
+
+	/**
+	 * Serves the glyphs that were rasterized concurrently by
+	 * {@link #bufferGlyphs(GlyphRasterizer[], Executor, List)}, and falls back to the main rasterizer for glyphs that
+	 * weren't rasterized in advance (for instance because they were evicted while the batch was stored).
+	 */
+	private class BatchRasterizer implements GlyphRasterizer {
+
+		final GlyphRasterizer mainRasterizer;
+		final Map<Long, Integer> missIndices = new HashMap<>();
+		final List<PlacedGlyph> missingGlyphs = new ArrayList<>();
+		RasterizedGlyph[] results;
+
+		private ByteBuffer currentBuffer;
+		private int currentWidth, currentHeight;
+
+		BatchRasterizer(GlyphRasterizer mainRasterizer) {
+			this.mainRasterizer = mainRasterizer;
+		}
+
+		/**
+		 * Keeps rasterizing missing glyphs using the given rasterizer until all missing glyphs have been claimed, or
+		 * until {@code maxNanos} nanoseconds have passed since {@code startTime}. This method is called concurrently,
+		 * but each result is written by only 1 thread. The results of the glyphs that were not claimed stay null.
+		 */
+		void rasterize(GlyphRasterizer rasterizer, AtomicInteger nextMiss, long startTime, long maxNanos) {
+			while (System.nanoTime() - startTime < maxNanos) {
+				int index = nextMiss.getAndIncrement();
+				if (index >= missingGlyphs.size()) return;
+
+				// The buffer of the rasterizer will be overwritten during the next call to set, so it must be copied
+				var placedGlyph = missingGlyphs.get(index);
+				Object userData = placedGlyph.request.userData;
+				results[index] = new RasterizedGlyph(
+						rasterizer, placedGlyph.glyph, userData, rasterizer.getUserDataKey(userData)
+				);
+			}
+		}
+
+		@Override
+		public void set(SizedGlyph glyph, Object userData) {
+			Integer index = results != null ? missIndices.get(packKey(glyph, getUserDataKey(userData))) : null;
+			if (index != null && results[index] != null) {
+				var result = results[index];
+				currentBuffer = result.getBuffer();
+				currentWidth = result.getBufferWidth();
+				currentHeight = result.getBufferHeight();
+			} else {
+				mainRasterizer.set(glyph, userData);
+				currentBuffer = mainRasterizer.getBuffer();
+				currentWidth = mainRasterizer.getBufferWidth();
+				currentHeight = mainRasterizer.getBufferHeight();
+			}
+		}
+
+		@Override
+		public String getUserDataKey(Object userData) {
+			return mainRasterizer.getUserDataKey(userData);
+		}
+
+		@Override
+		public int getBufferWidth() {
+			return currentWidth;
+		}
+
+		@Override
+		public int getBufferHeight() {
+			return currentHeight;
+		}
+
+		@Override
+		public ByteBuffer getBuffer() {
+			return currentBuffer;
+		}
+
+		/**
+		 * Does nothing, since this rasterizer doesn't own any resources: the main rasterizer is owned by the caller
+		 */
+		@Override
+		public void destroy() {}
+	}
+
+	private record GlyphVariant(int faceIndex, int size, int scale, String userData) {}
+
+	private record VariantFamily(int faceIndex, String userData) {}
+
+	private record VariantSize(int size, int variantID) {}
 }
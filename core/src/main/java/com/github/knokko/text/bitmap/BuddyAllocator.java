@@ -0,0 +1,133 @@
+package com.github.knokko.text.bitmap;
+
+/**
+ * A buddy allocator over a linear range of bytes. Every allocation is rounded up to a power-of-two multiple of the
+ * minimum block size, and blocks are split in halves when smaller blocks are needed. When both halves (buddies) of a
+ * block are free again, they are coalesced into the original block.
+ * <p>
+ *     The free blocks of each order are tracked using {@link FreeSlots}, so this class doesn't allocate any memory
+ *     after construction, and it prefers blocks with low addresses.
+ * </p>
+ */
+class BuddyAllocator {
+
+	private final int minBlockSize;
+	private final int maxOrder;
+	private final FreeSlots[] freeBlocks;
+	private int freeSpace;
+
+	/**
+	 * @param size The number of bytes to manage
+	 * @param minBlockSize The size of the smallest blocks, which must be a power of 2
+	 * @param maxBlockSize The size of the largest blocks, which must be a power of 2. Blocks of this size will never
+	 *                     be coalesced.
+	 */
+	BuddyAllocator(int size, int minBlockSize, int maxBlockSize) {
+		if (Integer.bitCount(minBlockSize) != 1 || Integer.bitCount(maxBlockSize) != 1 || maxBlockSize < minBlockSize) {
+			throw new IllegalArgumentException("Invalid block sizes " + minBlockSize + " and " + maxBlockSize);
+		}
+		this.minBlockSize = minBlockSize;
+		this.maxOrder = Integer.numberOfTrailingZeros(maxBlockSize / minBlockSize);
+		this.freeBlocks = new FreeSlots[maxOrder + 1];
+
+		for (int order = 0; order <= maxOrder; order++) {
+			freeBlocks[order] = new FreeSlots(size / getBlockSize(order));
+			freeBlocks[order].claim(0, freeBlocks[order].count());
+		}
+
+		// Cover the range with the largest possible blocks. When the size is not a multiple of the maximum block size,
+		// the remainder is covered by smaller blocks whose buddies are out of range.
+		int offset = 0;
+		for (int order = maxOrder; order >= 0; order--) {
+			int blockSize = getBlockSize(order);
+			while (offset + blockSize <= size) {
+				freeBlocks[order].free(offset / blockSize, 1);
+				offset += blockSize;
+			}
+		}
+		this.freeSpace = offset;
+	}
+
+	/**
+	 * @return The size of a block with the given order, in bytes
+	 */
+	int getBlockSize(int order) {
+		return minBlockSize << order;
+	}
+
+	/**
+	 * @return The size of the largest blocks, in bytes
+	 */
+	int getMaxBlockSize() {
+		return getBlockSize(maxOrder);
+	}
+
+	/**
+	 * @return The size of the block that would be used to store {@code size} bytes
+	 */
+	int roundSize(int size) {
+		return getBlockSize(getOrder(size));
+	}
+
+	/**
+	 * @return The number of bytes that are not part of any allocated block
+	 */
+	int getFreeSpace() {
+		return freeSpace;
+	}
+
+	/**
+	 * Allocates a block of at least {@code size} bytes
+	 * @return The offset of the block, or -1 if there is no free block that is large enough
+	 */
+	int allocate(int size) {
+		int order = getOrder(size);
+		if (order > maxOrder) return -1;
+
+		int freeOrder = order;
+		int blockIndex = -1;
+		while (freeOrder <= maxOrder) {
+			blockIndex = freeBlocks[freeOrder].allocate();
+			if (blockIndex != -1) break;
+			freeOrder += 1;
+		}
+		if (blockIndex == -1) return -1;
+
+		// Split the block until it has the right size, and keep the second halves
+		while (freeOrder > order) {
+			freeOrder -= 1;
+			blockIndex *= 2;
+			freeBlocks[freeOrder].free(blockIndex + 1, 1);
+		}
+
+		freeSpace -= getBlockSize(order);
+		return blockIndex * getBlockSize(order);
+	}
+
+	/**
+	 * Releases a block that was allocated using {@link #allocate}
+	 * @param offset The offset that was returned by {@link #allocate}
+	 * @param size The size that was passed to {@link #allocate}
+	 */
+	void free(int offset, int size) {
+		int order = getOrder(size);
+		int blockIndex = offset / getBlockSize(order);
+		freeSpace += getBlockSize(order);
+
+		while (order < maxOrder) {
+			int buddy = blockIndex ^ 1;
+			var blocks = freeBlocks[order];
+			if (buddy >= blocks.numSlots() || !blocks.isFree(buddy)) break;
+
+			blocks.claim(buddy, 1);
+			blockIndex /= 2;
+			order += 1;
+		}
+		freeBlocks[order].free(blockIndex, 1);
+	}
+
+	private int getOrder(int size) {
+		int numBlocks = Math.max(1, (size + minBlockSize - 1) / minBlockSize);
+		return 32 - Integer.numberOfLeadingZeros(numBlocks - 1);
+	}
+}
@@ -0,0 +1,153 @@
+package com.github.knokko.text.bitmap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+
+/**
+ * An alternative to the slot-based {@link BitmapGlyphsBuffer} that uses a buddy allocator with power-of-two size
+ * classes. Each glyph of at most {@link #getMaxBlockSize()} bytes is stored in 1 contiguous block, so it will be
+ * rendered using exactly 1 {@link GlyphQuad}. Larger glyphs are split in tiles of at most {@link #getMaxBlockSize()}
+ * bytes, which are each stored in 1 block.
+ * <p>
+ *     Small glyphs only waste the difference between their size and the next power of 2, rather than most of a slot.
+ *     When a glyph is evicted, its block is coalesced with its free buddy (recursively), so the buffer won't get
+ *     fragmented into small blocks.
+ * </p>
+ */
+public class BuddyGlyphsBuffer extends BitmapGlyphsBuffer {
+
+	private final BuddyAllocator allocator;
+	private final int storageCapacity;
+
+	/**
+	 * Constructs a new <i>BuddyGlyphsBuffer</i> that will store the rasterized glyphs in a 'buffer' starting at
+	 * memory address <i>address</i>, with a size of <i>size</i> bytes.
+	 * @param address The start memory address of the glyph buffer
+	 * @param size The size of the glyph buffer, in bytes
+	 * @param minBlockSize The size of the smallest blocks, in bytes. This must be a power of 2.
+	 * @param maxBlockSize The size of the largest blocks, in bytes. This must be a power of 2. Glyphs that are
+	 *                     larger than this will be split in multiple sections.
+	 */
+	public BuddyGlyphsBuffer(long address, int size, int minBlockSize, int maxBlockSize) {
+		this(address, size, minBlockSize, maxBlockSize, GlyphStorageFormat.INTENSITY_8);
+	}
+
+	/**
+	 * Constructs a new <i>BuddyGlyphsBuffer</i> that will store the rasterized glyphs in the given format. The
+	 * block sizes are measured in texels, see {@link GlyphStorageFormat}.
+	 * @param address The start memory address of the glyph buffer
+	 * @param size The size of the glyph buffer, in bytes
+	 * @param minBlockSize The size of the smallest blocks, in texels. This must be a power of 2.
+	 * @param maxBlockSize The size of the largest blocks, in texels. This must be a power of 2.
+	 * @param format The format in which the glyph intensities will be stored
+	 */
+	public BuddyGlyphsBuffer(long address, int size, int minBlockSize, int maxBlockSize, GlyphStorageFormat format) {
+		super(memByteBuffer(address, size), format);
+		int numTexels = getTexelCapacity();
+		this.allocator = new BuddyAllocator(numTexels, minBlockSize, Math.max(minBlockSize, Math.min(
+				maxBlockSize, Integer.highestOneBit(numTexels)
+		)));
+		this.storageCapacity = allocator.getFreeSpace();
+	}
+
+	/**
+	 * Constructs a new <i>BuddyGlyphsBuffer</i> with a minimum block size of 16 bytes, and a maximum block size of
+	 * 16384 bytes
+	 * @param address The start memory address of the glyph buffer
+	 * @param size The size of the glyph buffer, in bytes
+	 */
+	public BuddyGlyphsBuffer(long address, int size) {
+		this(address, size, 16, 16384);
+	}
+
+	/**
+	 * @return The size of the largest blocks, in texels. Glyphs that are larger than this will be split in multiple
+	 * sections.
+	 */
+	public int getMaxBlockSize() {
+		return allocator.getMaxBlockSize();
+	}
+
+	@Override
+	List<BitmapGlyphSection> storeSections(ByteBuffer bitmap, int bitmapWidth, int bitmapHeight) {
+		if (bitmapWidth == 0 || bitmapHeight == 0) return Collections.emptyList();
+
+		int maxBlockSize = allocator.getMaxBlockSize();
+		if (bitmapWidth * bitmapHeight <= maxBlockSize) {
+			return List.of(new BitmapGlyphSection(
+					allocate(bitmapWidth * bitmapHeight), 0, 0, bitmapWidth, bitmapHeight
+			));
+		}
+
+		int tileWidth = Math.min(bitmapWidth, maxBlockSize);
+		int tileHeight = maxBlockSize / tileWidth;
+		var sections = new ArrayList<BitmapGlyphSection>();
+		try {
+			for (int y = 0; y < bitmapHeight; y += tileHeight) {
+				int height = Math.min(tileHeight, bitmapHeight - y);
+				for (int x = 0; x < bitmapWidth; x += tileWidth) {
+					int width = Math.min(tileWidth, bitmapWidth - x);
+					if (InkBounds.isTransparent(bitmap, bitmapWidth, x, y, width, height)) continue;
+					sections.add(new BitmapGlyphSection(allocate(width * height), x, y, width, height));
+				}
+			}
+		} catch (GlyphBufferCapacityException outOfSpace) {
+			freeSections(sections);
+			throw outOfSpace;
+		}
+		return sections;
+	}
+
+	private int allocate(int size) {
+		int offset = allocator.allocate(size);
+		while (offset == -1) {
+			evictGlyph();
+			offset = allocator.allocate(size);
+		}
+		return offset;
+	}
+
+	@Override
+	void freeSections(List<BitmapGlyphSection> sections) {
+		for (var section : sections) allocator.free(section.bufferIndex(), section.width() * section.height());
+	}
+
+	@Override
+	int relocate(BitmapGlyphSection section) {
+		int size = section.width() * section.height();
+		int newIndex = allocator.allocate(size);
+		if (newIndex == -1) return section.bufferIndex();
+
+		if (newIndex < section.bufferIndex()) {
+			allocator.free(section.bufferIndex(), size);
+			return newIndex;
+		} else {
+			allocator.free(newIndex, size);
+			return section.bufferIndex();
+		}
+	}
+
+	@Override
+	int getRowStride(BitmapGlyphSection section) {
+		return section.width();
+	}
+
+	@Override
+	int getFootprint(BitmapGlyphSection section) {
+		return allocator.roundSize(section.width() * section.height());
+	}
+
+	@Override
+	int getStorageCapacity() {
+		return storageCapacity;
+	}
+
+	@Override
+	int getFreeSpace() {
+		return allocator.getFreeSpace();
+	}
+}
@@ -4,17 +4,48 @@ import com.github.knokko.text.SizedGlyph;
 
 import java.util.List;
 
-class BufferedBitmapGlyph implements Comparable<BufferedBitmapGlyph> {
+class BufferedBitmapGlyph {
 
 	final SizedGlyph glyph;
 	final String userData;
+	final long key;
 	long lastUsed;
-	final List<BitmapGlyphSection> sections;
+	List<BitmapGlyphSection> sections;
+	final int footprint;
 
-	BufferedBitmapGlyph(SizedGlyph glyph, String userData, List<BitmapGlyphSection> sections, long currentFrame) {
+	/**
+	 * The neighbours of this glyph in the recency list of the <i>BitmapGlyphsBuffer</i>, which is sorted by
+	 * {@link #lastUsed} and doesn't contain pinned glyphs
+	 */
+	BufferedBitmapGlyph previous, next;
+
+	/**
+	 * The number of times this glyph is currently pinned. Pinned glyphs are not in the recency list, and will never
+	 * be evicted.
+	 */
+	int pinCount;
+
+	/**
+	 * The bitmap that this glyph shares with other glyphs, or null when bitmap deduplication is disabled or the glyph
+	 * is fully transparent
+	 */
+	SharedBitmap sharedBitmap;
+
+	/**
+	 * These fields can be used by the {@link GlyphEvictionPolicy} of the <i>BitmapGlyphsBuffer</i>
+	 */
+	BufferedBitmapGlyph policyPrevious, policyNext;
+	int policyData;
+
+	BufferedBitmapGlyph(
+			SizedGlyph glyph, String userData, long key,
+			List<BitmapGlyphSection> sections, int footprint, long currentFrame
+	) {
 		this.glyph = glyph;
 		this.userData = userData;
+		this.key = key;
 		this.sections = sections;
+		this.footprint = footprint;
 		this.lastUsed = currentFrame;
 	}
 
@@ -23,21 +54,6 @@ class BufferedBitmapGlyph implements Comparable<BufferedBitmapGlyph> {
 		return sections.size() + " sections last used " + lastUsed;
 	}
 
-	@Override
-	public int compareTo(BufferedBitmapGlyph other) {
-		if (this.lastUsed > other.lastUsed) return 1;
-		if (this.lastUsed < other.lastUsed) return -1;
-		if (this.glyph.id > other.glyph.id) return 1;
-		if (this.glyph.id < other.glyph.id) return -1;
-		if (this.glyph.faceIndex > other.glyph.faceIndex) return 1;
-		if (this.glyph.faceIndex < other.glyph.faceIndex) return -1;
-		if (this.glyph.size > other.glyph.size) return 1;
-		if (this.glyph.size < other.glyph.size) return -1;
-		if (this.glyph.scale > other.glyph.scale) return 1;
-		if (this.glyph.scale < other.glyph.scale) return -1;
-		return this.userData.compareTo(other.userData);
-	}
-
 	@Override
 	public boolean equals(Object other) {
 		if (other instanceof BufferedBitmapGlyph) {
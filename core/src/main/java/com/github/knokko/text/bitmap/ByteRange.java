@@ -0,0 +1,8 @@
+package com.github.knokko.text.bitmap;
+
+/**
+ * Represents the byte range <i>[offset, offset + length)</i> of a glyph buffer
+ * @param offset The index of the first byte in the range
+ * @param length The number of bytes in the range
+ */
+public record ByteRange(int offset, int length) {}
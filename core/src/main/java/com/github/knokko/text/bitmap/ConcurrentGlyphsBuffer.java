@@ -0,0 +1,221 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.SizedGlyph;
+import com.github.knokko.text.placement.PlacedGlyph;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A thread-safe wrapper around a {@link BitmapGlyphsBuffer}, which allows multiple threads to share 1 glyph cache.
+ * This is useful when multiple threads render text at the same time, for instance when each thread renders labels
+ * into its own offscreen image: the glyphs only need to be rasterized and stored once.
+ * <p>
+ *     Each thread must start its own frame using {@link #startFrame()}, and call {@link #frameCompleted(long)} once it
+ *     no longer reads the glyphs (or quads) of that frame. Glyphs that were used during a pending frame are never
+ *     evicted or moved, so the shared buffer must be large enough to hold the glyphs of all frames that are pending
+ *     at the same time. Each thread must use its own {@link GlyphRasterizer}.
+ * </p>
+ * <p>
+ *     The frames of the threads are grouped into <i>rounds</i>: a frame joins the current round, unless the calling
+ *     thread already had a frame in it, in which case a new round starts. Looking up a glyph that was already used
+ *     during the current round uses optimistic reads, so threads that use the same glyphs don't block each other.
+ *     Each missing glyph is rasterized by only 1 thread, outside the lock, and other threads that need the same glyph
+ *     wait for it. Only storing a glyph, and using a glyph for the first time in a round, require exclusive access.
+ * </p>
+ * <p>
+ *     The per-frame bookkeeping of the shared buffer assumes that there is only 1 frame at a time, so
+ *     {@link BitmapGlyphsBuffer#getDirtyRanges()} and {@link BitmapGlyphsBuffer#countAvailableSpace()} are not
+ *     supported, and the shared buffer can't use compaction, auto-resizing, or a rasterization budget.
+ * </p>
+ */
+public class ConcurrentGlyphsBuffer {
+
+	private final BitmapGlyphsBuffer glyphs;
+	private final StampedLock lock = new StampedLock();
+	private final ConcurrentHashMap<MissKey, CompletableFuture<RasterizedGlyph>> pendingMisses =
+			new ConcurrentHashMap<>();
+	private final ThreadLocal<Long> previousFrames = ThreadLocal.withInitial(() -> -1L);
+
+	/**
+	 * @param glyphs The glyphs buffer that will be shared. This constructor enables frame completion tracking (see
+	 *               {@link BitmapGlyphsBuffer#setTrackFrameCompletion(boolean)}), and all other configuration must
+	 *               be done <b>before</b> calling this constructor. After that, the glyphs buffer must only be used
+	 *               via this wrapper.
+	 * @throws IllegalArgumentException When the glyphs buffer uses compaction, auto-resizing, or a rasterization
+	 * budget
+	 */
+	public ConcurrentGlyphsBuffer(BitmapGlyphsBuffer glyphs) {
+		glyphs.share();
+		this.glyphs = glyphs;
+	}
+
+	/**
+	 * @return The format in which the shared buffer stores the glyph intensities
+	 */
+	public GlyphStorageFormat getStorageFormat() {
+		return glyphs.getStorageFormat();
+	}
+
+	/**
+	 * Gets the memory of the page with the given index, see {@link BitmapGlyphsBuffer#getPage(int)}
+	 */
+	public ByteBuffer getPage(int pageIndex) {
+		long stamp = lock.readLock();
+		try {
+			return glyphs.getPage(pageIndex);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Starts a new frame for the calling thread. The glyphs that are used during this frame won't be evicted or moved
+	 * until {@link #frameCompleted(long)} is called with the returned token. Note that the frames of different threads
+	 * can have the same token.
+	 */
+	public long startFrame() {
+		long stamp = lock.writeLock();
+		try {
+			long frameToken = glyphs.startSharedFrame(previousFrames.get());
+			previousFrames.set(frameToken);
+			return frameToken;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Indicates that the calling thread no longer reads the glyphs of the frame with the given token
+	 */
+	public void frameCompleted(long frameToken) {
+		long stamp = lock.writeLock();
+		try {
+			glyphs.frameCompleted(frameToken);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Does the same as {@link BitmapGlyphsBuffer#bufferGlyphs(GlyphRasterizer, List)}, but can be called by multiple
+	 * threads concurrently
+	 * @param frameToken The token that the calling thread got from {@link #startFrame()}
+	 * @param rasterizer The rasterizer of the calling thread
+	 * @param placedGlyphs The glyphs to be rasterized
+	 * @return The list of corresponding <i>GlyphQuad</i>s
+	 * @throws GlyphBufferCapacityException When there is not enough space left in the glyph buffer to rasterize
+	 * the glyphs
+	 */
+	public List<GlyphQuad> bufferGlyphs(long frameToken, GlyphRasterizer rasterizer, List<PlacedGlyph> placedGlyphs) {
+		var glyphQuads = new ArrayList<GlyphQuad>(placedGlyphs.size());
+		bufferGlyphs(
+				frameToken, rasterizer, placedGlyphs,
+				Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE,
+				new BitmapGlyphsBuffer.QuadCollector(glyphQuads)
+		);
+		return glyphQuads;
+	}
+
+	/**
+	 * Does the same as {@link BitmapGlyphsBuffer#bufferGlyphs(GlyphRasterizer, List, int, int, int, int,
+	 * GlyphQuadSink)}, but can be called by multiple threads concurrently. The sink is called without holding any
+	 * lock.
+	 * @param frameToken The token that the calling thread got from {@link #startFrame()}
+	 * @return The number of quads that were passed to the sink
+	 */
+	public int bufferGlyphs(
+			long frameToken, GlyphRasterizer rasterizer, List<PlacedGlyph> placedGlyphs,
+			int clipMinX, int clipMinY, int clipMaxX, int clipMaxY, GlyphQuadSink sink
+	) {
+		int numQuads = 0;
+		for (int glyphIndex = 0; glyphIndex < placedGlyphs.size(); glyphIndex++) {
+			var placedGlyph = placedGlyphs.get(glyphIndex);
+			if (BitmapGlyphsBuffer.isOutside(placedGlyph, clipMinX, clipMinY, clipMaxX, clipMaxY)) continue;
+
+			var sections = getSections(frameToken, rasterizer, placedGlyph.glyph, placedGlyph.request.userData);
+			numQuads += glyphs.addQuads(
+					placedGlyph, sections, placedGlyph.glyph.scale, clipMinX, clipMinY, clipMaxX, clipMaxY, sink
+			);
+		}
+		return numQuads;
+	}
+
+	/**
+	 * Does the same as {@link BitmapGlyphsBuffer#getSections(GlyphRasterizer, SizedGlyph, Object)}, but can be called
+	 * by multiple threads concurrently
+	 * @param frameToken The token that the calling thread got from {@link #startFrame()}
+	 */
+	public List<BitmapGlyphSection> getSections(
+			long frameToken, GlyphRasterizer rasterizer, SizedGlyph glyph, Object userData
+	) {
+		String userDataKey = rasterizer.getUserDataKey(userData);
+		var sections = findSections(frameToken, glyph, userDataKey);
+		if (sections != null) return sections;
+
+		var missKey = new MissKey(glyph, userDataKey);
+		var ownMiss = new CompletableFuture<RasterizedGlyph>();
+		var miss = pendingMisses.putIfAbsent(missKey, ownMiss);
+		if (miss == null) {
+			miss = ownMiss;
+			try {
+				// Another thread may have stored the glyph between the lookup and putIfAbsent
+				if (findSections(Long.MIN_VALUE, glyph, userDataKey) != null) ownMiss.complete(null);
+				else ownMiss.complete(new RasterizedGlyph(rasterizer, glyph, userData, userDataKey));
+			} catch (RuntimeException failure) {
+				ownMiss.completeExceptionally(failure);
+				pendingMisses.remove(missKey);
+				throw failure;
+			}
+		}
+
+		RasterizedGlyph rasterized;
+		try {
+			rasterized = miss.join();
+		} catch (CompletionException failed) {
+			// Let the rasterizer of this thread try again, so that the caller gets the original exception
+			rasterized = null;
+		}
+
+		long stamp = lock.writeLock();
+		try {
+			// When the glyph is already stored, this will merely mark it as used during the current frame
+			return glyphs.getSections(rasterized != null ? rasterized : rasterizer, glyph, userData);
+		} finally {
+			lock.unlockWrite(stamp);
+			if (miss == ownMiss) pendingMisses.remove(missKey);
+		}
+	}
+
+	/**
+	 * @return The sections of the given glyph if it is stored and was used during the given frame or later (so it
+	 * can't be evicted before that frame completes), or null otherwise
+	 */
+	private List<BitmapGlyphSection> findSections(long frameToken, SizedGlyph glyph, String userDataKey) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0L) {
+			var sections = findProtectedSections(frameToken, glyph, userDataKey);
+			if (lock.validate(stamp)) return sections;
+		}
+
+		stamp = lock.readLock();
+		try {
+			return findProtectedSections(frameToken, glyph, userDataKey);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private List<BitmapGlyphSection> findProtectedSections(long frameToken, SizedGlyph glyph, String userDataKey) {
+		var bufferedGlyph = glyphs.peekGlyph(glyph, userDataKey);
+		if (bufferedGlyph == null || bufferedGlyph.lastUsed < frameToken) return null;
+		return bufferedGlyph.sections;
+	}
+
+	private record MissKey(SizedGlyph glyph, String userDataKey) {}
+}
@@ -0,0 +1,62 @@
+package com.github.knokko.text.bitmap;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of a sorted list of disjoint byte ranges. Overlapping and adjacent ranges are merged when they are
+ * added, and no memory is allocated unless the list grows beyond its largest size so far.
+ */
+class DirtyRanges {
+
+	/**
+	 * Range i is [bounds[2i], bounds[2i + 1])
+	 */
+	private int[] bounds = new int[32];
+	private int numRanges;
+
+	void add(int start, int end) {
+		if (start >= end) return;
+
+		// Find the first range that ends at or after start, since that is the first range that may be merged
+		int low = 0;
+		int high = numRanges;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (bounds[2 * middle + 1] < start) low = middle + 1;
+			else high = middle;
+		}
+
+		int last = low;
+		while (last < numRanges && bounds[2 * last] <= end) last += 1;
+
+		if (last > low) {
+			// Merge ranges low to last - 1 into range low
+			bounds[2 * low] = Math.min(start, bounds[2 * low]);
+			bounds[2 * low + 1] = Math.max(end, bounds[2 * last - 1]);
+			System.arraycopy(bounds, 2 * last, bounds, 2 * low + 2, 2 * (numRanges - last));
+			numRanges -= last - low - 1;
+		} else {
+			if (2 * numRanges + 2 > bounds.length) bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+			System.arraycopy(bounds, 2 * low, bounds, 2 * low + 2, 2 * (numRanges - low));
+			bounds[2 * low] = start;
+			bounds[2 * low + 1] = end;
+			numRanges += 1;
+		}
+	}
+
+	void clear() {
+		numRanges = 0;
+	}
+
+	int size() {
+		return numRanges;
+	}
+
+	int start(int index) {
+		return bounds[2 * index];
+	}
+
+	int end(int index) {
+		return bounds[2 * index + 1];
+	}
+}
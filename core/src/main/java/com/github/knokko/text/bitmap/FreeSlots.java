@@ -0,0 +1,193 @@
+package com.github.knokko.text.bitmap;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of which slots of a {@link BitmapGlyphsBuffer} are free, using a hierarchical bitset: each bit of
+ * {@link #freeWords} tells whether the corresponding word of {@link #freeBits} has at least 1 free slot. This class
+ * doesn't allocate any memory after construction, and always returns the free slot(s) with the lowest index.
+ */
+class FreeSlots {
+
+	private final int numSlots;
+	private final long[] freeBits;
+	private final long[] freeWords;
+	private int numFreeSlots;
+
+	FreeSlots(int numSlots) {
+		this.numSlots = numSlots;
+		this.freeBits = new long[(numSlots + 63) / 64];
+		this.freeWords = new long[(freeBits.length + 63) / 64];
+
+		Arrays.fill(freeBits, -1L);
+		if (numSlots % 64 != 0) freeBits[freeBits.length - 1] = (1L << (numSlots % 64)) - 1L;
+		Arrays.fill(freeWords, -1L);
+		if (freeBits.length % 64 != 0) freeWords[freeWords.length - 1] = (1L << (freeBits.length % 64)) - 1L;
+		this.numFreeSlots = numSlots;
+	}
+
+	/**
+	 * @return The number of free slots
+	 */
+	int count() {
+		return numFreeSlots;
+	}
+
+	/**
+	 * @return The total number of slots
+	 */
+	int numSlots() {
+		return numSlots;
+	}
+
+	/**
+	 * @return The index of the used slot with the highest index, or -1 if all slots are free
+	 */
+	int highestUsedSlot() {
+		for (int wordIndex = freeBits.length - 1; wordIndex >= 0; wordIndex--) {
+			long used = ~freeBits[wordIndex];
+			if (wordIndex == freeBits.length - 1 && numSlots % 64 != 0) used &= (1L << (numSlots % 64)) - 1L;
+			if (used != 0L) return 64 * wordIndex + 63 - Long.numberOfLeadingZeros(used);
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The number of used slots whose index is at least {@code firstSlot}
+	 */
+	int countUsedSlots(int firstSlot) {
+		int count = 0;
+		for (int wordIndex = firstSlot >> 6; wordIndex < freeBits.length; wordIndex++) {
+			long used = ~freeBits[wordIndex];
+			if (wordIndex == firstSlot >> 6) used &= -1L << (firstSlot & 63);
+			if (wordIndex == freeBits.length - 1 && numSlots % 64 != 0) used &= (1L << (numSlots % 64)) - 1L;
+			count += Long.bitCount(used);
+		}
+		return count;
+	}
+
+	/**
+	 * Creates a copy of this instance with a different number of slots. All used slots must be smaller than
+	 * {@code newNumSlots}, see {@link #highestUsedSlot()}.
+	 */
+	FreeSlots resize(int newNumSlots) {
+		if (highestUsedSlot() >= newNumSlots) {
+			throw new IllegalArgumentException("Slot " + highestUsedSlot() + " is still in use");
+		}
+
+		var resized = new FreeSlots(newNumSlots);
+		int slot = numSlots > 0 ? nextUsed(0) : 0;
+		while (slot < numSlots) {
+			int end = nextFree(slot);
+			if (end == -1) end = numSlots;
+			resized.claim(slot, end - slot);
+			slot = end < numSlots ? nextUsed(end) : numSlots;
+		}
+		return resized;
+	}
+
+	boolean isFree(int slot) {
+		return (freeBits[slot >> 6] & (1L << slot)) != 0;
+	}
+
+	/**
+	 * Claims the free slot with the lowest index
+	 * @return The index of the claimed slot, or -1 if all slots are in use
+	 */
+	int allocate() {
+		for (int summaryIndex = 0; summaryIndex < freeWords.length; summaryIndex++) {
+			long summary = freeWords[summaryIndex];
+			if (summary != 0L) {
+				int wordIndex = 64 * summaryIndex + Long.numberOfTrailingZeros(summary);
+				int slot = 64 * wordIndex + Long.numberOfTrailingZeros(freeBits[wordIndex]);
+				claim(slot, 1);
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Claims the {@code count} adjacent free slots with the lowest start index
+	 * @return The index of the first claimed slot, or -1 if there are no {@code count} adjacent free slots
+	 */
+	int allocateRun(int count) {
+		if (count <= 0) throw new IllegalArgumentException("Count (" + count + ") must be positive");
+		if (count == 1) return allocate();
+		if (count > numFreeSlots) return -1;
+
+		int start = nextFree(0);
+		while (start != -1 && start + count <= numSlots) {
+			int end = nextUsed(start);
+			if (end - start >= count) {
+				claim(start, count);
+				return start;
+			}
+			start = nextFree(end);
+		}
+		return -1;
+	}
+
+	/**
+	 * Releases the {@code count} slots starting at {@code start}
+	 */
+	void free(int start, int count) {
+		for (int slot = start; slot < start + count; slot++) {
+			int wordIndex = slot >> 6;
+			long bit = 1L << slot;
+			if ((freeBits[wordIndex] & bit) != 0) throw new IllegalStateException("Slot " + slot + " is already free");
+			freeBits[wordIndex] |= bit;
+			freeWords[wordIndex >> 6] |= 1L << wordIndex;
+		}
+		numFreeSlots += count;
+	}
+
+	/**
+	 * Claims the {@code count} slots starting at {@code start}, which must all be free
+	 */
+	void claim(int start, int count) {
+		for (int slot = start; slot < start + count; slot++) {
+			int wordIndex = slot >> 6;
+			freeBits[wordIndex] &= ~(1L << slot);
+			if (freeBits[wordIndex] == 0L) freeWords[wordIndex >> 6] &= ~(1L << wordIndex);
+		}
+		numFreeSlots -= count;
+	}
+
+	/**
+	 * @return The index of the first free slot at or after {@code slot}, or -1 if there is none
+	 */
+	private int nextFree(int slot) {
+		if (slot >= numSlots) return -1;
+		int wordIndex = slot >> 6;
+		long word = freeBits[wordIndex] & (-1L << slot);
+		while (word == 0L) {
+			wordIndex += 1;
+			if (wordIndex >= freeBits.length) return -1;
+
+			// Skip the words without free slots using the summary
+			long summary = freeWords[wordIndex >> 6] & (-1L << wordIndex);
+			if (summary == 0L) {
+				wordIndex = 64 * ((wordIndex >> 6) + 1) - 1;
+				continue;
+			}
+			wordIndex = 64 * (wordIndex >> 6) + Long.numberOfTrailingZeros(summary);
+			word = freeBits[wordIndex];
+		}
+		return 64 * wordIndex + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * @return The index of the first used slot at or after {@code slot}, or {@link #numSlots} if there is none
+	 */
+	private int nextUsed(int slot) {
+		int wordIndex = slot >> 6;
+		long word = ~freeBits[wordIndex] & (-1L << slot);
+		while (word == 0L) {
+			wordIndex += 1;
+			if (wordIndex >= freeBits.length) return numSlots;
+			word = ~freeBits[wordIndex];
+		}
+		return Math.min(numSlots, 64 * wordIndex + Long.numberOfTrailingZeros(word));
+	}
+}
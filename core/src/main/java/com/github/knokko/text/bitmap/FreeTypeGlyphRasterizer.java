@@ -2,6 +2,7 @@ package com.github.knokko.text.bitmap;
 
 import com.github.knokko.text.SizedGlyph;
 import com.github.knokko.text.font.FontData;
+import org.lwjgl.util.freetype.FTC_SBit;
 import org.lwjgl.util.freetype.FT_Bitmap;
 import org.lwjgl.util.freetype.FT_GlyphSlot;
 
@@ -34,30 +35,55 @@ public class FreeTypeGlyphRasterizer implements GlyphRasterizer {
 	public void set(SizedGlyph glyph, Object userData) {
 		String context = "FreeTypeGlyphRasterizer.set(" + glyph + ")";
 		var face = font.borrowFaceWithSize(glyph.faceIndex, glyph.size, 1);
-		assertFtSuccess(FT_Load_Glyph(face.ftFace, glyph.id, FT_LOAD_RENDER), "Load_Glyph", context);
+		try {
+			var sbit = font.lookupSmallBitmap(face, glyph.id);
+			if (sbit != null) {
+				setSmallBitmap(sbit);
+				return;
+			}
+
+			assertFtSuccess(FT_Load_Glyph(face.ftFace, glyph.id, FT_LOAD_RENDER), "Load_Glyph", context);
+
+			FT_GlyphSlot slot = face.ftFace.glyph();
+			if (slot == null) throw new Error("Glyph slot must not be null at this point");
+
+			@SuppressWarnings("resource") FT_Bitmap bitmap = slot.bitmap();
+			prepareBuffer(bitmap.width(), bitmap.rows());
+
+			if (this.width > 0 && this.height > 0) {
+				var bufferView = bitmap.buffer(this.width * this.height);
+				this.buffer.put(bufferView);
+				this.buffer.position(0);
+			}
+		} finally {
+			font.returnFace(face);
+		}
+	}
+
+	private void setSmallBitmap(FTC_SBit sbit) {
+		prepareBuffer(Byte.toUnsignedInt(sbit.width()), Byte.toUnsignedInt(sbit.height()));
+		if (this.width == 0 || this.height == 0) return;
 
-		FT_GlyphSlot slot = face.ftFace.glyph();
-		if (slot == null) throw new Error("Glyph slot must not be null at this point");
+		// The rows of small bitmaps can be padded, so they need to be copied 1 by 1
+		int pitch = sbit.pitch();
+		var bufferView = sbit.buffer(Math.abs(pitch) * this.height);
+		for (int y = 0; y < this.height; y++) {
+			int rowStart = pitch >= 0 ? y * pitch : (this.height - 1 - y) * -pitch;
+			this.buffer.put(y * this.width, bufferView, rowStart, this.width);
+		}
+	}
 
-		@SuppressWarnings("resource") FT_Bitmap bitmap = slot.bitmap();
-		this.width = bitmap.width();
-		this.height = bitmap.rows();
+	private void prepareBuffer(int width, int height) {
+		this.width = width;
+		this.height = height;
 
 		if (this.buffer == null || this.buffer.capacity() < this.width * this.height) {
 			if (this.buffer != null) memFree(this.buffer);
 			this.buffer = memAlloc(2 * this.width * this.height);
 		}
 
-		if (this.width > 0 && this.height > 0) {
-			var bufferView = bitmap.buffer(this.width * this.height);
-			this.buffer.position(0);
-			this.buffer.limit(this.buffer.capacity());
-			this.buffer.put(bufferView);
-			this.buffer.position(0);
-			this.buffer.limit(this.width * this.height);
-		} else this.buffer.limit(0);
-
-		font.returnFace(face);
+		this.buffer.position(0);
+		this.buffer.limit(this.width * this.height);
 	}
 
 	@Override
@@ -65,6 +91,11 @@ public class FreeTypeGlyphRasterizer implements GlyphRasterizer {
 		return "";
 	}
 
+	@Override
+	public String getRasterizationKey() {
+		return "FreeType " + font.getFreeTypeVersion() + " with load flags " + FT_LOAD_RENDER;
+	}
+
 	@Override
 	public int getBufferWidth() {
 		return width;
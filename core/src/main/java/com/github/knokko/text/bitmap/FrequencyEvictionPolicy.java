@@ -0,0 +1,53 @@
+package com.github.knokko.text.bitmap;
+
+/**
+ * The frequency-aware policy that is created by {@link GlyphEvictionPolicy#frequencyAware(int, int)}
+ */
+class FrequencyEvictionPolicy extends GlyphEvictionPolicy {
+
+	private final int sampleSize;
+	private final FrequencySketch sketch;
+
+	FrequencyEvictionPolicy(int sampleSize, int numCounters) {
+		if (sampleSize < 1) throw new IllegalArgumentException("Sample size (" + sampleSize + ") must be positive");
+		this.sampleSize = sampleSize;
+		this.sketch = new FrequencySketch(numCounters);
+	}
+
+	@Override
+	void inserted(BufferedBitmapGlyph glyph) {
+		sketch.increment(glyph.key);
+	}
+
+	@Override
+	void used(BufferedBitmapGlyph glyph) {
+		sketch.increment(glyph.key);
+	}
+
+	@Override
+	void removed(BufferedBitmapGlyph glyph) {}
+
+	@Override
+	BufferedBitmapGlyph selectVictim(BufferedBitmapGlyph oldest, long firstUnsafeFrame) {
+		BufferedBitmapGlyph victim = null;
+		int victimFrequency = Integer.MAX_VALUE;
+
+		// The glyphs are sorted by lastUsed, so all glyphs after the first unsafe glyph are unsafe as well
+		var glyph = oldest;
+		for (int counter = 0; counter < sampleSize && glyph != null && glyph.lastUsed < firstUnsafeFrame; counter++) {
+			int frequency = sketch.frequency(glyph.key);
+			if (frequency < victimFrequency) {
+				victim = glyph;
+				victimFrequency = frequency;
+			}
+			glyph = glyph.next;
+		}
+		return victim;
+	}
+
+	@Override
+	boolean admits(BufferedBitmapGlyph victim, long candidateKey) {
+		// The current use of the candidate is not yet counted, hence the + 1
+		return sketch.frequency(candidateKey) + 1 > sketch.frequency(victim.key);
+	}
+}
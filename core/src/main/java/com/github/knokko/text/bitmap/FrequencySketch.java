@@ -0,0 +1,66 @@
+package com.github.knokko.text.bitmap;
+
+/**
+ * A count-min sketch with 4-bit counters that estimates how often each glyph key has been used, as in TinyLFU. Each
+ * key is mapped to 4 counters, and its frequency is estimated as the minimum of these counters. When the number of
+ * increments reaches 10 times the number of counters, all counters are halved, so that the estimates favor recent
+ * usage.
+ */
+class FrequencySketch {
+
+	private static final long[] SEEDS = {
+			0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0xd6e8feb86659fd93L
+	};
+
+	/**
+	 * Each long contains 16 counters of 4 bits
+	 */
+	private final long[] table;
+	private final int counterMask;
+	private final int sampleSize;
+	private int numIncrements;
+
+	FrequencySketch(int numCounters) {
+		int roundedNumCounters = Math.max(16, Integer.highestOneBit(Math.max(1, numCounters - 1)) << 1);
+		this.table = new long[roundedNumCounters / 16];
+		this.counterMask = roundedNumCounters - 1;
+		this.sampleSize = 10 * roundedNumCounters;
+	}
+
+	private int counterIndex(long key, int hashIndex) {
+		long hash = (key + hashIndex) * SEEDS[hashIndex];
+		hash ^= hash >>> 32;
+		return (int) hash & counterMask;
+	}
+
+	/**
+	 * @return The estimated frequency of the given key, in the range [0, 15]
+	 */
+	int frequency(long key) {
+		int frequency = 15;
+		for (int hashIndex = 0; hashIndex < 4; hashIndex++) {
+			int counter = counterIndex(key, hashIndex);
+			frequency = Math.min(frequency, (int) (table[counter >>> 4] >>> ((counter & 15) << 2)) & 15);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Increments the counters of the given key, unless they are already saturated
+	 */
+	void increment(long key) {
+		for (int hashIndex = 0; hashIndex < 4; hashIndex++) {
+			int counter = counterIndex(key, hashIndex);
+			int shift = (counter & 15) << 2;
+			if (((table[counter >>> 4] >>> shift) & 15) != 15) table[counter >>> 4] += 1L << shift;
+		}
+
+		numIncrements += 1;
+		if (numIncrements >= sampleSize) {
+			for (int index = 0; index < table.length; index++) {
+				table[index] = (table[index] >>> 1) & 0x7777_7777_7777_7777L;
+			}
+			numIncrements /= 2;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.github.knokko.text.bitmap;
+
+/**
+ * The generational policy that is created by {@link GlyphEvictionPolicy#generational(double)}. It keeps its own
+ * recency list per generation, using the <i>policyPrevious</i> and <i>policyNext</i> fields of the glyphs. The
+ * <i>policyData</i> of a glyph is 1 when it is in the old generation, and 0 otherwise.
+ */
+class GenerationalEvictionPolicy extends GlyphEvictionPolicy {
+
+	private final double maxOldFraction;
+	private final Generation young = new Generation();
+	private final Generation old = new Generation();
+
+	GenerationalEvictionPolicy(double maxOldFraction) {
+		if (maxOldFraction < 0.0 || maxOldFraction > 1.0) {
+			throw new IllegalArgumentException("Invalid maxOldFraction " + maxOldFraction);
+		}
+		this.maxOldFraction = maxOldFraction;
+	}
+
+	@Override
+	void inserted(BufferedBitmapGlyph glyph) {
+		glyph.policyData = 0;
+		young.append(glyph);
+	}
+
+	@Override
+	void used(BufferedBitmapGlyph glyph) {
+		if (glyph.policyData == 0) {
+			young.unlink(glyph);
+			glyph.policyData = 1;
+		} else old.unlink(glyph);
+		old.append(glyph);
+	}
+
+	@Override
+	void removed(BufferedBitmapGlyph glyph) {
+		if (glyph.policyData == 0) young.unlink(glyph);
+		else old.unlink(glyph);
+	}
+
+	@Override
+	BufferedBitmapGlyph selectVictim(BufferedBitmapGlyph oldest, long firstUnsafeFrame) {
+		boolean oldIsTooLarge = old.size > maxOldFraction * (young.size + old.size);
+		var first = oldIsTooLarge ? old : young;
+		var second = oldIsTooLarge ? young : old;
+		if (first.oldest != null && first.oldest.lastUsed < firstUnsafeFrame) return first.oldest;
+		if (second.oldest != null && second.oldest.lastUsed < firstUnsafeFrame) return second.oldest;
+		return null;
+	}
+
+	private static class Generation {
+
+		BufferedBitmapGlyph oldest, newest;
+		int size;
+
+		void append(BufferedBitmapGlyph glyph) {
+			glyph.policyPrevious = newest;
+			if (newest != null) newest.policyNext = glyph;
+			else oldest = glyph;
+			newest = glyph;
+			size += 1;
+		}
+
+		void unlink(BufferedBitmapGlyph glyph) {
+			if (glyph.policyPrevious != null) glyph.policyPrevious.policyNext = glyph.policyNext;
+			else oldest = glyph.policyNext;
+			if (glyph.policyNext != null) glyph.policyNext.policyPrevious = glyph.policyPrevious;
+			else newest = glyph.policyPrevious;
+			glyph.policyPrevious = null;
+			glyph.policyNext = null;
+			size -= 1;
+		}
+	}
+}
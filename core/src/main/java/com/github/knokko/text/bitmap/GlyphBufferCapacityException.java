@@ -4,7 +4,7 @@ package com.github.knokko.text.bitmap;
  * This exception will be thrown when a {@link BitmapGlyphsBuffer} doesn't have enough capacity to store all rasterized
  * glyph in the current frame. Note that this exception could also be thrown because you forgot to call
  * {@link BitmapGlyphsBuffer#startFrame()}, which would prevent it from reclaiming the space of rasterized glyphs
- * used by previous frames.
+ * used by previous frames. You can avoid this exception by giving the buffer a {@link GlyphPageProvider}.
  */
 public class GlyphBufferCapacityException extends RuntimeException {
 
@@ -0,0 +1,104 @@
+package com.github.knokko.text.bitmap;
+
+/**
+ * Decides which glyph a {@link BitmapGlyphsBuffer} should evict when it needs space for a new glyph, see
+ * {@link BitmapGlyphsBuffer#setEvictionPolicy(GlyphEvictionPolicy)}. Glyphs that were used during the current frame
+ * (or during a frame that hasn't completed yet) and pinned glyphs are never evicted, regardless of the policy.
+ * <p>
+ *     Policies are stateful, so each glyphs buffer needs its own instance. Use one of the static methods of this
+ *     class to create an instance.
+ * </p>
+ */
+public abstract class GlyphEvictionPolicy {
+
+	/**
+	 * Creates a policy that evicts the least recently used glyph. This is the default policy.
+	 */
+	public static GlyphEvictionPolicy leastRecentlyUsed() {
+		return new LruEvictionPolicy();
+	}
+
+	/**
+	 * Creates a frequency-aware policy in the style of W-TinyLFU. It estimates how often each glyph has been used
+	 * (in distinct frames) using a count-min sketch that also remembers glyphs that were evicted, and whose counters
+	 * are halved periodically so that old popularity fades. When space is needed, it evicts the least frequently
+	 * used glyph among the {@code sampleSize} least recently used glyphs.
+	 * <p>
+	 *     When the glyphs buffer has a {@link GlyphPageProvider}, this policy will also refuse to evict a glyph that
+	 *     is used more frequently than the new glyph. The new glyph will be stored in a spill-over page instead, so
+	 *     a burst of one-off glyphs won't push out the glyphs that are used all the time.
+	 * </p>
+	 * @param sampleSize The number of least recently used glyphs that are considered for eviction, for instance 8
+	 * @param numCounters The number of counters of the frequency sketch, which should be a few times larger than the
+	 *                    number of glyphs that fit in the glyphs buffer. It will be rounded up to a power of 2.
+	 */
+	public static GlyphEvictionPolicy frequencyAware(int sampleSize, int numCounters) {
+		return new FrequencyEvictionPolicy(sampleSize, numCounters);
+	}
+
+	/**
+	 * Creates a frequency-aware policy with a sample size of 8 and 65536 counters, see
+	 * {@link #frequencyAware(int, int)}
+	 */
+	public static GlyphEvictionPolicy frequencyAware() {
+		return frequencyAware(8, 65536);
+	}
+
+	/**
+	 * Creates a generational policy: new glyphs start in the young generation, and are promoted to the old
+	 * generation when they are used during a second frame. The least recently used young glyph is evicted first,
+	 * unless the old generation contains more than {@code maxOldFraction} of all (unpinned) glyphs, in which case the
+	 * least recently used old glyph is evicted first.
+	 * @param maxOldFraction The maximum fraction of the glyphs that is protected by the old generation, for instance
+	 *                       0.8
+	 */
+	public static GlyphEvictionPolicy generational(double maxOldFraction) {
+		return new GenerationalEvictionPolicy(maxOldFraction);
+	}
+
+	/**
+	 * Creates a generational policy whose old generation protects at most 80% of the glyphs, see
+	 * {@link #generational(double)}
+	 */
+	public static GlyphEvictionPolicy generational() {
+		return generational(0.8);
+	}
+
+	GlyphEvictionPolicy() {}
+
+	/**
+	 * Called when a glyph has been stored in the glyphs buffer, or when it is no longer pinned
+	 */
+	abstract void inserted(BufferedBitmapGlyph glyph);
+
+	/**
+	 * Called when a glyph is used during a frame in which it wasn't used yet. Its <i>lastUsed</i> has already been
+	 * updated.
+	 */
+	abstract void used(BufferedBitmapGlyph glyph);
+
+	/**
+	 * Called when a glyph has been evicted, or when it is pinned
+	 */
+	abstract void removed(BufferedBitmapGlyph glyph);
+
+	/**
+	 * Chooses the glyph that should be evicted
+	 * @param oldest The least recently used glyph that is not pinned. The <i>next</i> glyphs are sorted by
+	 *               <i>lastUsed</i>.
+	 * @param firstUnsafeFrame Glyphs whose <i>lastUsed</i> is at least this frame must not be evicted
+	 * @return The glyph to evict, or null if no glyph can be evicted
+	 */
+	abstract BufferedBitmapGlyph selectVictim(BufferedBitmapGlyph oldest, long firstUnsafeFrame);
+
+	/**
+	 * Decides whether the glyph with key {@code candidateKey} is worth evicting {@code victim}. This is only asked
+	 * when the candidate could be stored in a spill-over page instead. The default implementation always returns
+	 * true.
+	 * @param victim The glyph that was returned by {@link #selectVictim}
+	 * @param candidateKey The key of the glyph for which space is needed
+	 */
+	boolean admits(BufferedBitmapGlyph victim, long candidateKey) {
+		return true;
+	}
+}
@@ -0,0 +1,117 @@
+package com.github.knokko.text.bitmap;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from packed glyph keys to {@link BufferedBitmapGlyph}s that uses open addressing with linear probing,
+ * so that lookups don't need to allocate anything. The keys are created by {@link BitmapGlyphsBuffer}, and must
+ * never be -1.
+ */
+class GlyphMap {
+
+	private static final long EMPTY = -1L;
+
+	private static int hash(long key) {
+		// The finalization step of MurmurHash3, which spreads the bits of the glyph ID and variant ID
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	private long[] keys;
+	private BufferedBitmapGlyph[] values;
+	private int size;
+
+	GlyphMap() {
+		this.keys = new long[64];
+		this.values = new BufferedBitmapGlyph[64];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	private int findIndex(long key) {
+		int mask = keys.length - 1;
+		int index = hash(key) & mask;
+		while (keys[index] != key && keys[index] != EMPTY) index = (index + 1) & mask;
+		return index;
+	}
+
+	BufferedBitmapGlyph get(long key) {
+		return values[findIndex(key)];
+	}
+
+	/**
+	 * Does the same as {@link #get}, but tolerates concurrent modifications of this map: the result may be wrong when
+	 * this map is modified during the lookup, but it won't throw or loop forever
+	 */
+	BufferedBitmapGlyph getOptimistic(long key) {
+		var keys = this.keys;
+		var values = this.values;
+		if (keys.length != values.length) return null;
+
+		int mask = keys.length - 1;
+		int index = hash(key) & mask;
+		for (int counter = 0; counter < keys.length && keys[index] != EMPTY; counter++) {
+			if (keys[index] == key) return values[index];
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+
+	void put(long key, BufferedBitmapGlyph value) {
+		if (key == EMPTY) throw new IllegalArgumentException("Key must not be " + EMPTY);
+		if (2 * (size + 1) > keys.length) grow();
+
+		int index = findIndex(key);
+		if (keys[index] == key) throw new IllegalStateException("Didn't expect existing element");
+		keys[index] = key;
+		values[index] = value;
+		size += 1;
+	}
+
+	BufferedBitmapGlyph remove(long key) {
+		int mask = keys.length - 1;
+		int index = findIndex(key);
+		var removed = values[index];
+		if (removed == null) return null;
+
+		// Shift the next entries of the probe sequence backwards, so that no tombstones are needed
+		int gap = index;
+		int next = (gap + 1) & mask;
+		while (keys[next] != EMPTY) {
+			int desired = hash(keys[next]) & mask;
+			if (((next - desired) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = EMPTY;
+		values[gap] = null;
+		size -= 1;
+		return removed;
+	}
+
+	int size() {
+		return size;
+	}
+
+	private void grow() {
+		var oldKeys = keys;
+		var oldValues = values;
+		keys = new long[2 * oldKeys.length];
+		values = new BufferedBitmapGlyph[2 * oldValues.length];
+		Arrays.fill(keys, EMPTY);
+
+		for (int oldIndex = 0; oldIndex < oldKeys.length; oldIndex++) {
+			if (oldKeys[oldIndex] != EMPTY) {
+				int index = findIndex(oldKeys[oldIndex]);
+				keys[index] = oldKeys[oldIndex];
+				values[index] = oldValues[oldIndex];
+			}
+		}
+	}
+}
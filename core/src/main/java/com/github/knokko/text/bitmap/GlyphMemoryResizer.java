@@ -0,0 +1,21 @@
+package com.github.knokko.text.bitmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Resizes the memory of a {@link BitmapGlyphsBuffer}, see
+ * {@link BitmapGlyphsBuffer#setAutoResize(GlyphMemoryResizer, int, int)}. When the memory was allocated using
+ * {@code MemoryUtil.memAlloc}, you can simply use {@code MemoryUtil::memRealloc}.
+ */
+@FunctionalInterface
+public interface GlyphMemoryResizer {
+
+	/**
+	 * Resizes the given memory
+	 * @param memory The current memory of the glyphs buffer, which will no longer be used after this method returns
+	 * @param newSize The new size, in bytes
+	 * @return The new memory, which must contain the same bytes as {@code memory} (up to the smallest of the two
+	 * sizes), and must have a capacity of {@code newSize} bytes
+	 */
+	ByteBuffer resize(ByteBuffer memory, int newSize);
+}
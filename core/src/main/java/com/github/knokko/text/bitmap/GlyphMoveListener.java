@@ -0,0 +1,21 @@
+package com.github.knokko.text.bitmap;
+
+/**
+ * A listener that will be notified whenever a {@link BitmapGlyphsBuffer} moves glyph data during compaction, see
+ * {@link BitmapGlyphsBuffer#setCompactionBudget(long, GlyphMoveListener)}. This is useful when the glyph buffer is
+ * (a copy of) GPU memory that must be flushed or uploaded whenever it is modified.
+ */
+@FunctionalInterface
+public interface GlyphMoveListener {
+
+	/**
+	 * Called right after glyph data was moved. The indices and length are measured in texels, which are bytes
+	 * unless the glyph buffer uses a packed {@link GlyphStorageFormat}.
+	 * @param oldBufferIndex The index into the glyph buffer where the data used to be, in texels
+	 * @param newBufferIndex The index into the glyph buffer where the data is now, in texels
+	 * @param length The size of the moved range, in texels. The old range is
+	 *               <i>[oldBufferIndex, oldBufferIndex + length)</i> and the new range is
+	 *               <i>[newBufferIndex, newBufferIndex + length)</i>.
+	 */
+	void glyphMoved(int oldBufferIndex, int newBufferIndex, int length);
+}
@@ -0,0 +1,25 @@
+package com.github.knokko.text.bitmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Provides extra memory pages to a {@link BitmapGlyphsBuffer} when its own buffer (page 0) is too small to store all
+ * glyphs of a frame, see {@link BitmapGlyphsBuffer#setPageProvider(GlyphPageProvider)}. Rather than throwing a
+ * {@link GlyphBufferCapacityException}, the glyphs buffer will store the glyphs that don't fit in a spill-over page.
+ * This allows you to size the glyph buffer for the common case rather than for the worst case.
+ */
+@FunctionalInterface
+public interface GlyphPageProvider {
+
+	/**
+	 * Called when the glyphs buffer needs a new page. This is called at most once per page index, and the page
+	 * indices are requested in order, starting at 1. The glyphs buffer will keep using the page until it is
+	 * destroyed (by you). Glyphs that are larger than all pages that were provided so far are not spilled, and
+	 * won't cause the glyphs buffer to request another page.
+	 * @param pageIndex The index of the page, which will be the {@link GlyphQuad#page} of the quads whose glyph is
+	 *                  stored in this page
+	 * @return The memory of the page, which must stay valid until you stop using the glyphs buffer. When null is
+	 * returned, the glyphs buffer will throw a {@link GlyphBufferCapacityException} instead.
+	 */
+	ByteBuffer providePage(int pageIndex);
+}
@@ -0,0 +1,82 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.placement.TextAlignment;
+import com.github.knokko.text.placement.TextPlaceRequest;
+import com.github.knokko.text.placement.TextPlacer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Prepares text in the background, so that the first frame that shows this text won't stall. Prewarming text will:
+ * <ol>
+ *     <li>
+ *         Use the {@link TextPlacer} to place the text, which will compute the font sizes for each <i>heightA</i>,
+ *         create the FreeType faces for these sizes, and fill the glyph offset cache of the <i>TextPlacer</i>.
+ *     </li>
+ *     <li>
+ *         Use the {@link PrewarmedGlyphRasterizer} to rasterize all glyphs of the text in advance, so they only need
+ *         to be copied when they are stored in a {@link BitmapGlyphsBuffer}.
+ *     </li>
+ * </ol>
+ * The work is done on the given <i>Executor</i>, so the render thread will never need to wait for it. Note that the
+ * {@link TextPlacer} and {@link PrewarmedGlyphRasterizer} must be the same instances that the render thread uses,
+ * since their caches would be useless otherwise.
+ */
+public class GlyphPrewarmer {
+
+	private static final int BOUNDS = 1_000_000;
+
+	private final TextPlacer placer;
+	private final PrewarmedGlyphRasterizer rasterizer;
+	private final Executor executor;
+
+	/**
+	 * Constructs a new {@link GlyphPrewarmer}
+	 * @param placer The text placer that is used by the render thread
+	 * @param rasterizer The rasterizer that is used by the render thread
+	 * @param executor The executor on which the prewarming will be done
+	 */
+	public GlyphPrewarmer(TextPlacer placer, PrewarmedGlyphRasterizer rasterizer, Executor executor) {
+		this.placer = placer;
+		this.rasterizer = rasterizer;
+		this.executor = executor;
+	}
+
+	/**
+	 * Prewarms the glyphs of the given requests. Only the {@link TextPlaceRequest#text},
+	 * {@link TextPlaceRequest#heightA}, {@link TextPlaceRequest#minScale}, and {@link TextPlaceRequest#userData}
+	 * of the requests are relevant, but the bounds can be used to prewarm only the visible part of the text.
+	 * @return A future that will be completed when all glyphs have been prewarmed
+	 */
+	public CompletableFuture<Void> prewarm(Collection<TextPlaceRequest> requests) {
+		var requestList = new ArrayList<>(requests);
+		return CompletableFuture.runAsync(() -> {
+			for (var placedGlyph : placer.place(requestList)) {
+				rasterizer.prewarm(placedGlyph.glyph, placedGlyph.request.userData);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Prewarms the glyphs of all the given strings, for each of the given heights
+	 * @param strings The strings that will be rendered soon
+	 * @param userData The {@link TextPlaceRequest#userData} that will be used to render the strings
+	 * @param heightAs The {@link TextPlaceRequest#heightA}s with which the strings will be rendered
+	 * @return A future that will be completed when all glyphs have been prewarmed
+	 */
+	public CompletableFuture<Void> prewarm(Collection<String> strings, Object userData, int... heightAs) {
+		var requests = new ArrayList<TextPlaceRequest>(strings.size() * heightAs.length);
+		for (int heightA : heightAs) {
+			for (String text : strings) {
+				requests.add(new TextPlaceRequest(
+						text, 0, -BOUNDS, BOUNDS, BOUNDS, 0,
+						heightA, 1, TextAlignment.DEFAULT, userData
+				));
+			}
+		}
+		return prewarm(requests);
+	}
+}
@@ -11,10 +11,16 @@ public class GlyphQuad {
 
 	/**
 	 * The first index into the glyphs buffer that contains the rasterized glyph section to be drawn in this quad,
-	 * in bytes.
+	 * in texels. This is simply a byte index, unless the glyphs buffer uses a packed {@link GlyphStorageFormat}.
 	 */
 	public final int bufferIndex;
 
+	/**
+	 * The page of the glyphs buffer that contains the rasterized glyph section. This is 0 (the glyphs buffer itself),
+	 * unless the section was stored in a spill-over page, see {@link GlyphPageProvider}.
+	 */
+	public final int page;
+
 	/**
 	 * The coordinates of the quad to be rendered, in pixels.
 	 */
@@ -30,7 +36,9 @@ public class GlyphQuad {
 	public final int scale;
 
 	/**
-	 * The width of the rasterized glyph section, in pixels
+	 * The distance between the rows of the rasterized glyph section in the glyphs buffer, in texels. For a plain
+	 * {@link BitmapGlyphsBuffer}, this is simply the width of the section. For an {@link AtlasGlyphsBuffer}, this is
+	 * the width of the atlas, except in spill-over pages (whose sections are never part of an atlas).
 	 */
 	public final int sectionWidth;
 
@@ -62,6 +70,27 @@ public class GlyphQuad {
 			int bufferIndex, int minX, int minY, int maxX, int maxY, int scale,
 			int sectionWidth, int charIndex, TextPlaceRequest request
 	) {
+		this(0, bufferIndex, minX, minY, maxX, maxY, scale, sectionWidth, charIndex, request);
+	}
+
+	/**
+	 * Constructs a new <i>GlyphQuad</i> whose glyph section is stored in the given page
+	 * @param page {@link #page}
+	 * @param bufferIndex {@link #bufferIndex}
+	 * @param minX {@link #minX}
+	 * @param minY {@link #minY}
+	 * @param maxX {@link #maxX}
+	 * @param maxY {@link #maxY}
+	 * @param scale {@link #scale}
+	 * @param sectionWidth {@link #sectionWidth}
+	 * @param charIndex {@link #charIndex}
+	 * @param request {@link #request}
+	 */
+	public GlyphQuad(
+			int page, int bufferIndex, int minX, int minY, int maxX, int maxY, int scale,
+			int sectionWidth, int charIndex, TextPlaceRequest request
+	) {
+		this.page = page;
 		this.bufferIndex = bufferIndex;
 		this.minX = minX;
 		this.minY = minY;
@@ -0,0 +1,31 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.placement.PlacedGlyph;
+
+/**
+ * Receives the quads that are produced by
+ * {@link BitmapGlyphsBuffer#bufferGlyphs(GlyphRasterizer, java.util.List, int, int, int, int, GlyphQuadSink)}. The parameters
+ * have the same meaning as the corresponding fields of {@link GlyphQuad}, but no <i>GlyphQuad</i> objects are
+ * created. This allows renderers to put the quads directly into their (mapped) quad buffer.
+ */
+@FunctionalInterface
+public interface GlyphQuadSink {
+
+	/**
+	 * Adds a quad
+	 * @param page {@link GlyphQuad#page}
+	 * @param bufferIndex {@link GlyphQuad#bufferIndex}
+	 * @param minX {@link GlyphQuad#minX}
+	 * @param minY {@link GlyphQuad#minY}
+	 * @param maxX {@link GlyphQuad#maxX}
+	 * @param maxY {@link GlyphQuad#maxY}
+	 * @param scale {@link GlyphQuad#scale}
+	 * @param sectionWidth {@link GlyphQuad#sectionWidth}
+	 * @param placedGlyph The placed glyph that is (partially) rendered by this quad, which can be used to find the
+	 *                    {@link GlyphQuad#charIndex} and {@link GlyphQuad#request}
+	 */
+	void addQuad(
+			int page, int bufferIndex, int minX, int minY, int maxX, int maxY,
+			int scale, int sectionWidth, PlacedGlyph placedGlyph
+	);
+}
@@ -36,6 +36,21 @@ public interface GlyphRasterizer {
 	 */
 	String getUserDataKey(Object userData);
 
+	/**
+	 * Creates a key that identifies how this rasterizer rasterizes glyphs: two rasterizers with the same key must
+	 * produce the same bitmaps for the same glyphs and fonts. Persistent caches (like
+	 * {@link PersistentGlyphRasterizer}) include this key in their file name, so that they won't reuse bitmaps that
+	 * were rasterized differently, for instance by an older FreeType version.
+	 * <p>
+	 *     The default implementation returns the class name, which is only sufficient when the rasterizer doesn't
+	 *     depend on any configuration or library version.
+	 * </p>
+	 * @return The key
+	 */
+	default String getRasterizationKey() {
+		return getClass().getName();
+	}
+
 	/**
 	 * Gets the width of the last glyph that was rasterized, in pixels
 	 */
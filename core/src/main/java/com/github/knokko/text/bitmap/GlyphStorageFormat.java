@@ -0,0 +1,130 @@
+package com.github.knokko.text.bitmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The format in which a {@link BitmapGlyphsBuffer} stores the intensities of the rasterized glyphs. Each pixel of a
+ * rasterized glyph is stored as 1 <i>texel</i> in the buffer. The packed formats store multiple texels per byte, so
+ * a buffer with the same size can hold more glyphs, at the cost of intensity precision.
+ * <p>
+ *     Texel {@code i} is stored in byte {@code i / texelsPerByte()} of the buffer. Within that byte, it is stored in
+ *     the bits starting at bit {@code (i % texelsPerByte()) * bitsPerTexel()}, counting from the least significant
+ *     bit. All buffer indices, row strides, and sizes of a {@link BitmapGlyphsBuffer} are measured in texels, which
+ *     are simply bytes for the default {@link #INTENSITY_8} format.
+ * </p>
+ */
+public enum GlyphStorageFormat {
+
+	/**
+	 * 1 byte per texel, which is the default format.
+	 */
+	INTENSITY_8(8),
+
+	/**
+	 * 4 bits per texel, so 2 texels per byte. This is usually indistinguishable from {@link #INTENSITY_8} for small
+	 * text.
+	 */
+	INTENSITY_4(4),
+
+	/**
+	 * 1 bit per texel, so 8 texels per byte. Each texel is either fully transparent or fully opaque, which is
+	 * suitable for pixel-art fonts and monochrome rasterization. Intensities of at least 128 become opaque.
+	 */
+	MONOCHROME_1(1);
+
+	private final int bitsPerTexel;
+	private final int texelsPerByte;
+	private final int mask;
+
+	GlyphStorageFormat(int bitsPerTexel) {
+		this.bitsPerTexel = bitsPerTexel;
+		this.texelsPerByte = 8 / bitsPerTexel;
+		this.mask = (1 << bitsPerTexel) - 1;
+	}
+
+	/**
+	 * @return The number of bits that are used to store 1 texel
+	 */
+	public int bitsPerTexel() {
+		return bitsPerTexel;
+	}
+
+	/**
+	 * @return The number of texels that are stored in 1 byte
+	 */
+	public int texelsPerByte() {
+		return texelsPerByte;
+	}
+
+	/**
+	 * Reads the intensity of a texel
+	 * @param buffer The glyph buffer
+	 * @param texelIndex The index of the texel, for instance computed from a {@link GlyphQuad}
+	 * @return The intensity of the texel, in the range [0, 255]
+	 */
+	public int readTexel(ByteBuffer buffer, int texelIndex) {
+		if (bitsPerTexel == 8) return buffer.get(texelIndex) & 0xFF;
+		int shift = (texelIndex % texelsPerByte) * bitsPerTexel;
+		return 255 * ((buffer.get(texelIndex / texelsPerByte) >> shift) & mask) / mask;
+	}
+
+	/**
+	 * Quantizes the given intensity to this format, and stores it in the given texel. The other texels that share
+	 * its byte are preserved.
+	 */
+	void writeTexel(ByteBuffer buffer, int texelIndex, int intensity) {
+		if (bitsPerTexel == 8) {
+			buffer.put(texelIndex, (byte) intensity);
+			return;
+		}
+		int value = (intensity * mask + 127) / 255;
+		int byteIndex = texelIndex / texelsPerByte;
+		int shift = (texelIndex % texelsPerByte) * bitsPerTexel;
+		int oldByte = buffer.get(byteIndex);
+		buffer.put(byteIndex, (byte) ((oldByte & ~(mask << shift)) | (value << shift)));
+	}
+
+	/**
+	 * Stores {@code count} intensities (1 byte each) of {@code bitmap}, starting at {@code bitmapIndex}, in the texels
+	 * of {@code buffer}, starting at texel {@code texelIndex}
+	 */
+	void storeTexels(ByteBuffer buffer, int texelIndex, ByteBuffer bitmap, int bitmapIndex, int count) {
+		if (bitsPerTexel == 8) {
+			buffer.put(texelIndex, bitmap, bitmapIndex, count);
+			return;
+		}
+		for (int offset = 0; offset < count; offset++) {
+			writeTexel(buffer, texelIndex + offset, bitmap.get(bitmapIndex + offset) & 0xFF);
+		}
+	}
+
+	/**
+	 * Checks whether the {@code count} texels of {@code buffer} starting at texel {@code texelIndex} contain the
+	 * (quantized) intensities of {@code bitmap} starting at {@code bitmapIndex}, as stored by {@link #storeTexels}
+	 */
+	boolean texelsEqual(ByteBuffer buffer, int texelIndex, ByteBuffer bitmap, int bitmapIndex, int count) {
+		if (bitsPerTexel == 8) return buffer.slice(texelIndex, count).mismatch(bitmap.slice(bitmapIndex, count)) == -1;
+		for (int offset = 0; offset < count; offset++) {
+			int shift = ((texelIndex + offset) % texelsPerByte) * bitsPerTexel;
+			int value = (buffer.get((texelIndex + offset) / texelsPerByte) >> shift) & mask;
+			if (value != ((bitmap.get(bitmapIndex + offset) & 0xFF) * mask + 127) / 255) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Copies {@code count} texels of {@code buffer} from texel {@code sourceIndex} to texel {@code destinationIndex}.
+	 * The source and destination ranges must not overlap.
+	 */
+	void copyTexels(ByteBuffer buffer, int sourceIndex, int destinationIndex, int count) {
+		if (bitsPerTexel == 8) {
+			buffer.put(destinationIndex, buffer, sourceIndex, count);
+			return;
+		}
+		for (int offset = 0; offset < count; offset++) {
+			int shift = ((sourceIndex + offset) % texelsPerByte) * bitsPerTexel;
+			int value = (buffer.get((sourceIndex + offset) / texelsPerByte) >> shift) & mask;
+			writeTexel(buffer, destinationIndex + offset, 255 * value / mask);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.github.knokko.text.bitmap;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Computes the bounding box of the non-zero ('inked') pixels of a rasterized glyph, so that the fully transparent
+ * borders of the glyph don't need to be stored in the glyph buffer. The rows are scanned 8 bytes at a time.
+ */
+class InkBounds {
+
+	/**
+	 * Checks whether the {@code length} bytes of {@code bitmap} starting at {@code index} are all 0
+	 */
+	static boolean isTransparent(ByteBuffer bitmap, int index, int length) {
+		int end = index + length;
+		for (; index + 8 <= end; index += 8) {
+			if (bitmap.getLong(index) != 0L) return false;
+		}
+		for (; index < end; index++) {
+			if (bitmap.get(index) != 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether the given rectangle of the bitmap is fully transparent
+	 */
+	static boolean isTransparent(ByteBuffer bitmap, int bitmapWidth, int x, int y, int width, int height) {
+		for (int offsetY = 0; offsetY < height; offsetY++) {
+			if (!isTransparent(bitmap, x + (y + offsetY) * bitmapWidth, width)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The inclusive bounds of the inked pixels, which are only valid after {@link #compute} returned true
+	 */
+	int minX, minY, maxX, maxY;
+
+	/**
+	 * Computes the bounds of the non-zero pixels of the given bitmap
+	 * @return false if all pixels are 0, true otherwise
+	 */
+	boolean compute(ByteBuffer bitmap, int width, int height) {
+		minY = 0;
+		while (minY < height && isTransparent(bitmap, minY * width, width)) minY += 1;
+		if (minY == height) return false;
+
+		maxY = height - 1;
+		while (isTransparent(bitmap, maxY * width, width)) maxY -= 1;
+
+		// Every row is only scanned up to the leftmost (or from the rightmost) ink that was found so far. The initial
+		// values are correct when the ink is only in the last (or first) column.
+		minX = width - 1;
+		maxX = 0;
+		for (int y = minY; y <= maxY; y++) {
+			int rowStart = y * width;
+			for (int x = 0; x < minX; x++) {
+				if (bitmap.get(rowStart + x) != 0) {
+					minX = x;
+					break;
+				}
+			}
+			for (int x = width - 1; x > maxX; x--) {
+				if (bitmap.get(rowStart + x) != 0) {
+					maxX = x;
+					break;
+				}
+			}
+		}
+		return true;
+	}
+
+	int getWidth() {
+		return 1 + maxX - minX;
+	}
+
+	int getHeight() {
+		return 1 + maxY - minY;
+	}
+}
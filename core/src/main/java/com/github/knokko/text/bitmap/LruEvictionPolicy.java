@@ -0,0 +1,22 @@
+package com.github.knokko.text.bitmap;
+
+/**
+ * Evicts the least recently used glyph, which only requires the recency list of the {@link BitmapGlyphsBuffer}
+ */
+class LruEvictionPolicy extends GlyphEvictionPolicy {
+
+	@Override
+	void inserted(BufferedBitmapGlyph glyph) {}
+
+	@Override
+	void used(BufferedBitmapGlyph glyph) {}
+
+	@Override
+	void removed(BufferedBitmapGlyph glyph) {}
+
+	@Override
+	BufferedBitmapGlyph selectVictim(BufferedBitmapGlyph oldest, long firstUnsafeFrame) {
+		if (oldest == null || oldest.lastUsed >= firstUnsafeFrame) return null;
+		return oldest;
+	}
+}
@@ -0,0 +1,258 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.SizedGlyph;
+import com.github.knokko.text.font.FontData;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A {@link GlyphRasterizer} that stores all glyphs that were rasterized by another rasterizer in a memory-mapped
+ * file, and serves them from this file during later runs of the application. When the application shows the same
+ * text during each run, it won't need to rasterize any glyph after the first run.
+ * <p>
+ *     The file is stored in the given directory, and its name consists of the content hash of the font (see
+ *     {@link FontData#getContentHash()}) and a hash of the file format version and the
+ *     {@link GlyphRasterizer#getRasterizationKey()} of the other rasterizer. So changing the font, or upgrading
+ *     FreeType, will automatically use another file. The glyphs in
+ *     the file are keyed by their id, face index, size, scale, and user data key. New glyphs are appended to the
+ *     file, until its size would exceed the maximum file size.
+ * </p>
+ * <p>
+ *     When the file can't be opened or written, this rasterizer will simply forward all glyphs to the other
+ *     rasterizer. Like other rasterizers, this class is not thread-safe, and you should not create multiple instances
+ *     that use the same file at the same time.
+ * </p>
+ */
+public class PersistentGlyphRasterizer implements GlyphRasterizer {
+
+	private static final int MAGIC = 0x4b474331;
+	private static final int VERSION = 1;
+
+	/**
+	 * The header consists of the magic number, the version, and the offset at which the next glyph will be appended
+	 */
+	private static final int HEADER_SIZE = 16;
+
+	/**
+	 * Each glyph record starts with its id, face index, size, scale, width, height, and user data key length
+	 */
+	private static final int RECORD_HEADER_SIZE = 28;
+
+	private final GlyphRasterizer rasterizer;
+	private final int maxFileSize;
+	private final Map<GlyphKey, CachedGlyph> cachedGlyphs = new HashMap<>();
+
+	private FileChannel channel;
+	private MappedByteBuffer mapping;
+	private int end;
+
+	private ByteBuffer currentBuffer;
+	private int currentWidth, currentHeight;
+
+	/**
+	 * Constructs a new <i>PersistentGlyphRasterizer</i>, and loads the glyphs that were stored during previous runs
+	 * @param rasterizer The rasterizer that will be used for the glyphs that are not in the file
+	 * @param directory The directory in which the file will be stored. It will be created when it doesn't exist.
+	 * @param fontContentHash The {@link FontData#getContentHash()} of the font that <i>rasterizer</i> uses
+	 * @param maxFileSize The maximum size of the file, in bytes
+	 */
+	public PersistentGlyphRasterizer(
+			GlyphRasterizer rasterizer, File directory, String fontContentHash, int maxFileSize
+	) {
+		this.rasterizer = rasterizer;
+		this.maxFileSize = maxFileSize;
+		try {
+			Files.createDirectories(directory.toPath());
+			var file = new File(directory, fontContentHash + "-" + hashRasterizationKey(rasterizer) + ".glyphs");
+			this.channel = FileChannel.open(file.toPath(), CREATE, READ, WRITE);
+			load();
+		} catch (IOException failed) {
+			// Without the file, this rasterizer will just forward everything to the other rasterizer
+			close();
+		}
+	}
+
+	/**
+	 * Constructs a new <i>PersistentGlyphRasterizer</i> with a maximum file size of 64 MB
+	 * @param rasterizer The rasterizer that will be used for the glyphs that are not in the file
+	 * @param directory The directory in which the file will be stored. It will be created when it doesn't exist.
+	 * @param font The font that <i>rasterizer</i> uses
+	 */
+	public PersistentGlyphRasterizer(GlyphRasterizer rasterizer, File directory, FontData font) {
+		this(rasterizer, directory, font.getContentHash(), 64_000_000);
+	}
+
+	/**
+	 * Hashes the file format version and the rasterization key of the given rasterizer, so that a new file is used
+	 * when the format or the rasterizer (or its FreeType version) changes
+	 */
+	private static String hashRasterizationKey(GlyphRasterizer rasterizer) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException shouldNotHappen) {
+			throw new Error(shouldNotHappen);
+		}
+		digest.update(ByteBuffer.allocate(4).putInt(0, VERSION));
+		digest.update(rasterizer.getRasterizationKey().getBytes(StandardCharsets.UTF_8));
+		return HexFormat.of().formatHex(digest.digest(), 0, 8);
+	}
+
+	private void load() throws IOException {
+		int fileSize = (int) Math.min(channel.size(), maxFileSize);
+		mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(fileSize, Math.min(maxFileSize, 65536)));
+
+		end = HEADER_SIZE;
+		if (fileSize >= HEADER_SIZE && mapping.getInt(0) == MAGIC && mapping.getInt(4) == VERSION) {
+			int storedEnd = (int) Math.min(mapping.getLong(8), fileSize);
+			while (end + RECORD_HEADER_SIZE <= storedEnd) {
+				int keyLength = mapping.getInt(end + 24);
+				int width = mapping.getInt(end + 16);
+				int height = mapping.getInt(end + 20);
+				if (keyLength < 0 || width < 0 || height < 0) break;
+
+				long recordEnd = (long) end + RECORD_HEADER_SIZE + keyLength + (long) width * height;
+				if (recordEnd > storedEnd) break;
+
+				var keyBytes = new byte[keyLength];
+				mapping.get(end + RECORD_HEADER_SIZE, keyBytes);
+				var glyph = new SizedGlyph(
+						mapping.getInt(end), mapping.getInt(end + 4), mapping.getInt(end + 8), mapping.getInt(end + 12)
+				);
+				cachedGlyphs.put(
+						new GlyphKey(glyph, new String(keyBytes, StandardCharsets.UTF_8)),
+						new CachedGlyph(end + RECORD_HEADER_SIZE + keyLength, width, height)
+				);
+				end = (int) recordEnd;
+			}
+		}
+
+		mapping.putInt(0, MAGIC);
+		mapping.putInt(4, VERSION);
+		mapping.putLong(8, end);
+	}
+
+	/**
+	 * @return The number of glyphs that are stored in the file
+	 */
+	public int getNumCachedGlyphs() {
+		return cachedGlyphs.size();
+	}
+
+	@Override
+	public void set(SizedGlyph glyph, Object userData) {
+		var key = new GlyphKey(glyph, getUserDataKey(userData));
+		var cached = cachedGlyphs.get(key);
+		if (cached != null) {
+			currentBuffer = mapping.slice(cached.offset, cached.width * cached.height);
+			currentWidth = cached.width;
+			currentHeight = cached.height;
+			return;
+		}
+
+		rasterizer.set(glyph, userData);
+		currentBuffer = rasterizer.getBuffer();
+		currentWidth = rasterizer.getBufferWidth();
+		currentHeight = rasterizer.getBufferHeight();
+		if (channel != null) append(key);
+	}
+
+	private void append(GlyphKey key) {
+		var keyBytes = key.userData.getBytes(StandardCharsets.UTF_8);
+		long recordEnd = (long) end + RECORD_HEADER_SIZE + keyBytes.length + (long) currentWidth * currentHeight;
+		if (recordEnd > maxFileSize) return;
+
+		if (recordEnd > mapping.capacity()) {
+			try {
+				int newSize = (int) Math.min(maxFileSize, Math.max(recordEnd, 2L * mapping.capacity()));
+				mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+			} catch (IOException failed) {
+				// Glyphs that can't be stored will simply be rasterized again during the next run
+				return;
+			}
+		}
+
+		mapping.putInt(end, key.glyph.id);
+		mapping.putInt(end + 4, key.glyph.faceIndex);
+		mapping.putInt(end + 8, key.glyph.size);
+		mapping.putInt(end + 12, key.glyph.scale);
+		mapping.putInt(end + 16, currentWidth);
+		mapping.putInt(end + 20, currentHeight);
+		mapping.putInt(end + 24, keyBytes.length);
+		mapping.put(end + RECORD_HEADER_SIZE, keyBytes);
+
+		int offset = end + RECORD_HEADER_SIZE + keyBytes.length;
+		if (currentWidth * currentHeight > 0) {
+			mapping.put(offset, currentBuffer, 0, currentWidth * currentHeight);
+		}
+		cachedGlyphs.put(key, new CachedGlyph(offset, currentWidth, currentHeight));
+
+		// Update the end offset only after the record is complete, so a crash can't leave a partial record behind
+		end = (int) recordEnd;
+		mapping.putLong(8, end);
+	}
+
+	@Override
+	public String getUserDataKey(Object userData) {
+		return rasterizer.getUserDataKey(userData);
+	}
+
+	@Override
+	public String getRasterizationKey() {
+		return rasterizer.getRasterizationKey();
+	}
+
+	@Override
+	public int getBufferWidth() {
+		return currentWidth;
+	}
+
+	@Override
+	public int getBufferHeight() {
+		return currentHeight;
+	}
+
+	@Override
+	public ByteBuffer getBuffer() {
+		return currentBuffer;
+	}
+
+	private void close() {
+		if (mapping != null) mapping.force();
+		mapping = null;
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+				// There is nothing left to save
+			}
+		}
+		channel = null;
+	}
+
+	/**
+	 * Writes the remaining glyphs to the file, closes the file, and destroys the other rasterizer
+	 */
+	@Override
+	public void destroy() {
+		close();
+		rasterizer.destroy();
+	}
+
+	private record GlyphKey(SizedGlyph glyph, String userData) {}
+
+	private record CachedGlyph(int offset, int width, int height) {}
+}
@@ -0,0 +1,171 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.SizedGlyph;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+
+/**
+ * A <i>GlyphRasterizer</i> that wraps another rasterizer, and can rasterize glyphs in advance (typically on a
+ * background thread). When {@link #set} is called for a glyph that was rasterized in advance, the result is simply
+ * copied, and the wrapped rasterizer is not used at all. This is mostly useful in combination with a
+ * {@link GlyphPrewarmer}.
+ * <p>
+ *     The {@link #set} method must only be used by 1 thread at the same time (just like any other rasterizer), but
+ *     {@link #prewarm} can be called from any thread at any time.
+ * </p>
+ * <p>
+ *     Prewarmed glyphs are only discarded when they are used, so glyphs that are never rasterized (for instance
+ *     because they were already in the glyphs buffer) would stay forever. To prevent this, the prewarmed glyphs use at
+ *     most {@link #setMaxPrewarmedBytes} bytes (16 MiB by default): when this limit is exceeded, the glyphs that were
+ *     prewarmed first are discarded first.
+ * </p>
+ */
+public class PrewarmedGlyphRasterizer implements GlyphRasterizer {
+
+	private final GlyphRasterizer rasterizer;
+	private final GlyphRasterizer backgroundRasterizer;
+	private final LinkedHashMap<GlyphKey, PrewarmedGlyph> prewarmedGlyphs = new LinkedHashMap<>();
+	private long maxPrewarmedBytes = 16L * 1024L * 1024L;
+	private long prewarmedBytes;
+
+	private PrewarmedGlyph current;
+
+	/**
+	 * Constructs a new {@link PrewarmedGlyphRasterizer}. Note that this rasterizer will take ownership of both
+	 * {@code rasterizer} and {@code backgroundRasterizer}: they will be destroyed when this rasterizer is destroyed.
+	 * @param rasterizer The rasterizer that will be used by {@link #set} for glyphs that were not prewarmed
+	 * @param backgroundRasterizer The rasterizer that will be used by {@link #prewarm}. It must produce the same
+	 *                             results as {@code rasterizer}, but it must be a different instance.
+	 */
+	public PrewarmedGlyphRasterizer(GlyphRasterizer rasterizer, GlyphRasterizer backgroundRasterizer) {
+		if (rasterizer == backgroundRasterizer) {
+			throw new IllegalArgumentException("The background rasterizer must be a different instance");
+		}
+		this.rasterizer = rasterizer;
+		this.backgroundRasterizer = backgroundRasterizer;
+	}
+
+	/**
+	 * Sets the maximum number of bytes that the prewarmed (but not yet used) glyphs may use. When this limit is
+	 * exceeded, the glyphs that were prewarmed first will be discarded. This method is thread-safe.
+	 */
+	public void setMaxPrewarmedBytes(long maxBytes) {
+		if (maxBytes < 0) throw new IllegalArgumentException("maxBytes (" + maxBytes + ") must not be negative");
+		synchronized (prewarmedGlyphs) {
+			this.maxPrewarmedBytes = maxBytes;
+			discardOldGlyphs();
+		}
+	}
+
+	private void discardOldGlyphs() {
+		var iterator = prewarmedGlyphs.values().iterator();
+		while (prewarmedBytes > maxPrewarmedBytes) {
+			prewarmedBytes -= iterator.next().buffer.capacity();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Rasterizes the given glyph using the background rasterizer, and stores a copy of the result, unless a copy
+	 * is already stored. The copy will be used (and discarded) during the next {@link #set} call for the same
+	 * glyph and user data key. This method is thread-safe.
+	 */
+	public void prewarm(SizedGlyph glyph, Object userData) {
+		var key = new GlyphKey(glyph, backgroundRasterizer.getUserDataKey(userData));
+		synchronized (prewarmedGlyphs) {
+			if (prewarmedGlyphs.containsKey(key)) return;
+		}
+
+		synchronized (backgroundRasterizer) {
+			backgroundRasterizer.set(glyph, userData);
+			var buffer = backgroundRasterizer.getBuffer();
+			int width = backgroundRasterizer.getBufferWidth();
+			int height = backgroundRasterizer.getBufferHeight();
+
+			var copy = new byte[width * height];
+			buffer.get(buffer.position(), copy);
+			synchronized (prewarmedGlyphs) {
+				if (copy.length > maxPrewarmedBytes || prewarmedGlyphs.containsKey(key)) return;
+				prewarmedGlyphs.put(key, new PrewarmedGlyph(width, height, ByteBuffer.wrap(copy)));
+				prewarmedBytes += copy.length;
+				discardOldGlyphs();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of glyphs that were prewarmed, but not yet used
+	 */
+	public int getNumPrewarmedGlyphs() {
+		synchronized (prewarmedGlyphs) {
+			return prewarmedGlyphs.size();
+		}
+	}
+
+	/**
+	 * @return The number of bytes used by the glyphs that were prewarmed, but not yet used
+	 */
+	public long getPrewarmedBytes() {
+		synchronized (prewarmedGlyphs) {
+			return prewarmedBytes;
+		}
+	}
+
+	/**
+	 * Discards all prewarmed glyphs that were not yet used
+	 */
+	public void clearPrewarmedGlyphs() {
+		synchronized (prewarmedGlyphs) {
+			prewarmedGlyphs.clear();
+			prewarmedBytes = 0;
+		}
+	}
+
+	@Override
+	public void set(SizedGlyph glyph, Object userData) {
+		synchronized (prewarmedGlyphs) {
+			current = prewarmedGlyphs.remove(new GlyphKey(glyph, rasterizer.getUserDataKey(userData)));
+			if (current != null) prewarmedBytes -= current.buffer.capacity();
+		}
+		if (current == null) rasterizer.set(glyph, userData);
+	}
+
+	@Override
+	public String getUserDataKey(Object userData) {
+		return rasterizer.getUserDataKey(userData);
+	}
+
+	@Override
+	public String getRasterizationKey() {
+		return rasterizer.getRasterizationKey();
+	}
+
+	@Override
+	public int getBufferWidth() {
+		return current != null ? current.width : rasterizer.getBufferWidth();
+	}
+
+	@Override
+	public int getBufferHeight() {
+		return current != null ? current.height : rasterizer.getBufferHeight();
+	}
+
+	@Override
+	public ByteBuffer getBuffer() {
+		return current != null ? current.buffer : rasterizer.getBuffer();
+	}
+
+	@Override
+	public void destroy() {
+		clearPrewarmedGlyphs();
+		rasterizer.destroy();
+		synchronized (backgroundRasterizer) {
+			backgroundRasterizer.destroy();
+		}
+	}
+
+	private record GlyphKey(SizedGlyph glyph, String userData) {}
+
+	private record PrewarmedGlyph(int width, int height, ByteBuffer buffer) {}
+}
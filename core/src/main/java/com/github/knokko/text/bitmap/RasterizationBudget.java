@@ -0,0 +1,171 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.SizedGlyph;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The per-frame rasterization budget of a {@link BitmapGlyphsBuffer}, see
+ * {@link BitmapGlyphsBuffer#setRasterizationBudget}. It counts the glyphs that were rasterized during the current
+ * frame, and rasterizes the glyphs that don't fit in the budget on the background executor. The results of the
+ * background rasterizer are only made available during {@link #startFrame()}, so the glyphs buffer doesn't need any
+ * synchronization.
+ */
+class RasterizationBudget {
+
+	private static final int COMPLETED_GLYPH_LIFETIME = 60;
+
+	private final int maxGlyphs;
+	private final long maxNanos;
+	private final Executor executor;
+	private final GlyphRasterizer backgroundRasterizer;
+
+	private long currentFrame;
+	private int numRasterizedGlyphs;
+	private long rasterizationNanos;
+
+	private final Set<Long> backgroundKeys = new HashSet<>();
+	private final LinkedHashMap<Long, CompletedGlyph> completedGlyphs = new LinkedHashMap<>();
+	private final Map<Long, RuntimeException> failedGlyphs = new HashMap<>();
+	private final Queue<BackgroundRequest> backgroundRequests = new ConcurrentLinkedQueue<>();
+	private final Queue<BackgroundResult> backgroundResults = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean backgroundRunning = new AtomicBoolean();
+
+	RasterizationBudget(int maxGlyphs, long maxNanos, Executor executor, GlyphRasterizer backgroundRasterizer) {
+		this.maxGlyphs = maxGlyphs;
+		this.maxNanos = maxNanos;
+		this.executor = executor;
+		this.backgroundRasterizer = backgroundRasterizer;
+	}
+
+	/**
+	 * Resets the budget, and makes the glyphs that were rasterized in the background available to the next frames.
+	 * The glyphs that were rasterized in the background, but not needed during the next
+	 * {@link #COMPLETED_GLYPH_LIFETIME} frames, are discarded.
+	 */
+	void startFrame() {
+		var iterator = completedGlyphs.values().iterator();
+		while (iterator.hasNext() && iterator.next().frame() + COMPLETED_GLYPH_LIFETIME <= currentFrame) {
+			iterator.remove();
+		}
+
+		BackgroundResult result;
+		while ((result = backgroundResults.poll()) != null) {
+			backgroundKeys.remove(result.key());
+			if (result.glyph() != null) {
+				completedGlyphs.put(result.key(), new CompletedGlyph(result.glyph(), currentFrame));
+			}
+			if (result.failure() != null) failedGlyphs.put(result.key(), result.failure());
+		}
+
+		numRasterizedGlyphs = 0;
+		rasterizationNanos = 0L;
+		currentFrame += 1;
+	}
+
+	/**
+	 * @return True when another glyph can be rasterized during the current frame
+	 */
+	boolean hasBudgetLeft() {
+		return numRasterizedGlyphs < maxGlyphs && rasterizationNanos < maxNanos;
+	}
+
+	/**
+	 * @return The number of glyphs that can still be rasterized during the current frame
+	 */
+	int getRemainingGlyphs() {
+		return Math.max(0, maxGlyphs - numRasterizedGlyphs);
+	}
+
+	/**
+	 * @return The time (in nanoseconds) that can still be spent on rasterizing glyphs during the current frame
+	 */
+	long getRemainingNanos() {
+		return Math.max(0L, maxNanos - rasterizationNanos);
+	}
+
+	/**
+	 * Adds the given number of glyphs and the given time to the budget usage of the current frame
+	 */
+	void countRasterization(int numGlyphs, long nanos) {
+		numRasterizedGlyphs += numGlyphs;
+		rasterizationNanos += nanos;
+	}
+
+	/**
+	 * @return True when the glyph with the given key was rasterized in the background, and hasn't been taken yet
+	 */
+	boolean isCompleted(long key) {
+		return completedGlyphs.containsKey(key);
+	}
+
+	/**
+	 * Adds a glyph that was rasterized outside the budget, for instance concurrently by
+	 * {@link BitmapGlyphsBuffer#bufferGlyphs(GlyphRasterizer[], Executor, List)}, so that it is used
+	 * regardless of the remaining budget
+	 */
+	void addCompleted(long key, RasterizedGlyph glyph) {
+		completedGlyphs.put(key, new CompletedGlyph(glyph, currentFrame));
+	}
+
+	/**
+	 * Takes the glyph with the given key that was rasterized in the background
+	 * @return The rasterized glyph, or null if it hasn't been rasterized in the background
+	 */
+	RasterizedGlyph takeCompleted(long key) {
+		var completedGlyph = completedGlyphs.remove(key);
+		return completedGlyph != null ? completedGlyph.glyph() : null;
+	}
+
+	/**
+	 * Gets the exception that the background rasterizer threw when it tried to rasterize the glyph with the given
+	 * key. Such glyphs are never requested again, since they would most likely fail again.
+	 * @return The exception, or null if the background rasterizer didn't fail to rasterize the glyph
+	 */
+	RuntimeException getFailure(long key) {
+		return failedGlyphs.get(key);
+	}
+
+	/**
+	 * Requests the background rasterizer to rasterize the given glyph, unless it is already being rasterized, or
+	 * the background rasterizer failed to rasterize it before
+	 */
+	void rasterizeInBackground(long key, SizedGlyph glyph, Object userData, String userDataKey) {
+		if (failedGlyphs.containsKey(key)) return;
+		if (backgroundKeys.add(key)) {
+			backgroundRequests.add(new BackgroundRequest(key, glyph, userData, userDataKey));
+			if (backgroundRunning.compareAndSet(false, true)) executor.execute(this::processRequests);
+		}
+	}
+
+	/**
+	 * Rasterizes the requested glyphs until no requests are left. This runs on the background executor, and at most
+	 * 1 instance runs at the same time, so the background rasterizer is never used concurrently.
+	 */
+	private void processRequests() {
+		do {
+			BackgroundRequest request;
+			while ((request = backgroundRequests.poll()) != null) {
+				try {
+					backgroundResults.add(new BackgroundResult(request.key(), new RasterizedGlyph(
+							backgroundRasterizer, request.glyph(), request.userData(), request.userDataKey()
+					), null));
+				} catch (RuntimeException failed) {
+					backgroundResults.add(new BackgroundResult(request.key(), null, failed));
+				}
+			}
+			backgroundRunning.set(false);
+
+			// A request may have been added after the poll, but before backgroundRunning was set to false
+		} while (!backgroundRequests.isEmpty() && backgroundRunning.compareAndSet(false, true));
+	}
+
+	private record BackgroundRequest(long key, SizedGlyph glyph, Object userData, String userDataKey) {}
+
+	private record BackgroundResult(long key, RasterizedGlyph glyph, RuntimeException failure) {}
+
+	private record CompletedGlyph(RasterizedGlyph glyph, long frame) {}
+}
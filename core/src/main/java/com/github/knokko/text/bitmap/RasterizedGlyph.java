@@ -0,0 +1,55 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.SizedGlyph;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A copy of a glyph that was rasterized by another thread, which acts as a rasterizer that can only 'rasterize' that
+ * glyph. This is used by {@link ConcurrentGlyphsBuffer}, and by the background and concurrent rasterization of
+ * {@link BitmapGlyphsBuffer}.
+ */
+class RasterizedGlyph implements GlyphRasterizer {
+
+	private final ByteBuffer buffer;
+	private final int width, height;
+	private final String userDataKey;
+
+	RasterizedGlyph(GlyphRasterizer rasterizer, SizedGlyph glyph, Object userData, String userDataKey) {
+		rasterizer.set(glyph, userData);
+		this.width = rasterizer.getBufferWidth();
+		this.height = rasterizer.getBufferHeight();
+		this.buffer = ByteBuffer.allocate(width * height);
+		if (width * height > 0) buffer.put(0, rasterizer.getBuffer(), 0, width * height);
+		this.userDataKey = userDataKey;
+	}
+
+	@Override
+	public void set(SizedGlyph glyph, Object userData) {}
+
+	@Override
+	public String getUserDataKey(Object userData) {
+		return userDataKey;
+	}
+
+	@Override
+	public int getBufferWidth() {
+		return width;
+	}
+
+	@Override
+	public int getBufferHeight() {
+		return height;
+	}
+
+	@Override
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Does nothing, since the copied bitmap is an ordinary heap buffer
+	 */
+	@Override
+	public void destroy() {}
+}
@@ -0,0 +1,67 @@
+package com.github.knokko.text.bitmap;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A trimmed glyph bitmap that is stored only once, and shared by all buffered glyphs whose bitmaps are
+ * byte-identical, see {@link BitmapGlyphsBuffer#setDeduplicateBitmaps(boolean)}
+ */
+class SharedBitmap {
+
+	/**
+	 * Hashes the given bitmap 8 bytes at a time
+	 */
+	static long hash(ByteBuffer bitmap, int width, int height) {
+		int length = width * height;
+		long hash = 31L * width + height;
+		int index = 0;
+		for (; index + 8 <= length; index += 8) hash = mix(hash ^ bitmap.getLong(index));
+		for (; index < length; index++) hash = mix(hash ^ bitmap.get(index));
+		return hash;
+	}
+
+	private static long mix(long hash) {
+		hash *= 0x9e3779b97f4a7c15L;
+		return hash ^ (hash >>> 29);
+	}
+
+	final long hash;
+	final int width, height;
+
+	/**
+	 * The sections in which the bitmap is stored. Their offsets are relative to the trimmed bitmap, so they are
+	 * usually <b>not</b> equal to the sections of the glyphs that share this bitmap.
+	 */
+	List<BitmapGlyphSection> sections;
+
+	/**
+	 * The number of buffered glyphs that use this bitmap. The sections are released when this becomes 0.
+	 */
+	int refCount;
+
+	/**
+	 * The footprint of the sections. The glyphs that use this bitmap have a footprint of 0, since this footprint
+	 * must be counted only once.
+	 */
+	final int footprint;
+
+	/**
+	 * The last frame during which 1 of the glyphs that use this bitmap was used, or -1
+	 */
+	long lastUsed = -1;
+
+	/**
+	 * The number of glyphs that use this bitmap and are pinned
+	 */
+	int numPinnedGlyphs;
+
+	SharedBitmap(long hash, int width, int height, List<BitmapGlyphSection> sections, int footprint) {
+		this.hash = hash;
+		this.width = width;
+		this.height = height;
+		this.sections = sections;
+		this.footprint = footprint;
+		this.refCount = 1;
+	}
+}
@@ -0,0 +1,189 @@
+package com.github.knokko.text.bitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packs rectangles into a 2D atlas using shelves: each shelf is a horizontal strip of the atlas, and each rectangle
+ * is placed on the lowest shelf that is at least as high as the rectangle. Each shelf keeps track of its free
+ * horizontal ranges, so the space of freed rectangles can be reused.
+ */
+class ShelfPacker {
+
+	/**
+	 * The heights of new shelves are rounded up to a multiple of this value, which makes it more likely that shelves
+	 * can be reused by glyphs of a slightly different height
+	 */
+	private static final int HEIGHT_GRANULARITY = 4;
+
+	private final int width, height;
+	private final List<Shelf> shelves = new ArrayList<>();
+	private int nextShelfY;
+	private int freeArea;
+
+	ShelfPacker(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.freeArea = width * height;
+	}
+
+	/**
+	 * @return The number of pixels that are not used by any rectangle
+	 */
+	int getFreeArea() {
+		return freeArea;
+	}
+
+	/**
+	 * Finds space for a rectangle of the given size
+	 * @return The index of the top-left pixel of the rectangle ({@code x + y * width}), or -1 if there is no space
+	 */
+	int allocate(int rectWidth, int rectHeight) {
+		if (rectWidth <= 0 || rectHeight <= 0 || rectWidth > width) return -1;
+
+		Shelf bestShelf = null;
+		int bestX = -1;
+		for (var shelf : shelves) {
+			if (shelf.height < rectHeight || (bestShelf != null && shelf.height >= bestShelf.height)) continue;
+			int x = shelf.findRange(rectWidth);
+			if (x != -1) {
+				bestShelf = shelf;
+				bestX = x;
+			}
+		}
+
+		// Avoid wasting too much space by putting small glyphs on high shelves
+		int newShelfHeight = Math.min(height - nextShelfY, roundHeight(rectHeight));
+		if ((bestShelf == null || bestShelf.height > 2 * rectHeight) && newShelfHeight >= rectHeight) {
+			bestShelf = new Shelf(nextShelfY, newShelfHeight, width);
+			shelves.add(bestShelf);
+			nextShelfY += newShelfHeight;
+			bestX = 0;
+		}
+
+		if (bestShelf == null) {
+			bestShelf = mergeEmptyShelves(rectHeight);
+			if (bestShelf == null) return -1;
+			bestX = 0;
+		}
+
+		bestShelf.claim(bestX, rectWidth);
+		freeArea -= rectWidth * rectHeight;
+		return bestX + bestShelf.y * width;
+	}
+
+	/**
+	 * Releases the space of a rectangle that was allocated using {@link #allocate}
+	 */
+	void free(int index, int rectWidth, int rectHeight) {
+		int x = index % width;
+		int y = index / width;
+		for (int shelfIndex = 0; shelfIndex < shelves.size(); shelfIndex++) {
+			var shelf = shelves.get(shelfIndex);
+			if (shelf.y == y) {
+				shelf.release(x, rectWidth);
+				freeArea += rectWidth * rectHeight;
+
+				// Give the space of empty shelves at the bottom back, so that it can be used for shelves of any height
+				while (!shelves.isEmpty() && shelves.get(shelves.size() - 1).isEmpty()) {
+					nextShelfY = shelves.remove(shelves.size() - 1).y;
+				}
+				return;
+			}
+		}
+		throw new IllegalArgumentException("There is no shelf at y = " + y);
+	}
+
+	private int roundHeight(int rectHeight) {
+		return HEIGHT_GRANULARITY * ((rectHeight + HEIGHT_GRANULARITY - 1) / HEIGHT_GRANULARITY);
+	}
+
+	private Shelf mergeEmptyShelves(int rectHeight) {
+		for (int firstIndex = 0; firstIndex < shelves.size(); firstIndex++) {
+			int mergedHeight = 0;
+			int lastIndex = firstIndex;
+			while (lastIndex < shelves.size() && shelves.get(lastIndex).isEmpty() && mergedHeight < rectHeight) {
+				mergedHeight += shelves.get(lastIndex).height;
+				lastIndex += 1;
+			}
+
+			if (mergedHeight >= rectHeight) {
+				var merged = new Shelf(shelves.get(firstIndex).y, mergedHeight, width);
+				shelves.subList(firstIndex, lastIndex).clear();
+				shelves.add(firstIndex, merged);
+				return merged;
+			}
+		}
+		return null;
+	}
+
+	private static class Shelf {
+
+		final int y, height;
+		private final int width;
+
+		/**
+		 * The free ranges of this shelf, sorted by start: range i is [ranges[2i], ranges[2i + 1])
+		 */
+		private int[] ranges = new int[8];
+		private int numRanges;
+
+		Shelf(int y, int height, int width) {
+			this.y = y;
+			this.height = height;
+			this.width = width;
+			ranges[0] = 0;
+			ranges[1] = width;
+			numRanges = 1;
+		}
+
+		boolean isEmpty() {
+			return numRanges == 1 && ranges[0] == 0 && ranges[1] == width;
+		}
+
+		int findRange(int rectWidth) {
+			for (int index = 0; index < numRanges; index++) {
+				if (ranges[2 * index + 1] - ranges[2 * index] >= rectWidth) return ranges[2 * index];
+			}
+			return -1;
+		}
+
+		void claim(int x, int rectWidth) {
+			for (int index = 0; index < numRanges; index++) {
+				if (ranges[2 * index] == x) {
+					ranges[2 * index] += rectWidth;
+					if (ranges[2 * index] == ranges[2 * index + 1]) {
+						System.arraycopy(ranges, 2 * index + 2, ranges, 2 * index, 2 * (numRanges - index - 1));
+						numRanges -= 1;
+					}
+					return;
+				}
+			}
+			throw new IllegalArgumentException("There is no free range starting at " + x);
+		}
+
+		void release(int x, int rectWidth) {
+			int index = 0;
+			while (index < numRanges && ranges[2 * index] < x) index += 1;
+
+			boolean mergeLeft = index > 0 && ranges[2 * index - 1] == x;
+			boolean mergeRight = index < numRanges && ranges[2 * index] == x + rectWidth;
+			if (mergeLeft && mergeRight) {
+				ranges[2 * index - 1] = ranges[2 * index + 1];
+				System.arraycopy(ranges, 2 * index + 2, ranges, 2 * index, 2 * (numRanges - index - 1));
+				numRanges -= 1;
+			} else if (mergeLeft) {
+				ranges[2 * index - 1] = x + rectWidth;
+			} else if (mergeRight) {
+				ranges[2 * index] = x;
+			} else {
+				if (2 * numRanges + 2 > ranges.length) ranges = Arrays.copyOf(ranges, 2 * ranges.length);
+				System.arraycopy(ranges, 2 * index, ranges, 2 * index + 2, 2 * (numRanges - index));
+				ranges[2 * index] = x;
+				ranges[2 * index + 1] = x + rectWidth;
+				numRanges += 1;
+			}
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.github.knokko.text.bitmap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The spill-over pages of a {@link BitmapGlyphsBuffer}, which are requested from its {@link GlyphPageProvider} when
+ * needed. Each page uses a simple bump allocator: its space is only reused once all its sections have been released.
+ * Page 0 is the glyphs buffer itself, so the first spill-over page has index 1.
+ */
+class SpillPages {
+
+	private final GlyphPageProvider provider;
+	private final GlyphStorageFormat format;
+	private final List<Page> pages = new ArrayList<>();
+
+	/**
+	 * The number of texels of the largest page so far, or -1 when no page has been provided yet
+	 */
+	private int maxPageTexels = -1;
+	private boolean exhausted;
+
+	SpillPages(GlyphPageProvider provider, GlyphStorageFormat format) {
+		this.provider = provider;
+		this.format = format;
+	}
+
+	/**
+	 * @return The number of spill-over pages that have been provided so far
+	 */
+	int size() {
+		return pages.size();
+	}
+
+	/**
+	 * @return The memory of the spill-over page with the given index, which must be at least 1
+	 */
+	ByteBuffer get(int pageIndex) {
+		return pages.get(pageIndex - 1).buffer;
+	}
+
+	/**
+	 * @return True when a glyph of the given size may still be spilled, which is false when the provider ran out of
+	 * pages, or when the glyph is larger than all pages so far
+	 */
+	boolean canSpill(int size) {
+		for (var page : pages) {
+			if (page.nextIndex + size <= page.numTexels) return true;
+		}
+		return canRequestPage(size);
+	}
+
+	private boolean canRequestPage(int size) {
+		return !exhausted && (maxPageTexels == -1 || size <= maxPageTexels);
+	}
+
+	/**
+	 * Allocates space for a glyph of the given size in the first spill-over page that has enough space left, and
+	 * requests a new page from the provider when no page has enough space.
+	 * <p>
+	 *     Glyphs that are larger than the pages that were provided so far are rejected without requesting another
+	 *     page, since the provider would otherwise be asked for a new page each frame, until it runs out of pages.
+	 * </p>
+	 * @throws GlyphBufferCapacityException When the glyph doesn't fit in any page
+	 */
+	BitmapGlyphSection allocate(int width, int height) {
+		int size = width * height;
+		for (int index = 0; index < pages.size(); index++) {
+			var page = pages.get(index);
+			if (page.nextIndex + size <= page.numTexels) return page.allocate(width, height, index + 1);
+		}
+
+		if (!canRequestPage(size)) throw new GlyphBufferCapacityException();
+		var pageBuffer = provider.providePage(pages.size() + 1);
+		if (pageBuffer == null) {
+			exhausted = true;
+			throw new GlyphBufferCapacityException();
+		}
+
+		var page = new Page(pageBuffer, pageBuffer.capacity() * format.texelsPerByte());
+		pages.add(page);
+		maxPageTexels = Math.max(maxPageTexels, page.numTexels);
+		if (size > page.numTexels) throw new GlyphBufferCapacityException();
+		return page.allocate(width, height, pages.size());
+	}
+
+	/**
+	 * Releases 1 section of the spill-over page with the given index
+	 */
+	void free(int pageIndex) {
+		pages.get(pageIndex - 1).free();
+	}
+
+	private static class Page {
+
+		final ByteBuffer buffer;
+		final int numTexels;
+		int nextIndex;
+		int numSections;
+
+		Page(ByteBuffer buffer, int numTexels) {
+			this.buffer = buffer;
+			this.numTexels = numTexels;
+		}
+
+		BitmapGlyphSection allocate(int width, int height, int pageIndex) {
+			var section = new BitmapGlyphSection(nextIndex, 0, 0, width, height, pageIndex);
+			nextIndex += width * height;
+			numSections += 1;
+			return section;
+		}
+
+		void free() {
+			numSections -= 1;
+			if (numSections == 0) nextIndex = 0;
+		}
+	}
+}
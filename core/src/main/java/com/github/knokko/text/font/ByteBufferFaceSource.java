@@ -6,8 +6,10 @@ import org.lwjgl.util.freetype.FT_Face;
 import java.nio.ByteBuffer;
 
 import static com.github.knokko.text.FreeTypeFailureException.assertFtSuccess;
+import static org.lwjgl.system.MemoryUtil.NULL;
 import static org.lwjgl.system.MemoryUtil.memFree;
 import static org.lwjgl.util.freetype.FreeType.FT_New_Memory_Face;
+import static org.lwjgl.util.harfbuzz.HarfBuzz.*;
 
 class ByteBufferFaceSource implements FreeTypeFaceSource {
 
@@ -26,6 +28,15 @@ class ByteBufferFaceSource implements FreeTypeFaceSource {
 		return FT_Face.create(pFace.get(0));
 	}
 
+	@Override
+	public long createHarfBuzzFace() {
+		// The blob doesn't copy the data, so this source must outlive the face (which FontData guarantees)
+		long hbBlob = hb_blob_create(byteBuffer, HB_MEMORY_MODE_READONLY, NULL, null);
+		long hbFace = hb_face_create(hbBlob, 0);
+		hb_blob_destroy(hbBlob);
+		return hbFace;
+	}
+
 	@Override
 	public void destroy() {
 		memFree(byteBuffer);
@@ -7,6 +7,7 @@ import java.io.File;
 
 import static com.github.knokko.text.FreeTypeFailureException.assertFtSuccess;
 import static org.lwjgl.util.freetype.FreeType.FT_New_Face;
+import static org.lwjgl.util.harfbuzz.HarfBuzz.*;
 
 class FileFaceSource implements FreeTypeFaceSource {
 
@@ -28,6 +29,18 @@ class FileFaceSource implements FreeTypeFaceSource {
 		return FT_Face.create(pFace.get(0));
 	}
 
+	@Override
+	public long createHarfBuzzFace() {
+		long hbBlob = hb_blob_create_from_file(file.getPath());
+		if (hb_blob_get_length(hbBlob) == 0) {
+			hb_blob_destroy(hbBlob);
+			throw new IllegalStateException("Failed to read file " + file);
+		}
+		long hbFace = hb_face_create(hbBlob, 0);
+		hb_blob_destroy(hbBlob);
+		return hbFace;
+	}
+
 	@Override
 	public void destroy() {}
 }
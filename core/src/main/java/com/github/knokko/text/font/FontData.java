@@ -1,13 +1,20 @@
 package com.github.knokko.text.font;
 
 import com.github.knokko.text.TextInstance;
+import org.lwjgl.util.freetype.FTC_SBit;
 
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 import static com.github.knokko.text.FreeTypeFailureException.assertFtSuccess;
 import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
 import static org.lwjgl.util.freetype.FreeType.FT_LOAD_BITMAP_METRICS_ONLY;
 import static org.lwjgl.util.freetype.FreeType.FT_Load_Char;
+import static org.lwjgl.util.harfbuzz.HarfBuzz.*;
 
 /**
  * Represents an ordered list of at least 1 font, where the first font is the primary/preferred font, and all other
@@ -21,6 +28,14 @@ public class FontData {
 	private final HeightSearcher[] heightSearchers;
 	private int maxHeight = 100;
 	private final Map<TextFaceKey, TextFaceList> faceCache = new HashMap<>();
+	private ShapingBackend shapingBackend = ShapingBackend.FREETYPE;
+	private FreeTypeCache freeTypeCache;
+
+	private final long[] hbFaces;
+	private final Map<TextFaceKey, Long> hbFonts = new HashMap<>();
+	private final List<Long> hbBuffers = new ArrayList<>();
+
+	private String contentHash;
 
 	private long totalBorrowCounter;
 	private long openFaceCounter;
@@ -49,6 +64,7 @@ public class FontData {
 			index += fontSources.length;
 		}
 
+		this.hbFaces = new long[faceSources.length];
 		this.heightSearchers = new HeightSearcher[faceSources.length];
 		for (index = 0; index < faceSources.length; index++) {
 			int faceIndex = index;
@@ -77,6 +93,56 @@ public class FontData {
 		this.maxHeight = maxHeight;
 	}
 
+	/**
+	 * Sets the {@link ShapingBackend} of this {@link FontData}, which is {@link ShapingBackend#FREETYPE} by default.
+	 * This method must be called <b>before</b> using this <i>FontData</i>
+	 */
+	public void setShapingBackend(ShapingBackend shapingBackend) {
+		synchronized (hbFonts) {
+			if (!faceCache.isEmpty() || !hbFonts.isEmpty()) {
+				throw new IllegalStateException("You must call this method BEFORE using this font");
+			}
+			if (freeTypeCache != null && shapingBackend == ShapingBackend.FREETYPE) {
+				throw new IllegalStateException("The FreeType shaping backend can't be used with the FreeType cache");
+			}
+			this.shapingBackend = Objects.requireNonNull(shapingBackend);
+		}
+	}
+
+	/**
+	 * @return The {@link ShapingBackend} of this {@link FontData}
+	 */
+	public ShapingBackend getShapingBackend() {
+		return shapingBackend;
+	}
+
+	/**
+	 * Lets this {@link FontData} use FreeType cache managers (<i>FTC_Manager</i>) instead of its own pool of faces.
+	 * Each shard of the {@link TextInstance} gets its own cache manager, which creates only 1 <i>FT_Face</i> per font,
+	 * and 1 <i>FT_Size</i> per font size, and caches the rasterized bitmaps of small glyphs. The memory budget of
+	 * {@code maxBytes} bytes is divided over the shards.
+	 * <p>
+	 *     Since all sizes of a font share the same <i>FT_Face</i> within a shard, only 1 thread per shard can borrow a
+	 *     face at the same time. When multiple threads rasterize glyphs (for instance when parallel rasterization is
+	 *     used), the <i>TextInstance</i> should have at least as many shards as threads. Sharing faces is fine for
+	 *     rasterization and glyph metrics, but not for shaping, so this method will also switch the
+	 *     {@link ShapingBackend} to {@link ShapingBackend#HARFBUZZ}.
+	 * </p>
+	 * This method must be called <b>before</b> using this <i>FontData</i>
+	 * @param maxBytes The maximum number of bytes that the cache manager should use for cached glyphs and sizes
+	 */
+	public void enableFreeTypeCache(long maxBytes) {
+		if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes (" + maxBytes + ") must be positive");
+		synchronized (hbFonts) {
+			if (!faceCache.isEmpty() || !hbFonts.isEmpty()) {
+				throw new IllegalStateException("You must call this method BEFORE using this font");
+			}
+			if (freeTypeCache != null) throw new IllegalStateException("The FreeType cache is already enabled");
+			this.shapingBackend = ShapingBackend.HARFBUZZ;
+			this.freeTypeCache = new FreeTypeCache(textInstance, faceSources, maxBytes);
+		}
+	}
+
 	/**
 	 * @return The number of fonts/faces in this <i>FontData</i>
 	 */
@@ -84,6 +150,48 @@ public class FontData {
 		return faceSources.length;
 	}
 
+	/**
+	 * @return The version of the FreeType library that is used to rasterize the glyphs of this font, see
+	 * {@link TextInstance#getFreeTypeVersion()}
+	 */
+	public String getFreeTypeVersion() {
+		return textInstance.getFreeTypeVersion();
+	}
+
+	/**
+	 * Computes a SHA-256 hash of the contents of all fonts/faces in this <i>FontData</i>, as hexadecimal string. Two
+	 * <i>FontData</i>s with the same content hash will rasterize all glyphs in the same way, so this hash can be used
+	 * as key for persistent caches. The hash is only computed once.
+	 */
+	public String getContentHash() {
+		synchronized (faceSources) {
+			if (contentHash != null) return contentHash;
+
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException shouldNotHappen) {
+				throw new Error(shouldNotHappen);
+			}
+
+			for (var faceSource : faceSources) {
+				long hbFace = faceSource.createHarfBuzzFace();
+				long blob = hb_face_reference_blob(hbFace);
+				try {
+					int length = hb_blob_get_length(blob);
+					digest.update(ByteBuffer.allocate(4).putInt(0, length));
+					if (length > 0) digest.update(memByteBuffer(nhb_blob_get_data(blob, NULL), length));
+				} finally {
+					hb_blob_destroy(blob);
+					hb_face_destroy(hbFace);
+				}
+			}
+
+			contentHash = HexFormat.of().formatHex(digest.digest());
+			return contentHash;
+		}
+	}
+
 	/**
 	 * Borrows the face/font with index {@code faceIndex} from this {@link FontData}, with the given {@code height}.
 	 * Note that this method is intended for internal use, so you should probably not need to call this yourself. But
@@ -95,6 +203,11 @@ public class FontData {
 	 * @return The borrowed font/face
 	 */
 	public TextFace borrowFaceWithHeightA(int faceIndex, int height, int minScale) {
+		var faceSize = resolveHeightA(faceIndex, height, minScale);
+		return borrowFaceWithSize(faceIndex, faceSize.size, faceSize.scale);
+	}
+
+	private FaceSize resolveHeightA(int faceIndex, int height, int minScale) {
 		int originalHeight = height;
 		int heightScale = 1;
 		while ((height > maxHeight || heightScale < minScale) && originalHeight >= (heightScale + 1)) {
@@ -105,8 +218,61 @@ public class FontData {
 		int desiredRawHeight = height * 64;
 
 		int size = heightSearchers[faceIndex].search(desiredRawHeight, height * 64, 3, 640 * height);
+		return new FaceSize(size, heightScale);
+	}
 
-		return borrowFaceWithSize(faceIndex, size, heightScale);
+	/**
+	 * Borrows the HarfBuzz font and buffer that should be used to shape text using the face/font with index
+	 * {@code faceIndex}, such that the (uppercase) 'A' character will be {@code height} pixels high.
+	 * Note that this method is intended for internal use, so you should probably not need to call this yourself. But
+	 * if you do, make sure that you also call {@link #returnShapingFont(ShapingFont)}.
+	 * <p>
+	 *     When the {@link ShapingBackend} is {@link ShapingBackend#FREETYPE}, this borrows a {@link TextFace} under
+	 *     the hood. When it is {@link ShapingBackend#HARFBUZZ}, this only needs to create a new <i>hb_font</i> when
+	 *     the size is used for the first time.
+	 * </p>
+	 *
+	 * @param faceIndex The index of the face/font to borrow, must be at least 0 and smaller than {@link #getNumFaces()}
+	 * @param height The desired height of the (uppercase) 'A' character, in pixels
+	 * @param minScale The minimum {@link com.github.knokko.text.SizedGlyph#scale}
+	 * @return The borrowed shaping font
+	 */
+	public ShapingFont borrowShapingFontWithHeightA(int faceIndex, int height, int minScale) {
+		if (shapingBackend == ShapingBackend.FREETYPE) {
+			var face = borrowFaceWithHeightA(faceIndex, height, minScale);
+			return new ShapingFont(face.hbFont, face.hbBuffer, face.fontSize, face.scale, face);
+		}
+
+		var faceSize = resolveHeightA(faceIndex, height, minScale);
+		synchronized (hbFonts) {
+			// Creating an hb_font is cheap, and the number of distinct sizes is bounded by the max height
+			long hbFont = hbFonts.computeIfAbsent(new TextFaceKey(faceIndex, faceSize.size, 1), key -> {
+				if (hbFaces[faceIndex] == 0L) hbFaces[faceIndex] = faceSources[faceIndex].createHarfBuzzFace();
+
+				long newFont = hb_font_create(hbFaces[faceIndex]);
+				hb_ot_font_set_funcs(newFont);
+				hb_font_set_scale(newFont, key.size(), key.size());
+				hb_font_set_ppem(newFont, key.size() / 64, key.size() / 64);
+				hb_font_make_immutable(newFont);
+				return newFont;
+			});
+
+			long hbBuffer = hbBuffers.isEmpty() ? hb_buffer_create() : hbBuffers.remove(hbBuffers.size() - 1);
+			return new ShapingFont(hbFont, hbBuffer, faceSize.size, faceSize.scale, null);
+		}
+	}
+
+	/**
+	 * Returns a shaping font that was previously borrowed using {@link #borrowShapingFontWithHeightA}.
+	 * @param font The borrowed shaping font
+	 */
+	public void returnShapingFont(ShapingFont font) {
+		if (font.face != null) returnFace(font.face);
+		else {
+			synchronized (hbFonts) {
+				hbBuffers.add(font.hbBuffer);
+			}
+		}
 	}
 
 	/**
@@ -121,12 +287,14 @@ public class FontData {
 	 * @return The borrowed font/face
 	 */
 	public TextFace borrowFaceWithSize(int faceIndex, int size, int scale) {
+		if (freeTypeCache != null) return freeTypeCache.borrowFace(faceIndex, size, scale);
+
 		// Performance measurements: creating a FT_Face takes 10 to 40 microseconds, and allocates 10 to 30 KB
 		// Resizing an existing FT_Face takes 1 to 15 microseconds
+		var key = new TextFaceKey(faceIndex, size, scale);
 		synchronized (faceCache) {
 			totalBorrowCounter += 1;
 
-			var key = new TextFaceKey(faceIndex, size, scale);
 			var faceList = faceCache.computeIfAbsent(key, k -> new TextFaceList());
 			faceList.lastUsed = totalBorrowCounter;
 			faceList.borrowCounter += 1;
@@ -137,30 +305,38 @@ public class FontData {
 			if (!faceList.faces.isEmpty()) {
 				return faceList.faces.remove(faceList.faces.size() - 1);
 			}
-			try (var stack = stackPush()) {
-				var ftFace = textInstance.createFreeTypeFace(faceSources[faceIndex], stack);
-				openFaceCounter += 1;
+		}
 
-				if (openFaceCounter > 100) {
-					long oldestLastUsed = totalBorrowCounter;
+		// The new face is only visible to this thread, so only its creation needs the lock of the shard
+		TextFace newFace;
+		try (var stack = stackPush()) {
+			newFace = new TextFace(textInstance.createFreeTypeFace(faceSources[faceIndex], stack), size, scale, key);
+		}
 
-					for (var value : faceCache.values()) {
-						if (value.lastUsed < oldestLastUsed && !value.faces.isEmpty()) oldestLastUsed = value.lastUsed;
-					}
+		List<TextFace> oldFaces = new ArrayList<>();
+		synchronized (faceCache) {
+			openFaceCounter += 1;
 
-					for (var value : faceCache.values()) {
-						if (value.lastUsed == oldestLastUsed) {
-							openFaceCounter -= value.faces.size();
-							for (var face : value.faces) face.destroy();
-							value.faces.clear();
-						}
-					}
+			if (openFaceCounter > 100) {
+				long oldestLastUsed = totalBorrowCounter;
 
-					faceCache.values().removeIf(value -> value.faces.isEmpty() && value.borrowCounter == 0);
+				for (var value : faceCache.values()) {
+					if (value.lastUsed < oldestLastUsed && !value.faces.isEmpty()) oldestLastUsed = value.lastUsed;
 				}
-				return new TextFace(ftFace, size, scale, key);
+
+				for (var value : faceCache.values()) {
+					if (value.lastUsed == oldestLastUsed) {
+						openFaceCounter -= value.faces.size();
+						oldFaces.addAll(value.faces);
+						value.faces.clear();
+					}
+				}
+
+				faceCache.values().removeIf(value -> value.faces.isEmpty() && value.borrowCounter == 0);
 			}
 		}
+		for (var face : oldFaces) face.destroy(textInstance);
+		return newFace;
 	}
 
 	/**
@@ -169,6 +345,10 @@ public class FontData {
 	 * @param face The borrowed face/font
 	 */
 	public void returnFace(TextFace face) {
+		if (face.cached) {
+			freeTypeCache.returnFace(face);
+			return;
+		}
 		synchronized (faceCache) {
 			var faceList = faceCache.get(face.key);
 			faceList.faces.add(face);
@@ -177,21 +357,48 @@ public class FontData {
 		}
 	}
 
+	/**
+	 * Looks up the rasterized bitmap of the given glyph in the small bitmap cache (<i>FTC_SBitCache</i>) of the
+	 * FreeType cache manager. Note that this method is intended for internal use, so you should probably not need to
+	 * call this yourself.
+	 * @param face A face that is currently borrowed from this {@link FontData}, with the desired font and size
+	 * @param glyph The ID of the glyph to look up
+	 * @return The cached bitmap, which is only valid until {@code face} is returned. This method returns null when
+	 * the FreeType cache is not enabled, or when the glyph is too large for the small bitmap cache.
+	 */
+	public FTC_SBit lookupSmallBitmap(TextFace face, int glyph) {
+		if (!face.cached) return null;
+		return freeTypeCache.lookupSmallBitmap(face, glyph);
+	}
+
 	/**
 	 * Destroys this {@link FontData}. You should use this once you no longer need it.
 	 */
 	public void destroy() {
-		synchronized (textInstance) {
+		synchronized (faceCache) {
 			for (var faceList : faceCache.values()) {
-				for (var face : faceList.faces) face.destroy();
+				for (var face : faceList.faces) face.destroy(textInstance);
 			}
 			faceCache.clear();
 		}
+		synchronized (hbFonts) {
+			for (long hbFont : hbFonts.values()) hb_font_destroy(hbFont);
+			hbFonts.clear();
+			for (long hbBuffer : hbBuffers) hb_buffer_destroy(hbBuffer);
+			hbBuffers.clear();
+			for (int index = 0; index < hbFaces.length; index++) {
+				if (hbFaces[index] != 0L) hb_face_destroy(hbFaces[index]);
+				hbFaces[index] = 0L;
+			}
+		}
+		if (freeTypeCache != null) freeTypeCache.destroy();
 		for (var source : faceSources) source.destroy();
 	}
 
 	record TextFaceKey(int faceIndex, int size, int heightScale) {}
 
+	private record FaceSize(int size, int scale) {}
+
 	static class TextFaceList {
 
 		final List<TextFace> faces = new ArrayList<>();
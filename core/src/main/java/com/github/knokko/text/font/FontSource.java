@@ -11,7 +11,8 @@ package com.github.knokko.text.font;
  *     </li>
  *     <li>{@link ByteArraysFontSource}s contains the content of ttf files and/or otf files in byte arrays</li>
  * </ul>
- * That last one can be used as 'fallback' when you can't use any of the first two.
+ * That last one can be used as 'fallback' when you can't use any of the first two. Furthermore, you can wrap any of
+ * these in a {@link SubsetFontSource} to drop the glyphs that you don't need.
  */
 public abstract class FontSource {
 
@@ -0,0 +1,157 @@
+package com.github.knokko.text.font;
+
+import com.github.knokko.text.TextInstance;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.util.freetype.*;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.github.knokko.text.FreeTypeFailureException.assertFtSuccess;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.util.freetype.FreeType.*;
+
+/**
+ * Wraps FreeType cache managers (<i>FTC_Manager</i>) and their small bitmap caches (<i>FTC_SBitCache</i>). Each shard
+ * of the <i>TextInstance</i> gets its own cache manager, which creates at most 1 <i>FT_Face</i> per font, and 1
+ * <i>FT_Size</i> per (font, size). Since these faces are shared, at most 1 thread per shard can use them at the same
+ * time: borrowing a face locks the cache of the shard of the current thread until it is returned.
+ */
+class FreeTypeCache {
+
+	private static final long ASSUMED_SIZE_BYTES = 8 * 1024;
+
+	private final TextInstance textInstance;
+	private final Shard[] shards;
+
+	FreeTypeCache(TextInstance textInstance, FreeTypeFaceSource[] faceSources, long maxBytes) {
+		this.textInstance = textInstance;
+		this.shards = new Shard[textInstance.getNumShards()];
+
+		// The memory budget is divided over the shards
+		long shardBytes = Math.max(1L, maxBytes / shards.length);
+		for (int shard = 0; shard < shards.length; shard++) {
+			shards[shard] = new Shard(textInstance, faceSources, shard, shardBytes);
+		}
+	}
+
+	TextFace borrowFace(int faceIndex, int size, int scale) {
+		if (size <= 0) throw new IllegalArgumentException("Size (" + size + ") must be positive");
+		var shard = shards[textInstance.getCurrentShard()];
+		shard.lock.lock();
+		try {
+			shard.setScaler(faceIndex, size);
+			assertFtSuccess(FTC_Manager_LookupSize(
+					shard.manager, shard.scaler, shard.pResult
+			), "FTC_Manager_LookupSize", "face " + faceIndex + " with size " + size);
+			var ftSize = FT_Size.create(shard.pResult.get(0));
+			return new TextFace(ftSize.face(), new FontData.TextFaceKey(faceIndex, size, scale), shard.index);
+		} catch (RuntimeException failed) {
+			shard.lock.unlock();
+			throw failed;
+		}
+	}
+
+	void returnFace(TextFace face) {
+		shards[face.cacheShard].lock.unlock();
+	}
+
+	/**
+	 * Looks up the rendered bitmap of the given glyph in the small bitmap cache. This method must only be called while
+	 * {@code face} is borrowed, and the result is only valid until {@code face} is returned.
+	 * @return The cached bitmap, or null when the glyph is too large to be stored in the small bitmap cache
+	 */
+	FTC_SBit lookupSmallBitmap(TextFace face, int glyph) {
+		var shard = shards[face.cacheShard];
+		if (!shard.lock.isHeldByCurrentThread()) throw new IllegalStateException("The face must be borrowed");
+		shard.setScaler(face.key.faceIndex(), face.fontSize);
+		int result = FTC_SBitCache_LookupScaler(
+				shard.sbitCache, shard.scaler, FT_LOAD_RENDER, glyph, shard.pResult, null
+		);
+		if (result != FT_Err_Ok) return null;
+
+		var sbit = FTC_SBit.create(shard.pResult.get(0));
+		if (memGetAddress(sbit.address() + FTC_SBit.BUFFER) == NULL) return null;
+		return sbit;
+	}
+
+	void destroy() {
+		for (var shard : shards) shard.destroy();
+	}
+
+	/**
+	 * The cache manager of 1 shard of the <i>TextInstance</i>, which only creates faces in the <i>FT_Library</i> of
+	 * that shard
+	 */
+	private static class Shard {
+
+		final ReentrantLock lock = new ReentrantLock();
+		final TextInstance textInstance;
+		final int index;
+		final FTC_Face_Requester requester;
+		final long manager;
+		final long sbitCache;
+
+		final FTC_Scaler scaler = FTC_Scaler.calloc();
+		final PointerBuffer pResult = memAllocPointer(1);
+
+		Shard(TextInstance textInstance, FreeTypeFaceSource[] faceSources, int index, long maxBytes) {
+			this.textInstance = textInstance;
+			this.index = index;
+
+			// The face IDs are the face indices + 1, since FreeType doesn't like NULL face IDs
+			this.requester = FTC_Face_Requester.create((faceID, library, requestData, pFace) -> {
+				try (var stack = stackPush()) {
+					var source = faceSources[(int) faceID - 1];
+					FT_Face ftFace;
+					synchronized (textInstance.getShardLock(index)) {
+						ftFace = source.createFreeTypeFace(textInstance.getFreeTypeLibrary(index), stack);
+					}
+					memPutAddress(pFace, ftFace.address());
+					return FT_Err_Ok;
+				} catch (RuntimeException failed) {
+					return FT_Err_Cannot_Open_Resource;
+				}
+			});
+
+			// The faces are never evicted, since FT_Done_Face must not race with the creation of other faces
+			int maxSizes = (int) Math.max(4, Math.min(1000, maxBytes / ASSUMED_SIZE_BYTES));
+			try (var stack = stackPush()) {
+				var pManager = stack.callocPointer(1);
+				assertFtSuccess(FTC_Manager_New(
+						textInstance.getFreeTypeLibrary(index), faceSources.length, maxSizes, maxBytes,
+						requester, NULL, pManager
+				), "FTC_Manager_New", "FreeTypeCache");
+				this.manager = pManager.get(0);
+
+				var pCache = stack.callocPointer(1);
+				assertFtSuccess(FTC_SBitCache_New(manager, pCache), "FTC_SBitCache_New", "FreeTypeCache");
+				this.sbitCache = pCache.get(0);
+			}
+		}
+
+		void setScaler(int faceIndex, int size) {
+			scaler.face_id(faceIndex + 1);
+			scaler.width(size);
+			scaler.height(size);
+			scaler.pixel(0);
+			scaler.x_res(0);
+			scaler.y_res(0);
+		}
+
+		void destroy() {
+			lock.lock();
+			try {
+				// FTC_Manager_Done destroys the faces, which must not race with the creation of other faces
+				synchronized (textInstance.getShardLock(index)) {
+					FTC_Manager_Done(manager);
+				}
+				requester.free();
+				scaler.free();
+				memFree(pResult);
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
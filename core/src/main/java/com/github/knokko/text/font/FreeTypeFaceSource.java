@@ -10,5 +10,10 @@ public interface FreeTypeFaceSource {
 
 	FT_Face createFreeTypeFace(long ftLibrary, MemoryStack stack);
 
+	/**
+	 * Creates an <i>hb_face_t</i> for the same font. The caller is responsible for destroying it.
+	 */
+	long createHarfBuzzFace();
+
 	void destroy();
 }
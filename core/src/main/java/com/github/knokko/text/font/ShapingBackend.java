@@ -0,0 +1,25 @@
+package com.github.knokko.text.font;
+
+/**
+ * Determines which HarfBuzz font objects a {@link FontData} uses to shape text (stage 1 of the pipeline). Rasterization
+ * (stage 2) always uses FreeType, regardless of the shaping backend.
+ */
+public enum ShapingBackend {
+
+	/**
+	 * Each (face, size, scale) gets its own <i>FT_Face</i>, and an <i>hb_font</i> that is created using
+	 * <i>hb_ft_font_create_referenced</i>. HarfBuzz will use FreeType to get the glyph advances, which includes
+	 * hinting. This is the default backend.
+	 */
+	FREETYPE,
+
+	/**
+	 * Each font gets exactly 1 <i>hb_face</i>, which is shared by lightweight per-size <i>hb_font</i>s that use the
+	 * built-in OpenType functions of HarfBuzz, and are scaled using <i>hb_font_set_scale</i>. The bounds of the glyphs
+	 * are also computed by HarfBuzz, so stage 1 doesn't need to create any <i>FT_Face</i>, except to find the font
+	 * size of each text height (which is done only once per height). This needs much less memory per size. However,
+	 * the glyph advances and bounds are not hinted, so glyph positions may differ by a pixel from the
+	 * {@link #FREETYPE} backend.
+	 */
+	HARFBUZZ
+}
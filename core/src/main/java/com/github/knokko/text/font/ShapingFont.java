@@ -0,0 +1,27 @@
+package com.github.knokko.text.font;
+
+/**
+ * This class is meant for internal use only. It wraps the HarfBuzz font and buffer that should be used to shape text
+ * with a given face, size, and scale. Instances can be borrowed using {@link FontData#borrowShapingFontWithHeightA},
+ * and must be returned using {@link FontData#returnShapingFont}.
+ */
+public class ShapingFont {
+
+	public final long hbFont;
+	public final long hbBuffer;
+	public final int fontSize, scale;
+	final TextFace face;
+
+	ShapingFont(long hbFont, long hbBuffer, int fontSize, int scale, TextFace face) {
+		this.hbFont = hbFont;
+		this.hbBuffer = hbBuffer;
+		this.fontSize = fontSize;
+		this.scale = scale;
+		this.face = face;
+	}
+
+	@Override
+	public String toString() {
+		return "ShapingFont(size = " + fontSize + ", scale = " + scale + ")";
+	}
+}
@@ -0,0 +1,195 @@
+package com.github.knokko.text.font;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HexFormat;
+
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.util.harfbuzz.HarfBuzz.*;
+
+/**
+ * A {@link FontSource} that wraps another {@link FontSource}, and uses the HarfBuzz subsetter to remove all glyphs
+ * that are not needed to render a given set of codepoints. This is useful for large fonts of which you only need a
+ * small part, since the subset fonts will need much less (native) memory.
+ * <p>
+ *     The shaping tables (GSUB, GPOS, and GDEF) are subset as well, but all their layout features are kept, so the
+ *     shaping of the remaining codepoints is not affected.
+ * </p>
+ * Subsetting a large font can take a while, so you can use {@link #setCacheDirectory} to store the subset fonts on
+ * disk, so that they only need to be computed once.
+ */
+public class SubsetFontSource extends FontSource {
+
+	private static final String CACHE_VERSION = "subset-v1";
+
+	private static int[] getCodepoints(Character.UnicodeScript[] scripts) {
+		var scriptSet = EnumSet.noneOf(Character.UnicodeScript.class);
+		scriptSet.addAll(Arrays.asList(scripts));
+		scriptSet.add(Character.UnicodeScript.COMMON);
+		scriptSet.add(Character.UnicodeScript.INHERITED);
+
+		int[] codepoints = new int[1000];
+		int numCodepoints = 0;
+		for (int codepoint = 0; codepoint <= Character.MAX_CODE_POINT; codepoint++) {
+			if (Character.getType(codepoint) == Character.UNASSIGNED) continue;
+			if (!scriptSet.contains(Character.UnicodeScript.of(codepoint))) continue;
+
+			if (numCodepoints == codepoints.length) codepoints = Arrays.copyOf(codepoints, 2 * numCodepoints);
+			codepoints[numCodepoints] = codepoint;
+			numCodepoints += 1;
+		}
+		return Arrays.copyOf(codepoints, numCodepoints);
+	}
+
+	private final FontSource source;
+	private final int[] codepoints;
+	private File cacheDirectory;
+
+	/**
+	 * Constructs a {@link SubsetFontSource} that will only keep the glyphs needed to render the given codepoints
+	 * @param source The source of the original fonts
+	 * @param codepoints The unicode codepoints that you need
+	 */
+	public SubsetFontSource(FontSource source, int... codepoints) {
+		this.source = source;
+		this.codepoints = Arrays.stream(codepoints).sorted().distinct().toArray();
+	}
+
+	/**
+	 * Constructs a {@link SubsetFontSource} that will only keep the glyphs needed to render the codepoints of the
+	 * given scripts. The {@link Character.UnicodeScript#COMMON} and {@link Character.UnicodeScript#INHERITED}
+	 * codepoints (e.g. digits, punctuation, and combining marks) are always kept.
+	 * @param source The source of the original fonts
+	 * @param scripts The scripts that you need
+	 */
+	public SubsetFontSource(FontSource source, Character.UnicodeScript... scripts) {
+		this.source = source;
+		this.codepoints = getCodepoints(scripts);
+	}
+
+	/**
+	 * Lets this source store the subset fonts in the given directory, and reuse them the next time the same font is
+	 * subset to the same codepoints. The files are named after a hash of the original font and the codepoints, so
+	 * multiple sources can share the same directory.
+	 * This method must be called <b>before</b> this source is passed to a <i>FontData</i>
+	 */
+	public void setCacheDirectory(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	@Override
+	FreeTypeFaceSource[] loadData() {
+		var originalSources = source.loadData();
+		var subsetSources = new FreeTypeFaceSource[originalSources.length];
+		for (int index = 0; index < originalSources.length; index++) {
+			subsetSources[index] = new ByteBufferFaceSource(subset(originalSources[index]));
+
+			// The subset data is copied to a new buffer, so the original data is no longer needed
+			originalSources[index].destroy();
+		}
+		return subsetSources;
+	}
+
+	private ByteBuffer subset(FreeTypeFaceSource original) {
+		long originalFace = original.createHarfBuzzFace();
+		try {
+			File cacheFile = null;
+			if (cacheDirectory != null) {
+				cacheFile = new File(cacheDirectory, computeCacheKey(originalFace) + ".ttf");
+				if (cacheFile.isFile()) {
+					try {
+						var cachedBytes = Files.readAllBytes(cacheFile.toPath());
+						var cachedBuffer = memAlloc(cachedBytes.length);
+						cachedBuffer.put(0, cachedBytes);
+						return cachedBuffer;
+					} catch (IOException failed) {
+						// If the cache file can't be read, we just compute the subset again
+					}
+				}
+			}
+
+			var subsetBuffer = computeSubset(originalFace);
+			if (cacheFile != null) {
+				var subsetBytes = new byte[subsetBuffer.capacity()];
+				subsetBuffer.get(0, subsetBytes);
+				try {
+					Files.createDirectories(cacheDirectory.toPath());
+					var tempFile = new File(cacheDirectory, cacheFile.getName() + ".tmp");
+					Files.write(tempFile.toPath(), subsetBytes);
+					if (!tempFile.renameTo(cacheFile)) Files.deleteIfExists(tempFile.toPath());
+				} catch (IOException failed) {
+					// Failing to write the cache file only affects the performance of the next run
+				}
+			}
+			return subsetBuffer;
+		} finally {
+			hb_face_destroy(originalFace);
+		}
+	}
+
+	private ByteBuffer computeSubset(long originalFace) {
+		long input = hb_subset_input_create_or_fail();
+		if (input == NULL) throw new IllegalStateException("Failed to create hb_subset_input_t");
+
+		try {
+			long unicodes = hb_subset_input_unicode_set(input);
+			int rangeStart = 0;
+			while (rangeStart < codepoints.length) {
+				int rangeEnd = rangeStart;
+				while (rangeEnd + 1 < codepoints.length && codepoints[rangeEnd + 1] == codepoints[rangeEnd] + 1) {
+					rangeEnd += 1;
+				}
+				hb_set_add_range(unicodes, codepoints[rangeStart], codepoints[rangeEnd]);
+				rangeStart = rangeEnd + 1;
+			}
+
+			// By default, HarfBuzz drops the layout features that it doesn't consider to be common
+			hb_set_invert(hb_subset_input_set(input, HB_SUBSET_SETS_LAYOUT_FEATURE_TAG));
+
+			long subsetFace = hb_subset_or_fail(originalFace, input);
+			if (subsetFace == NULL) throw new IllegalStateException("Failed to subset font");
+
+			long subsetBlob = hb_face_reference_blob(subsetFace);
+			try {
+				int length = hb_blob_get_length(subsetBlob);
+				var subsetBuffer = memAlloc(length);
+				memCopy(nhb_blob_get_data(subsetBlob, NULL), memAddress(subsetBuffer), length);
+				return subsetBuffer;
+			} finally {
+				hb_blob_destroy(subsetBlob);
+				hb_face_destroy(subsetFace);
+			}
+		} finally {
+			hb_subset_input_destroy(input);
+		}
+	}
+
+	private String computeCacheKey(long originalFace) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException shouldNotHappen) {
+			throw new Error(shouldNotHappen);
+		}
+
+		digest.update(CACHE_VERSION.getBytes());
+		long originalBlob = hb_face_reference_blob(originalFace);
+		try {
+			int length = hb_blob_get_length(originalBlob);
+			if (length > 0) digest.update(memByteBuffer(nhb_blob_get_data(originalBlob, NULL), length));
+		} finally {
+			hb_blob_destroy(originalBlob);
+		}
+
+		var codepointBytes = ByteBuffer.allocate(4 * codepoints.length);
+		codepointBytes.asIntBuffer().put(codepoints);
+		digest.update(codepointBytes);
+		return HexFormat.of().formatHex(digest.digest());
+	}
+}
@@ -1,5 +1,6 @@
 package com.github.knokko.text.font;
 
+import com.github.knokko.text.TextInstance;
 import org.lwjgl.util.freetype.FT_Face;
 
 import static com.github.knokko.text.FreeTypeFailureException.assertFtSuccess;
@@ -7,7 +8,9 @@ import static org.lwjgl.util.freetype.FreeType.*;
 import static org.lwjgl.util.harfbuzz.HarfBuzz.*;
 
 /**
- * This class is meant for internal use only. It wraps a FreeType face and some HarfBuzz objects.
+ * This class is meant for internal use only. It wraps a FreeType face and some HarfBuzz objects. When the
+ * <i>FontData</i> uses a FreeType cache manager, the face is shared by all sizes within the same shard, and the
+ * HarfBuzz objects are not created ({@link #hbFont} and {@link #hbBuffer} will be 0).
  */
 public class TextFace {
 
@@ -16,11 +19,26 @@ public class TextFace {
 	public final long hbFont;
 	public final long hbBuffer;
 	final FontData.TextFaceKey key;
+	final boolean cached;
+	final int cacheShard;
+
+	TextFace(FT_Face sharedFace, FontData.TextFaceKey key, int cacheShard) {
+		this.ftFace = sharedFace;
+		this.fontSize = key.size();
+		this.scale = key.heightScale();
+		this.hbFont = 0L;
+		this.hbBuffer = 0L;
+		this.key = key;
+		this.cached = true;
+		this.cacheShard = cacheShard;
+	}
 
 	TextFace(FT_Face ftFace, int size, int scale, FontData.TextFaceKey key) {
 		this.ftFace = ftFace;
 		this.hbBuffer = hb_buffer_create();
 		this.key = key;
+		this.cached = false;
+		this.cacheShard = -1;
 
 		if (size <= 0) throw new IllegalArgumentException("Size (" + size + ") must be positive");
 
@@ -40,8 +58,10 @@ public class TextFace {
 		return "TextFace(size = " + fontSize + ", scale = " + scale + ")";
 	}
 
-	void destroy() {
-		assertFtSuccess(FT_Done_Face(ftFace), "Done_Face", "TextFace.destroy");
+	void destroy(TextInstance textInstance) {
+		// The hb_font_t holds a reference to the face, so it must be destroyed first
+		hb_font_destroy(hbFont);
 		hb_buffer_destroy(hbBuffer);
+		textInstance.destroyFreeTypeFace(ftFace);
 	}
 }
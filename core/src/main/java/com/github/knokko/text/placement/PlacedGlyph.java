@@ -22,6 +22,14 @@ public class PlacedGlyph {
 	 */
 	public int minX, minY;
 
+	/**
+	 * The size of the bitmap of the glyph on the screen (so including its {@link SizedGlyph#scale}), as computed
+	 * during stage 1. This may be slightly larger than the real bitmap, but never smaller. Stage 2 uses this to skip
+	 * glyphs that are outside the clip rectangle without rasterizing them. This is -1 when the size is unknown, in
+	 * which case glyphs that are left of (or above) the clip rectangle can't be skipped.
+	 */
+	public final int width, height;
+
 	/**
 	 * The <i>TextPlaceRequest</i> for which this glyph was placed. This information is normally not needed to render
 	 * the glyph, but it can be used to propagate data from stage 1 to stage 3, which some users may need.
@@ -38,14 +46,26 @@ public class PlacedGlyph {
 	/**
 	 * Constructs a new <i>PlacedGlyph</i>. This constructor is intended for internal usage only.
 	 */
-	public PlacedGlyph(SizedGlyph glyph, int minX, int minY, TextPlaceRequest request, int charIndex) {
+	public PlacedGlyph(
+			SizedGlyph glyph, int minX, int minY, int width, int height, TextPlaceRequest request, int charIndex
+	) {
 		this.glyph = Objects.requireNonNull(glyph);
 		this.minX = minX;
 		this.minY = minY;
+		this.width = width;
+		this.height = height;
 		this.request = request;
 		this.charIndex = charIndex;
 	}
 
+	/**
+	 * Constructs a new <i>PlacedGlyph</i> whose bitmap size is unknown. This constructor is intended for internal
+	 * usage only.
+	 */
+	public PlacedGlyph(SizedGlyph glyph, int minX, int minY, TextPlaceRequest request, int charIndex) {
+		this(glyph, minX, minY, -1, -1, request, charIndex);
+	}
+
 	@Override
 	public String toString() {
 		return "PlacedGlyph(" + minX + ", " + minY + ", glyph=" + glyph + ")";
@@ -2,7 +2,10 @@ package com.github.knokko.text.placement;
 
 import com.github.knokko.text.SizedGlyph;
 import com.github.knokko.text.font.FontData;
+import com.github.knokko.text.font.ShapingBackend;
+import com.github.knokko.text.font.ShapingFont;
 import org.lwjgl.system.MemoryStack;
+import org.lwjgl.util.harfbuzz.hb_glyph_extents_t;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -20,6 +23,7 @@ import static com.github.knokko.text.FreeTypeFailureException.assertFtSuccess;
 import static java.lang.Math.min;
 import static org.lwjgl.system.MemoryUtil.*;
 import static org.lwjgl.util.freetype.FreeType.*;
+import static org.lwjgl.util.harfbuzz.HarfBuzz.hb_font_get_glyph_extents;
 
 /**
  * The <i>TextPlacer</i> is responsible for stage 1 of the text rendering pipeline: it determines the position of
@@ -32,6 +36,8 @@ public class TextPlacer {
 			0, 0, 1, TextAlignment.DEFAULT, null
 	);
 
+	private static final int HINTING_MARGIN = 2;
+
 	private final FontData fontData;
 	private final ConcurrentHashMap<GlyphOffsetKey, GlyphOffset> glyphOffsets = new ConcurrentHashMap<>();
 	private final ConcurrentSkipListSet<ByteBuffer> allocations = new ConcurrentSkipListSet<>((a, b) -> {
@@ -75,6 +81,7 @@ public class TextPlacer {
 						placement.glyph,
 						request.minX + placement.minX,
 						request.baseY + placement.minY,
+						placement.width, placement.height,
 						placement.request,
 						placement.charIndex
 				));
@@ -164,7 +171,7 @@ public class TextPlacer {
 
 		runLoop:
 		for (TextRun run : runs) {
-			var currentFace = fontData.borrowFaceWithHeightA(run.faceIndex(), request.heightA, request.minScale);
+			var currentFace = fontData.borrowShapingFontWithHeightA(run.faceIndex(), request.heightA, request.minScale);
 
 			if (run.glyphInfos() != null && run.glyphPositions() != null) {
 				for (int glyphIndex = 0; glyphIndex < run.glyphPositions().limit(); glyphIndex++) {
@@ -178,13 +185,18 @@ public class TextPlacer {
 					var glyphOffset = glyphOffsets.computeIfAbsent(new GlyphOffsetKey(
 							request.heightA, request.minScale, run.faceIndex(), glyph
 					), key -> {
+						if (fontData.getShapingBackend() == ShapingBackend.HARFBUZZ) {
+							return computeHarfBuzzOffset(currentFace, key.glyph, stack);
+						}
 						var tempFace = fontData.borrowFaceWithHeightA(key.fontIndex, key.heightA, key.minScale);
 						String context = "face=" + tempFace.ftFace + ", glyph=" + key.glyph + ", string=" + run.text();
 						assertFtSuccess(FT_Load_Glyph(tempFace.ftFace, key.glyph, FT_LOAD_BITMAP_METRICS_ONLY), "FT_Load_Glyph", context);
 						var glyphSlot = tempFace.ftFace.glyph();
 						if (glyphSlot == null) throw new RuntimeException("Glyph slot should not be null right now");
+						// FreeType computes the bitmap size even though the bitmap is not rendered
+						@SuppressWarnings("resource") var bitmap = glyphSlot.bitmap();
 						var result = new GlyphOffset(
-								glyphSlot.bitmap_left(), glyphSlot.bitmap_top(),
+								glyphSlot.bitmap_left(), glyphSlot.bitmap_top(), bitmap.width(), bitmap.rows(),
 								(int) glyphSlot.lsb_delta(), (int) glyphSlot.rsb_delta()
 						);
 						fontData.returnFace(tempFace);
@@ -214,7 +226,8 @@ public class TextPlacer {
 					if ((placedMinX <= (request.maxX - request.minX) || !hasRightGap) && placedMinY <= (request.maxY - request.minY)) {
 						placements.add(new PlacedGlyph(
 								new SizedGlyph(glyph, run.faceIndex(), currentFace.fontSize, scale),
-								placedMinX, placedMinY, request, charIndex
+								placedMinX, placedMinY, scale * glyphOffset.bitmapWidth,
+								scale * glyphOffset.bitmapHeight, request, charIndex
 						));
 					}
 
@@ -222,13 +235,13 @@ public class TextPlacer {
 					cursorY += scale * position.y_advance();
 
 					if (cursorX > 64 * (request.getWidth() + 2 * request.heightA) && hasRightGap) {
-						fontData.returnFace(currentFace);
+						fontData.returnShapingFont(currentFace);
 						break runLoop;
 					}
 				}
 			}
 
-			fontData.returnFace(currentFace);
+			fontData.returnShapingFont(currentFace);
 		}
 
 		if (!hasRightGap) {
@@ -236,8 +249,8 @@ public class TextPlacer {
 			if (request.alignment == TextAlignment.CENTER) shift /= 2;
 			int finalShift = shift;
 			placements = placements.stream().map(placement -> new PlacedGlyph(
-					placement.glyph, placement.minX + finalShift,
-					placement.minY, placement.request, placement.charIndex
+					placement.glyph, placement.minX + finalShift, placement.minY,
+					placement.width, placement.height, placement.request, placement.charIndex
 			)).collect(Collectors.toList());
 
 			int cutIndex;
@@ -251,6 +264,30 @@ public class TextPlacer {
 		return placements;
 	}
 
+	/**
+	 * Computes the offset of the given glyph from its (unhinted) HarfBuzz extents, so that the
+	 * {@link ShapingBackend#HARFBUZZ} backend doesn't need an <i>FT_Face</i> during stage 1. The extents are rounded
+	 * to whole pixels in the same way as FreeType rounds the bounding box of a glyph when it renders it. Since
+	 * FreeType may move each edge of a glyph by up to 1 pixel when hinting it, the bitmap size is enlarged by
+	 * {@link #HINTING_MARGIN} pixels, which keeps the culling of stage 2 conservative.
+	 */
+	private static GlyphOffset computeHarfBuzzOffset(ShapingFont font, int glyph, MemoryStack stack) {
+		try (var frame = stack.push()) {
+			var extents = hb_glyph_extents_t.malloc(frame);
+			if (!hb_font_get_glyph_extents(font.hbFont, glyph, extents)) return new GlyphOffset(0, 0, 0, 0, 0, 0);
+
+			int left = Math.floorDiv(extents.x_bearing(), 64);
+			int right = -Math.floorDiv(-extents.x_bearing() - extents.width(), 64);
+			int top = -Math.floorDiv(-extents.y_bearing(), 64);
+			int bottom = Math.floorDiv(extents.y_bearing() + extents.height(), 64);
+			int width = right > left ? right - left + HINTING_MARGIN : 0;
+			int height = top > bottom ? top - bottom + HINTING_MARGIN : 0;
+
+			// The lsb and rsb deltas are only caused by hinting
+			return new GlyphOffset(left, top, width, height, 0, 0);
+		}
+	}
+
 	/**
 	 * Destroys this <i>TextPlacer</i>. It won't be able to handle any further requests.
 	 */
@@ -265,12 +302,14 @@ public class TextPlacer {
 	record GlyphOffsetKey(int heightA, int minScale, int fontIndex, int glyph) {}
 
 	static class GlyphOffset {
-		final int bitmapLeft, bitmapTop, lsbDelta, rsbDelta;
+		final int bitmapLeft, bitmapTop, bitmapWidth, bitmapHeight, lsbDelta, rsbDelta;
 		long lastUsed;
 
-		GlyphOffset(int bitmapLeft, int bitmapTop, int lsbDelta, int rsbDelta) {
+		GlyphOffset(int bitmapLeft, int bitmapTop, int bitmapWidth, int bitmapHeight, int lsbDelta, int rsbDelta) {
 			this.bitmapLeft = bitmapLeft;
 			this.bitmapTop = bitmapTop;
+			this.bitmapWidth = bitmapWidth;
+			this.bitmapHeight = bitmapHeight;
 			this.lsbDelta = lsbDelta;
 			this.rsbDelta = rsbDelta;
 		}
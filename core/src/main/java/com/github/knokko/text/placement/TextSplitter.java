@@ -1,7 +1,7 @@
 package com.github.knokko.text.placement;
 
 import com.github.knokko.text.font.FontData;
-import com.github.knokko.text.font.TextFace;
+import com.github.knokko.text.font.ShapingFont;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.util.harfbuzz.hb_glyph_info_t;
 import org.lwjgl.util.harfbuzz.hb_glyph_position_t;
@@ -126,7 +126,7 @@ class TextSplitter {
 	}
 
 	private void updateGlyphInfoAndPositions(
-			ByteBuffer originalStringBuffer, int offset, int limit, TextFace font
+			ByteBuffer originalStringBuffer, int offset, int limit, ShapingFont font
 	) {
 		hb_buffer_reset(font.hbBuffer);
 		hb_buffer_add_utf16(font.hbBuffer, originalStringBuffer, offset, limit - offset);
@@ -141,7 +141,7 @@ class TextSplitter {
 	) {
 		if (limit <= offset) return Collections.emptyList();
 
-		var face = fontData.borrowFaceWithHeightA(faceIndex, height, request.minScale);
+		var face = fontData.borrowShapingFontWithHeightA(faceIndex, height, request.minScale);
 		updateGlyphInfoAndPositions(originalStringBuffer, offset, limit, face);
 		var initialGlyphInfo = Objects.requireNonNull(hb_buffer_get_glyph_infos(face.hbBuffer));
 		var initialGlyphPositions = Objects.requireNonNull(hb_buffer_get_glyph_positions(face.hbBuffer));
@@ -153,11 +153,11 @@ class TextSplitter {
 			String smallString = originalString.substring(substrings.get(0).startIndex(), substrings.get(0).limit());
 			runs.add(extractGlyphIntoTextRun(smallString, substrings.get(0), initialGlyphInfo, initialGlyphPositions, stack));
 
-			fontData.returnFace(face);
+			fontData.returnShapingFont(face);
 			return runs;
 		}
 
-		fontData.returnFace(face);
+		fontData.returnShapingFont(face);
 
 		for (Substring substring : substrings) {
 
@@ -174,7 +174,7 @@ class TextSplitter {
 							faceIndex + 1, stack
 					));
 				} else {
-					face = fontData.borrowFaceWithHeightA(0, height, request.minScale);
+					face = fontData.borrowShapingFontWithHeightA(0, height, request.minScale);
 					updateGlyphInfoAndPositions(originalStringBuffer, substring.startIndex, substring.limit, face);
 					var newGlyphInfo = Objects.requireNonNull(hb_buffer_get_glyph_infos(face.hbBuffer));
 					var glyphPositions = Objects.requireNonNull(hb_buffer_get_glyph_positions(face.hbBuffer));
@@ -185,7 +185,7 @@ class TextSplitter {
 							newGlyphInfo, glyphPositions, stack
 					));
 
-					fontData.returnFace(face);
+					fontData.returnShapingFont(face);
 				}
 			}
 		}
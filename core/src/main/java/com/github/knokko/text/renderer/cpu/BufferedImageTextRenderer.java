@@ -1,5 +1,7 @@
 package com.github.knokko.text.renderer.cpu;
 
+import com.github.knokko.text.bitmap.ConcurrentGlyphsBuffer;
+import com.github.knokko.text.bitmap.GlyphStorageFormat;
 import com.github.knokko.text.font.FontData;
 
 import java.awt.*;
@@ -25,6 +27,30 @@ public class BufferedImageTextRenderer extends CpuTextRenderer {
 		this.image = image;
 	}
 
+	/**
+	 * @param image The image onto which this renderer will draw the text
+	 * @param font The font(s) that will be used to render the text
+	 * @param glyphBufferCapacity The capacity of the glyph buffer that will be used for stage 2, in bytes
+	 * @param storageFormat The format in which the glyph buffer will store the glyphs
+	 */
+	public BufferedImageTextRenderer(
+			BufferedImage image, FontData font, int glyphBufferCapacity, GlyphStorageFormat storageFormat
+	) {
+		super(font, glyphBufferCapacity, storageFormat);
+		this.image = image;
+	}
+
+	/**
+	 * @param image The image onto which this renderer will draw the text
+	 * @param font The font(s) that will be used to render the text
+	 * @param sharedGlyphsBuffer The glyph buffer that is shared with other renderers, see
+	 *                           {@link CpuTextRenderer#CpuTextRenderer(FontData, ConcurrentGlyphsBuffer)}
+	 */
+	public BufferedImageTextRenderer(BufferedImage image, FontData font, ConcurrentGlyphsBuffer sharedGlyphsBuffer) {
+		super(font, sharedGlyphsBuffer);
+		this.image = image;
+	}
+
 	@Override
 	public void setPixel(int x, int y, int value) {
 		if (x >= 0 && y >= 0 && x < image.getWidth() && y < image.getHeight()) {
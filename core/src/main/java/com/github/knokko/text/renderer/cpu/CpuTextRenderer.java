@@ -1,13 +1,26 @@
 package com.github.knokko.text.renderer.cpu;
 
 import com.github.knokko.text.bitmap.FreeTypeGlyphRasterizer;
+import com.github.knokko.text.bitmap.GlyphPrewarmer;
+import com.github.knokko.text.bitmap.GlyphRasterizer;
+import com.github.knokko.text.bitmap.GlyphStorageFormat;
+import com.github.knokko.text.bitmap.PrewarmedGlyphRasterizer;
 import com.github.knokko.text.font.FontData;
 import com.github.knokko.text.bitmap.BitmapGlyphsBuffer;
+import com.github.knokko.text.bitmap.ConcurrentGlyphsBuffer;
+import com.github.knokko.text.bitmap.GlyphBufferCapacityException;
+import com.github.knokko.text.bitmap.GlyphQuad;
 import com.github.knokko.text.placement.TextPlaceRequest;
 import com.github.knokko.text.placement.TextPlacer;
+import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
 
 import static org.lwjgl.system.MemoryUtil.*;
 
@@ -22,16 +35,57 @@ import static org.lwjgl.system.MemoryUtil.*;
  */
 public abstract class CpuTextRenderer {
 
-	private final FreeTypeGlyphRasterizer rasterizer;
+	private final FontData font;
+	private final PrewarmedGlyphRasterizer rasterizer;
+	private GlyphRasterizer[] rasterizers;
+	private Executor rasterizationExecutor;
 	private final TextPlacer placer;
-	private final ByteBuffer byteBuffer;
+	private final GlyphStorageFormat storageFormat;
 	private final BitmapGlyphsBuffer glyphsBuffer;
+	private final ConcurrentGlyphsBuffer sharedGlyphsBuffer;
+	private final List<ByteBuffer> spillPages = new ArrayList<>();
 
 	public CpuTextRenderer(FontData font, int glyphBufferCapacity) {
-		this.rasterizer = new FreeTypeGlyphRasterizer(font);
+		this(font, glyphBufferCapacity, GlyphStorageFormat.INTENSITY_8);
+	}
+
+	/**
+	 * @param font The font(s) that will be used to render the text
+	 * @param glyphBufferCapacity The capacity of the glyph buffer that will be used for stage 2, in bytes
+	 * @param storageFormat The format in which the glyph buffer will store the glyphs. The packed formats can store
+	 *                      more glyphs in the same capacity, but with less intensity levels.
+	 */
+	public CpuTextRenderer(FontData font, int glyphBufferCapacity, GlyphStorageFormat storageFormat) {
+		this.font = font;
+		this.rasterizer = new PrewarmedGlyphRasterizer(
+				new FreeTypeGlyphRasterizer(font), new FreeTypeGlyphRasterizer(font)
+		);
+		this.rasterizers = new GlyphRasterizer[] { rasterizer };
+		this.placer = new TextPlacer(font);
+		this.storageFormat = storageFormat;
+		this.glyphsBuffer = new BitmapGlyphsBuffer(
+				memAddress(memAlloc(glyphBufferCapacity)), glyphBufferCapacity, 120, storageFormat
+		);
+		this.sharedGlyphsBuffer = null;
+	}
+
+	/**
+	 * Constructs a renderer that uses a shared glyph buffer for stage 2, rather than a glyph buffer of its own. This
+	 * allows many renderers to share 1 glyph cache while they render on different threads, so each glyph only needs
+	 * to be rasterized once. Each renderer must still be used by at most 1 thread at a time.
+	 * @param font The font(s) that will be used to render the text
+	 * @param sharedGlyphsBuffer The shared glyph buffer. This renderer won't destroy it.
+	 */
+	public CpuTextRenderer(FontData font, ConcurrentGlyphsBuffer sharedGlyphsBuffer) {
+		this.font = font;
+		this.rasterizer = new PrewarmedGlyphRasterizer(
+				new FreeTypeGlyphRasterizer(font), new FreeTypeGlyphRasterizer(font)
+		);
+		this.rasterizers = new GlyphRasterizer[] { rasterizer };
 		this.placer = new TextPlacer(font);
-		this.byteBuffer = memAlloc(glyphBufferCapacity);
-		this.glyphsBuffer = new BitmapGlyphsBuffer(memAddress(byteBuffer), glyphBufferCapacity);
+		this.storageFormat = sharedGlyphsBuffer.getStorageFormat();
+		this.glyphsBuffer = null;
+		this.sharedGlyphsBuffer = sharedGlyphsBuffer;
 	}
 
 	/**
@@ -42,24 +96,123 @@ public abstract class CpuTextRenderer {
 	 */
 	public abstract void setPixel(int x, int y, int value);
 
+	/**
+	 * Makes this renderer rasterize new glyphs on {@code numThreads} threads: the render thread and
+	 * {@code numThreads - 1} tasks on the given executor, see
+	 * {@link BitmapGlyphsBuffer#bufferGlyphs(GlyphRasterizer[], Executor, List)}. This is useful when many new glyphs
+	 * can appear at the same time, for instance when a page of Chinese text is shown for the first time.
+	 * <p>
+	 *     When the font uses a FreeType cache (see {@link FontData#enableFreeTypeCache}), the threads can only
+	 *     rasterize concurrently when they use different shards of the <i>TextInstance</i>.
+	 * </p>
+	 * <p>
+	 *     This method must be called <b>before</b> using this renderer.
+	 * </p>
+	 * @param executor The executor on which the other threads will rasterize glyphs
+	 * @param numThreads The total number of threads that will rasterize glyphs, including the render thread
+	 */
+	public void setParallelRasterization(Executor executor, int numThreads) {
+		if (glyphsBuffer == null) throw new IllegalStateException("Not supported with a shared glyph buffer");
+		if (numThreads < 1) throw new IllegalArgumentException("numThreads (" + numThreads + ") must be positive");
+		for (int index = 1; index < rasterizers.length; index++) rasterizers[index].destroy();
+
+		this.rasterizers = new GlyphRasterizer[numThreads];
+		this.rasterizers[0] = rasterizer;
+		for (int index = 1; index < numThreads; index++) rasterizers[index] = new FreeTypeGlyphRasterizer(font);
+		this.rasterizationExecutor = executor;
+	}
+
+	/**
+	 * Allows the glyph buffer of this renderer to allocate at most {@code maxNumPages} spill-over pages of
+	 * {@code pageSize} bytes each when its own capacity is not sufficient to render a frame, see
+	 * {@link BitmapGlyphsBuffer#setPageProvider}. The pages are allocated when needed, and freed when this renderer
+	 * is destroyed.
+	 * <p>
+	 *     This method must be called <b>before</b> using this renderer.
+	 * </p>
+	 */
+	public void setSpillPages(int pageSize, int maxNumPages) {
+		if (glyphsBuffer == null) throw new IllegalStateException("Not supported with a shared glyph buffer");
+		glyphsBuffer.setPageProvider(pageIndex -> {
+			if (pageIndex > maxNumPages) return null;
+			var page = memAlloc(pageSize);
+			spillPages.add(page);
+			return page;
+		});
+	}
+
+	/**
+	 * Makes the glyph buffer of this renderer grow (by doubling its capacity, up to {@code maxCapacity} bytes) when it
+	 * is too small to render a frame, rather than throwing a {@link GlyphBufferCapacityException}. The
+	 * <i>glyphBufferCapacity</i> that was passed to the constructor becomes the initial (and minimum) capacity. See
+	 * {@link BitmapGlyphsBuffer#setAutoResize}.
+	 * <p>
+	 *     This method must be called <b>before</b> using this renderer.
+	 * </p>
+	 * @param maxCapacity The maximum capacity of the glyph buffer, in bytes
+	 * @param shrinkDelay The number of consecutive {@link #render} calls with low glyph buffer usage after which the
+	 *                    glyph buffer will shrink again, or 0 to never shrink
+	 */
+	public void setAutoResize(int maxCapacity, int shrinkDelay) {
+		if (glyphsBuffer == null) throw new IllegalStateException("Not supported with a shared glyph buffer");
+		glyphsBuffer.setAutoResize(MemoryUtil::memRealloc, maxCapacity, shrinkDelay);
+	}
+
+	/**
+	 * Prepares the given strings on the given executor, such that the first {@link #render} call that uses them
+	 * won't need to wait for the font sizes to be computed or the glyphs to be rasterized. See {@link GlyphPrewarmer}.
+	 * @param executor The executor on which the strings should be prepared
+	 * @param strings The strings that will be rendered soon
+	 * @param userData The user data that will be used to render the strings
+	 * @param heightAs The heights with which the strings will be rendered
+	 * @return A future that will be completed when the strings have been prepared. You must wait until it is completed
+	 * before destroying this renderer.
+	 */
+	public CompletableFuture<Void> prewarm(
+			Executor executor, Collection<String> strings, Object userData, int... heightAs
+	) {
+		return new GlyphPrewarmer(placer, rasterizer, executor).prewarm(strings, userData, heightAs);
+	}
+
 	/**
 	 * Renders the given requests
 	 */
 	public void render(Collection<TextPlaceRequest> requests) {
 		var placedGlyphs = placer.place(requests);
-		glyphsBuffer.startFrame();
-		var glyphQuads = glyphsBuffer.bufferGlyphs(rasterizer, placedGlyphs);
-		glyphQuads.forEach(quad -> {
+		if (sharedGlyphsBuffer != null) {
+			long frame = sharedGlyphsBuffer.startFrame();
+			try {
+				var glyphQuads = sharedGlyphsBuffer.bufferGlyphs(frame, rasterizer, placedGlyphs);
+				drawQuads(glyphQuads, sharedGlyphsBuffer::getPage);
+			} finally {
+				sharedGlyphsBuffer.frameCompleted(frame);
+			}
+		} else {
+			glyphsBuffer.startFrame();
+			var glyphQuads = glyphsBuffer.bufferGlyphs(rasterizers, rasterizationExecutor, placedGlyphs);
+			drawQuads(glyphQuads, glyphsBuffer::getPage);
+		}
+	}
+
+	private void drawQuads(List<GlyphQuad> glyphQuads, IntFunction<ByteBuffer> getPage) {
+		// Looking up a page of a shared glyph buffer requires a lock, so it's only done when the page changes
+		int pageIndex = -1;
+		ByteBuffer page = null;
+		for (var quad : glyphQuads) {
+			if (quad.page != pageIndex) {
+				pageIndex = quad.page;
+				page = getPage.apply(pageIndex);
+			}
 			for (int offsetY = 0; offsetY < quad.getHeight(); offsetY++) {
 				for (int offsetX = 0; offsetX < quad.getWidth(); offsetX++) {
 
 					int imageX = offsetX + quad.minX;
 					int imageY = offsetY + quad.minY;
 					int bufferIndex = quad.bufferIndex + offsetX / quad.scale + (offsetY / quad.scale) * quad.sectionWidth;
-					setPixel(imageX, imageY, byteBuffer.get(bufferIndex) & 0xFF);
+					setPixel(imageX, imageY, storageFormat.readTexel(page, bufferIndex));
 				}
 			}
-		});
+		}
 	}
 
 	/**
@@ -67,7 +220,9 @@ public abstract class CpuTextRenderer {
 	 */
 	public void destroy() {
 		placer.destroy();
-		memFree(byteBuffer);
-		rasterizer.destroy();
+		// The glyph buffer may have been resized, so page 0 is not necessarily the memory that was allocated initially
+		if (glyphsBuffer != null) memFree(glyphsBuffer.getPage(0));
+		for (var page : spillPages) memFree(page);
+		for (var rasterizer : rasterizers) rasterizer.destroy();
 	}
 }
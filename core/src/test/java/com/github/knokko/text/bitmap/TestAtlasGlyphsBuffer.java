@@ -0,0 +1,158 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.SizedGlyph;
+import com.github.knokko.text.placement.PlacedGlyph;
+import com.github.knokko.text.placement.TextAlignment;
+import com.github.knokko.text.placement.TextPlaceRequest;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+public class TestAtlasGlyphsBuffer {
+
+	private static class DummyRasterizer implements GlyphRasterizer {
+
+		private ByteBuffer buffer;
+		private int size;
+
+		@Override
+		public void set(SizedGlyph glyph, Object userData) {
+			int capacity = 2 * glyph.size * glyph.size;
+			buffer = BufferUtils.createByteBuffer(capacity);
+			for (int counter = 0; counter < capacity; counter++) {
+				buffer.put((byte) (counter + glyph.id));
+			}
+			buffer.position(0);
+			this.size = glyph.size;
+		}
+
+		@Override
+		public String getUserDataKey(Object userData) {
+			return "";
+		}
+
+		@Override
+		public int getBufferWidth() {
+			return size;
+		}
+
+		@Override
+		public int getBufferHeight() {
+			return 2 * size;
+		}
+
+		@Override
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		@Override
+		public void destroy() {}
+	}
+
+	@Test
+	public void testOneQuadPerGlyph() {
+		var byteBuffer = memCalloc(10_000);
+		var glyphs = new AtlasGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 100);
+		assertEquals(100, glyphs.getAtlasWidth());
+		assertEquals(100, glyphs.getAtlasHeight());
+		glyphs.startFrame();
+
+		var request = new TextPlaceRequest(
+				"hello", 0, 0, 1000, 1000, 0, 10, 1, TextAlignment.DEFAULT, null
+		);
+		var placedGlyphs = new ArrayList<PlacedGlyph>();
+		for (int id = 1; id <= 5; id++) {
+			placedGlyphs.add(new PlacedGlyph(new SizedGlyph(id, 0, 10 + id, 1), 50 * id, 10, request, id - 1));
+		}
+
+		var quads = glyphs.bufferGlyphs(new DummyRasterizer(), placedGlyphs);
+		assertEquals(5, quads.size());
+		for (int index = 0; index < 5; index++) {
+			var quad = quads.get(index);
+			int id = index + 1;
+			int size = 10 + id;
+			assertEquals(100, quad.sectionWidth);
+			assertEquals(size, quad.getWidth());
+			assertEquals(2 * size, quad.getHeight());
+			for (int y = 0; y < 2 * size; y++) {
+				for (int x = 0; x < size; x++) {
+					assertEquals((byte) (x + y * size + id), byteBuffer.get(quad.bufferIndex + x + y * quad.sectionWidth));
+				}
+			}
+		}
+
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testEviction() {
+		var byteBuffer = memCalloc(40 * 40);
+		var glyphs = new AtlasGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 40);
+		var rasterizer = new DummyRasterizer();
+
+		// Each glyph is 10x20 pixels, so the atlas can hold 8 of them
+		glyphs.startFrame();
+		for (int id = 1; id <= 8; id++) glyphs.getSections(rasterizer, new SizedGlyph(id, 0, 10, 1), null);
+		assertEquals(0, glyphs.countAvailableSpace());
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+				rasterizer, new SizedGlyph(9, 0, 10, 1), null
+		));
+
+		glyphs.startFrame();
+		for (int id = 2; id <= 8; id++) glyphs.getSections(rasterizer, new SizedGlyph(id, 0, 10, 1), null);
+		var oldSection = glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 10, 1), null).get(0);
+
+		glyphs.startFrame();
+		for (int id = 2; id <= 8; id++) glyphs.getSections(rasterizer, new SizedGlyph(id, 0, 10, 1), null);
+		var newSection = glyphs.getSections(rasterizer, new SizedGlyph(9, 0, 10, 1), null).get(0);
+		assertEquals(oldSection.bufferIndex(), newSection.bufferIndex());
+
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testShelfPackerWithoutOverlap() {
+		var rng = new Random(12);
+		int width = 200;
+		int height = 150;
+		var packer = new ShelfPacker(width, height);
+		var owners = new int[width * height];
+		var rectangles = new ArrayList<int[]>();
+
+		for (int counter = 1; counter < 5000; counter++) {
+			if (rng.nextInt(3) != 0 || rectangles.isEmpty()) {
+				int rectWidth = 1 + rng.nextInt(30);
+				int rectHeight = 1 + rng.nextInt(30);
+				int index = packer.allocate(rectWidth, rectHeight);
+				if (index == -1) continue;
+
+				assertTrue(index % width + rectWidth <= width);
+				assertTrue(index / width + rectHeight <= height);
+				for (int y = 0; y < rectHeight; y++) {
+					for (int x = 0; x < rectWidth; x++) {
+						assertEquals(0, owners[index + x + y * width]);
+						owners[index + x + y * width] = counter;
+					}
+				}
+				rectangles.add(new int[] { index, rectWidth, rectHeight });
+			} else {
+				var rect = rectangles.remove(rng.nextInt(rectangles.size()));
+				packer.free(rect[0], rect[1], rect[2]);
+				for (int y = 0; y < rect[2]; y++) {
+					for (int x = 0; x < rect[1]; x++) owners[rect[0] + x + y * width] = 0;
+				}
+			}
+
+			int usedArea = 0;
+			for (var rect : rectangles) usedArea += rect[1] * rect[2];
+			assertEquals(width * height - usedArea, packer.getFreeArea());
+		}
+	}
+}
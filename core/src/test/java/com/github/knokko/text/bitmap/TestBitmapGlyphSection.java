@@ -77,4 +77,28 @@ public class TestBitmapGlyphSection {
 			}
 		}
 	}
+
+	@Test
+	public void testPlanRectangle() {
+		assertEquals(0, BitmapGlyphSection.planRectangle(120, 0, 5).length);
+
+		for (int width = 1; width < 50; width += 3) {
+			for (int height = 1; height < 50; height += 2) {
+				int[] plan = BitmapGlyphSection.planRectangle(100, width, height);
+				assertEquals(0, plan.length % 4);
+
+				var rectangles = BitmapGlyphSection.coverRectangle(plan, new DummySlotAllocator());
+				assertEquals(plan.length / 4, rectangles.size());
+				assertValid(rectangles, 100, width, height);
+				for (int index = 0; index < rectangles.size(); index++) {
+					var rectangle = rectangles.get(index);
+					assertEquals(index, rectangle.bufferIndex());
+					assertEquals(plan[4 * index], rectangle.offsetX());
+					assertEquals(plan[4 * index + 1], rectangle.offsetY());
+					assertEquals(plan[4 * index + 2], rectangle.width());
+					assertEquals(plan[4 * index + 3], rectangle.height());
+				}
+			}
+		}
+	}
 }
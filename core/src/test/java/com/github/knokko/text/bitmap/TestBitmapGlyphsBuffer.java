@@ -6,11 +6,15 @@ import com.github.knokko.text.placement.TextAlignment;
 import com.github.knokko.text.placement.TextPlaceRequest;
 import org.junit.jupiter.api.Test;
 import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryUtil;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.lwjgl.system.MemoryUtil.*;
@@ -126,6 +130,7 @@ public class TestBitmapGlyphsBuffer {
 		assertTrue(quadCount > 2, "Expected " + quadCount + " to be larger than 2");
 
 		assertTrue(glyphsBuffer.getUsedSpace() > 800);
+		assertEquals(size - glyphsBuffer.getUsedSpace(), glyphsBuffer.countAvailableSpace());
 
 		glyphsBuffer.startFrame();
 		assertEquals(size - initialUsedSpace, glyphsBuffer.countAvailableSpace());
@@ -324,4 +329,954 @@ public class TestBitmapGlyphsBuffer {
 		for (var quad : quads) bufferIndices.add(quad.bufferIndex);
 		assertEquals(1000, bufferIndices.size());
 	}
+
+	@Test
+	public void testEvictLeastRecentlyUsedGlyph() {
+		var byteBuffer = memCalloc(300);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 100);
+		var rasterizer = new DummyRasterizer();
+
+		// Each glyph needs 2 * 7 * 7 = 98 bytes, so it fits in 1 slot
+		var glyph1 = new SizedGlyph(1, 0, 7, 1);
+		var glyph2 = new SizedGlyph(2, 0, 7, 1);
+		var glyph3 = new SizedGlyph(3, 0, 7, 1);
+		var glyph4 = new SizedGlyph(4, 0, 7, 1);
+
+		glyphs.startFrame();
+		var sections1 = glyphs.getSections(rasterizer, glyph1, null);
+		var sections2 = glyphs.getSections(rasterizer, glyph2, null);
+		var sections3 = glyphs.getSections(rasterizer, glyph3, null);
+		assertEquals(0, glyphs.countAvailableSpace());
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(rasterizer, glyph4, null));
+
+		glyphs.startFrame();
+		assertSame(sections1, glyphs.getSections(rasterizer, glyph1, null));
+		assertSame(sections3, glyphs.getSections(rasterizer, glyph3, null));
+		assertEquals(100, glyphs.countAvailableSpace());
+
+		// glyph2 is the least recently used glyph, so it should be evicted
+		var sections4 = glyphs.getSections(rasterizer, glyph4, null);
+		assertEquals(sections2.get(0).bufferIndex(), sections4.get(0).bufferIndex());
+		assertSame(sections1, glyphs.getSections(rasterizer, glyph1, null));
+		assertSame(sections3, glyphs.getSections(rasterizer, glyph3, null));
+		assertEquals(0, glyphs.countAvailableSpace());
+
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testPreferContiguousSlots() {
+		var byteBuffer = memCalloc(1000);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 60);
+		glyphs.setPreferContiguousSlots(true);
+		glyphs.startFrame();
+
+		var rasterizer = new DummyRasterizer();
+		var sections = glyphs.getSections(rasterizer, new SizedGlyph(1234, 0, 10, 1), null);
+		assertEquals(1, sections.size());
+		assertEquals(new BitmapGlyphSection(0, 0, 0, 10, 20), sections.get(0));
+		for (int index = 0; index < 200; index++) assertEquals((byte) (index + 1), byteBuffer.get(index));
+
+		// 200 bytes need 4 slots of 60 bytes
+		assertEquals(1000 - 60 * (1000 / 60 - 4), glyphs.getUsedSpace());
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testPrewarmedGlyphs() {
+		var renderRasterizer = new DummyRasterizer() {
+
+			int setCounter;
+
+			@Override
+			public void set(SizedGlyph glyph, Object userData) {
+				setCounter += 1;
+				super.set(glyph, userData);
+			}
+		};
+		var rasterizer = new PrewarmedGlyphRasterizer(renderRasterizer, new DummyRasterizer());
+
+		var byteBuffer = memCalloc(1000);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 50);
+		glyphs.startFrame();
+
+		var prewarmedGlyph = new SizedGlyph(1, 0, 5, 1);
+		rasterizer.prewarm(prewarmedGlyph, null);
+		rasterizer.prewarm(prewarmedGlyph, null);
+		assertEquals(1, rasterizer.getNumPrewarmedGlyphs());
+
+		var prewarmedSections = glyphs.getSections(rasterizer, prewarmedGlyph, null);
+		assertEquals(0, renderRasterizer.setCounter);
+		assertEquals(0, rasterizer.getNumPrewarmedGlyphs());
+
+		var coldSections = glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+		assertEquals(1, renderRasterizer.setCounter);
+		assertEquals(prewarmedSections.size(), coldSections.size());
+
+		for (int index = 0; index < prewarmedSections.size(); index++) {
+			var prewarmed = prewarmedSections.get(index);
+			var cold = coldSections.get(index);
+			assertEquals(prewarmed.width() * prewarmed.height(), cold.width() * cold.height());
+			for (int offset = 0; offset < prewarmed.width() * prewarmed.height(); offset++) {
+				assertEquals(
+						byteBuffer.get(cold.bufferIndex() + offset),
+						byteBuffer.get(prewarmed.bufferIndex() + offset)
+				);
+			}
+		}
+
+		// Each glyph of size 5 needs 5 * 10 = 50 bytes
+		rasterizer.setMaxPrewarmedBytes(120);
+		for (int id = 10; id < 15; id++) rasterizer.prewarm(new SizedGlyph(id, 0, 5, 1), null);
+		assertEquals(2, rasterizer.getNumPrewarmedGlyphs());
+		assertEquals(100, rasterizer.getPrewarmedBytes());
+
+		// The oldest glyphs should have been discarded
+		glyphs.getSections(rasterizer, new SizedGlyph(13, 0, 5, 1), null);
+		glyphs.getSections(rasterizer, new SizedGlyph(14, 0, 5, 1), null);
+		assertEquals(1, renderRasterizer.setCounter);
+		assertEquals(0, rasterizer.getPrewarmedBytes());
+		glyphs.getSections(rasterizer, new SizedGlyph(10, 0, 5, 1), null);
+		assertEquals(2, renderRasterizer.setCounter);
+
+		rasterizer.setMaxPrewarmedBytes(10);
+		rasterizer.prewarm(new SizedGlyph(20, 0, 5, 1), null);
+		assertEquals(0, rasterizer.getNumPrewarmedGlyphs());
+
+		rasterizer.destroy();
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testDirtyRanges() {
+		var byteBuffer = memCalloc(1000);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 100);
+		var rasterizer = new DummyRasterizer();
+
+		glyphs.startFrame();
+		assertEquals(0, glyphs.getDirtyRanges().size());
+
+		// Each glyph is 5x10 = 50 bytes, so it will use 1 slot of 100 bytes
+		glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+		glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+		assertEquals(List.of(new ByteRange(0, 50), new ByteRange(100, 50)), glyphs.getDirtyRanges());
+
+		// Reusing a glyph doesn't modify the buffer
+		glyphs.startFrame();
+		glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+		assertEquals(0, glyphs.getDirtyRanges().size());
+
+		// 10x20 = 200 bytes, which is stored in 2 adjacent slots
+		glyphs.getSections(rasterizer, new SizedGlyph(3, 0, 10, 1), null);
+		assertEquals(List.of(new ByteRange(200, 200)), glyphs.getDirtyRanges());
+
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testParallelRasterization() {
+		var request = new TextPlaceRequest(
+				"hello", 0, 0, 1000, 1000, 0, 10, 1, TextAlignment.DEFAULT, null
+		);
+		var placedGlyphs = new ArrayList<PlacedGlyph>();
+		for (int counter = 0; counter < 100; counter++) {
+			var glyph = new SizedGlyph(counter % 30, 0, 3 + (counter % 30) % 7, 1);
+			placedGlyphs.add(new PlacedGlyph(glyph, counter, 5, request, 0));
+		}
+
+		var sequentialBuffer = memCalloc(10_000);
+		var sequentialGlyphs = new BitmapGlyphsBuffer(memAddress(sequentialBuffer), sequentialBuffer.capacity());
+		sequentialGlyphs.startFrame();
+		var expectedQuads = sequentialGlyphs.bufferGlyphs(new DummyRasterizer(), placedGlyphs);
+
+		var numRasterizations = new AtomicInteger();
+		var rasterizers = new GlyphRasterizer[3];
+		for (int index = 0; index < rasterizers.length; index++) {
+			rasterizers[index] = new DummyRasterizer() {
+				@Override
+				public void set(SizedGlyph glyph, Object userData) {
+					numRasterizations.incrementAndGet();
+					super.set(glyph, userData);
+				}
+			};
+		}
+
+		var executor = Executors.newFixedThreadPool(2);
+		var parallelBuffer = memCalloc(10_000);
+		var parallelGlyphs = new BitmapGlyphsBuffer(memAddress(parallelBuffer), parallelBuffer.capacity());
+		parallelGlyphs.startFrame();
+		var actualQuads = parallelGlyphs.bufferGlyphs(rasterizers, executor, placedGlyphs);
+
+		// There are 30 unique glyphs
+		assertEquals(30, numRasterizations.get());
+		assertEquals(expectedQuads.size(), actualQuads.size());
+		for (int index = 0; index < expectedQuads.size(); index++) {
+			var expected = expectedQuads.get(index);
+			var actual = actualQuads.get(index);
+			assertEquals(expected.bufferIndex, actual.bufferIndex);
+			assertEquals(expected.minX, actual.minX);
+			assertEquals(expected.maxY, actual.maxY);
+			assertEquals(expected.sectionWidth, actual.sectionWidth);
+		}
+		for (int index = 0; index < sequentialBuffer.capacity(); index++) {
+			assertEquals(sequentialBuffer.get(index), parallelBuffer.get(index));
+		}
+
+		// Glyphs that are already buffered should not be rasterized again
+		parallelGlyphs.startFrame();
+		parallelGlyphs.bufferGlyphs(rasterizers, executor, placedGlyphs);
+		assertEquals(30, numRasterizations.get());
+		executor.shutdown();
+
+		memFree(sequentialBuffer);
+		memFree(parallelBuffer);
+	}
+
+	@Test
+	public void testParallelRasterizationFailure() throws InterruptedException {
+		var request = new TextPlaceRequest(
+				"hello", 0, 0, 1000, 1000, 0, 10, 1, TextAlignment.DEFAULT, null
+		);
+		var placedGlyphs = new ArrayList<PlacedGlyph>();
+		for (int counter = 0; counter < 50; counter++) {
+			placedGlyphs.add(new PlacedGlyph(new SizedGlyph(counter, 0, 5, 1), counter, 5, request, 0));
+		}
+
+		var numRasterizations = new AtomicInteger();
+		var numActiveRasterizers = new AtomicInteger();
+		var rasterizers = new GlyphRasterizer[3];
+		rasterizers[0] = new DummyRasterizer() {
+			@Override
+			public void set(SizedGlyph glyph, Object userData) {
+				throw new UnsupportedOperationException("Rasterization failed");
+			}
+		};
+		for (int index = 1; index < rasterizers.length; index++) {
+			rasterizers[index] = new DummyRasterizer() {
+				@Override
+				public void set(SizedGlyph glyph, Object userData) {
+					numActiveRasterizers.incrementAndGet();
+					try {
+						Thread.sleep(2);
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+					numRasterizations.incrementAndGet();
+					super.set(glyph, userData);
+					numActiveRasterizers.decrementAndGet();
+				}
+			};
+		}
+
+		var executor = Executors.newFixedThreadPool(2);
+		var byteBuffer = memCalloc(10_000);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity());
+		glyphs.startFrame();
+		assertThrows(
+				UnsupportedOperationException.class, () -> glyphs.bufferGlyphs(rasterizers, executor, placedGlyphs)
+		);
+
+		// The other rasterizers must not be used anymore once the exception is propagated
+		assertEquals(0, numActiveRasterizers.get());
+		int finalRasterizations = numRasterizations.get();
+		assertTrue(finalRasterizations < placedGlyphs.size());
+		Thread.sleep(50);
+		assertEquals(finalRasterizations, numRasterizations.get());
+		executor.shutdown();
+
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testBufferGlyphsIntoSink() {
+		var request = new TextPlaceRequest(
+				"hello", -1000, -1000, 1000, 1000, 0, 10, 1, TextAlignment.DEFAULT, null
+		);
+		var placedGlyphs = new ArrayList<PlacedGlyph>();
+		placedGlyphs.add(new PlacedGlyph(new SizedGlyph(1, 0, 5, 1), 10, 10, 5, 10, request, 0));
+		placedGlyphs.add(new PlacedGlyph(new SizedGlyph(2, 0, 5, 1), 150, 10, 5, 10, request, 1));
+		placedGlyphs.add(new PlacedGlyph(new SizedGlyph(3, 0, 5, 1), -100, 10, 5, 10, request, 2));
+		placedGlyphs.add(new PlacedGlyph(new SizedGlyph(4, 0, 5, 1), -3, 10, 5, 10, request, 3));
+		placedGlyphs.add(new PlacedGlyph(new SizedGlyph(5, 0, 5, 1), 10, -20, 5, 10, request, 4));
+		placedGlyphs.add(new PlacedGlyph(new SizedGlyph(6, 0, 5, 1), -100, 10, request, 5));
+
+		var rasterizedGlyphs = new HashSet<Integer>();
+		var rasterizer = new DummyRasterizer() {
+			@Override
+			public void set(SizedGlyph glyph, Object userData) {
+				rasterizedGlyphs.add(glyph.id);
+				super.set(glyph, userData);
+			}
+		};
+
+		var byteBuffer = memCalloc(1000);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 100);
+		glyphs.startFrame();
+
+		var expectedQuads = glyphs.bufferGlyphs(rasterizer, placedGlyphs);
+		var charIndices = new ArrayList<Integer>();
+		int numQuads = glyphs.bufferGlyphs(
+				rasterizer, placedGlyphs, 0, 0, 99, 99,
+				(page, bufferIndex, minX, minY, maxX, maxY, scale, sectionWidth, placedGlyph) -> {
+					var expected = expectedQuads.get(placedGlyph.charIndex);
+					assertEquals(0, page);
+					assertEquals(expected.bufferIndex, bufferIndex);
+					assertEquals(expected.minX, minX);
+					assertEquals(expected.maxY, maxY);
+					assertEquals(expected.sectionWidth, sectionWidth);
+					charIndices.add(placedGlyph.charIndex);
+				}
+		);
+
+		// Glyph 2 is too far to the right, glyph 3 and 6 are too far to the left, and glyph 5 is too high
+		assertEquals(2, numQuads);
+		assertEquals(List.of(0, 3), charIndices);
+
+		// Glyph 2, 3, and 5 should not even be rasterized, but glyph 6 needs to be rasterized to find its width
+		var rasterizedSinkGlyphs = new HashSet<Integer>();
+		var sinkRasterizer = new DummyRasterizer() {
+			@Override
+			public void set(SizedGlyph glyph, Object userData) {
+				rasterizedSinkGlyphs.add(glyph.id);
+				super.set(glyph, userData);
+			}
+		};
+		glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 100);
+		glyphs.startFrame();
+		glyphs.bufferGlyphs(sinkRasterizer, placedGlyphs, 0, 0, 99, 99, (a, b, c, d, e, f, g, h, i) -> {});
+		assertEquals(Set.of(1, 4, 6), rasterizedSinkGlyphs);
+		assertEquals(Set.of(1, 2, 3, 4, 5, 6), rasterizedGlyphs);
+
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testTrackFrameCompletion() {
+		var byteBuffer = memCalloc(200);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 100);
+		glyphs.setTrackFrameCompletion(true);
+		var rasterizer = new DummyRasterizer();
+
+		// Each glyph is 5x10 = 50 bytes, so the buffer can hold 2 glyphs
+		long frame1 = glyphs.startFrame();
+		glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+		long frame2 = glyphs.startFrame();
+		glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+
+		// Glyph 1 may still be used by frame 1, which has not completed yet
+		glyphs.startFrame();
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+				rasterizer, new SizedGlyph(3, 0, 5, 1), null
+		));
+
+		// Completing frame 2 is not enough, since frame 1 is still pending
+		glyphs.frameCompleted(frame2);
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+				rasterizer, new SizedGlyph(3, 0, 5, 1), null
+		));
+
+		glyphs.frameCompleted(frame1);
+		var sections = glyphs.getSections(rasterizer, new SizedGlyph(3, 0, 5, 1), null);
+		assertEquals(0, sections.get(0).bufferIndex());
+
+		assertThrows(IllegalArgumentException.class, () -> glyphs.frameCompleted(frame1));
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testPackedStorageFormat() {
+		// 50 bytes can hold 100 texels when 2 texels are packed in each byte
+		var byteBuffer = memCalloc(50);
+		var format = GlyphStorageFormat.INTENSITY_4;
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 50, format);
+		assertEquals(format, glyphs.getStorageFormat());
+		assertEquals(50, glyphs.countAvailableSpace());
+		var rasterizer = new DummyRasterizer();
+
+		// Each glyph is 5x10 = 50 texels, so the buffer can hold 2 glyphs
+		glyphs.startFrame();
+		var sections1 = glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+		var sections2 = glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+		assertEquals(0, glyphs.countAvailableSpace());
+		assertEquals(50, glyphs.getUsedSpace());
+
+		for (var sections : List.of(sections1, sections2)) {
+			assertEquals(1, sections.size());
+			var section = sections.get(0);
+			for (int index = 0; index < 50; index++) {
+				int expected = 17 * (((index + 1) * 15 + 127) / 255);
+				assertEquals(expected, format.readTexel(byteBuffer, section.bufferIndex() + index));
+			}
+		}
+
+		glyphs.startFrame();
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+				rasterizer, new SizedGlyph(3, 0, 8, 1), null
+		));
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testTrimTransparentBorders() {
+		var byteBuffer = memCalloc(1000);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 60);
+		int initialUsedSpace = glyphs.getUsedSpace();
+		glyphs.startFrame();
+
+		// A 20x20 bitmap whose only ink is the 3x4 rectangle at (5, 7)
+		var rasterizer = new DummyRasterizer() {
+
+			final ByteBuffer bitmap = BufferUtils.createByteBuffer(400);
+
+			@Override
+			public void set(SizedGlyph glyph, Object userData) {
+				for (int y = 7; y < 11; y++) {
+					for (int x = 5; x < 8; x++) bitmap.put(x + 20 * y, (byte) (10 * x + y));
+				}
+			}
+
+			@Override
+			public int getBufferWidth() {
+				return 20;
+			}
+
+			@Override
+			public int getBufferHeight() {
+				return 20;
+			}
+
+			@Override
+			public ByteBuffer getBuffer() {
+				return bitmap;
+			}
+		};
+
+		var request = new TextPlaceRequest("a", 0, 0, 1000, 1000, 0, 20, 1, TextAlignment.DEFAULT, null);
+		var quads = glyphs.bufferGlyphs(rasterizer, List.of(
+				new PlacedGlyph(new SizedGlyph(1, 0, 20, 2), 100, 200, request, 0)
+		));
+
+		assertEquals(1, quads.size());
+		var quad = quads.get(0);
+		assertEquals(110, quad.minX);
+		assertEquals(214, quad.minY);
+		assertEquals(6, quad.getWidth());
+		assertEquals(8, quad.getHeight());
+		assertEquals(3, quad.sectionWidth);
+		for (int y = 0; y < 4; y++) {
+			for (int x = 0; x < 3; x++) {
+				assertEquals((byte) (10 * (x + 5) + y + 7), byteBuffer.get(quad.bufferIndex + x + 3 * y));
+			}
+		}
+		assertEquals(initialUsedSpace + 60, glyphs.getUsedSpace());
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testSpillPages() {
+		var byteBuffer = memCalloc(100);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 50);
+		var requestedPages = new ArrayList<Integer>();
+		glyphs.setPageProvider(pageIndex -> {
+			requestedPages.add(pageIndex);
+			return pageIndex <= 2 ? ByteBuffer.allocate(120) : null;
+		});
+		var rasterizer = new DummyRasterizer();
+
+		// Each glyph is 5x10 = 50 bytes, so the buffer can hold 2 glyphs and each page can hold 2 glyphs
+		glyphs.startFrame();
+		var request = new TextPlaceRequest("abcdefg", 0, 0, 1000, 1000, 0, 5, 1, TextAlignment.DEFAULT, null);
+		var placedGlyphs = new ArrayList<PlacedGlyph>();
+		for (int id = 1; id <= 6; id++) {
+			placedGlyphs.add(new PlacedGlyph(new SizedGlyph(id, 0, 5, 1), 10 * id, 0, request, id - 1));
+		}
+
+		var quads = glyphs.bufferGlyphs(rasterizer, placedGlyphs);
+		assertEquals(6, quads.size());
+		assertEquals(List.of(1, 2), requestedPages);
+		assertEquals(3, glyphs.getNumPages());
+
+		int[] expectedPages = { 0, 0, 1, 1, 2, 2 };
+		for (int index = 0; index < 6; index++) {
+			var quad = quads.get(index);
+			assertEquals(expectedPages[index], quad.page);
+			assertEquals(5, quad.sectionWidth);
+			var page = glyphs.getPage(quad.page);
+			for (int offset = 0; offset < 50; offset++) {
+				assertEquals((byte) (offset + 1), page.get(quad.bufferIndex + offset));
+			}
+		}
+		assertEquals(memAddress(byteBuffer), memAddress(glyphs.getPage(0)));
+
+		// Page 2 is full and the provider refuses to give page 3
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+				rasterizer, new SizedGlyph(7, 0, 5, 1), null
+		));
+		assertEquals(List.of(1, 2, 3), requestedPages);
+
+		// During the next frame, the oldest glyphs can be evicted, so the buffer itself is used again
+		glyphs.startFrame();
+		var sections = glyphs.getSections(rasterizer, new SizedGlyph(8, 0, 5, 1), null);
+		assertEquals(0, sections.get(0).page());
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testSpillGlyphLargerThanPage() {
+		var byteBuffer = memCalloc(100);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 50);
+		var requestedPages = new ArrayList<Integer>();
+		glyphs.setPageProvider(pageIndex -> {
+			requestedPages.add(pageIndex);
+			return pageIndex <= 2 ? ByteBuffer.allocate(120) : null;
+		});
+		var rasterizer = new DummyRasterizer();
+
+		// Glyph 3 is 10x20 = 200 bytes, which doesn't fit in a page of 120 bytes
+		for (int frame = 0; frame < 5; frame++) {
+			glyphs.startFrame();
+			glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+			glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+			assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+					rasterizer, new SizedGlyph(3, 0, 10, 1), null
+			));
+		}
+
+		// Only the first attempt should have requested a page, and that page should still be usable
+		assertEquals(List.of(1), requestedPages);
+		assertEquals(2, glyphs.getNumPages());
+		assertEquals(1, glyphs.getSections(rasterizer, new SizedGlyph(4, 0, 5, 1), null).get(0).page());
+		assertEquals(1, glyphs.getSections(rasterizer, new SizedGlyph(5, 0, 5, 1), null).get(0).page());
+
+		// The provider must not be considered exhausted
+		assertEquals(2, glyphs.getSections(rasterizer, new SizedGlyph(6, 0, 5, 1), null).get(0).page());
+		assertEquals(List.of(1, 2), requestedPages);
+		memFree(byteBuffer);
+	}
+
+	private static List<PlacedGlyph> placeGlyphs(int... ids) {
+		var request = new TextPlaceRequest("abcdefg", 0, 0, 1000, 1000, 0, 5, 1, TextAlignment.DEFAULT, null);
+		var placedGlyphs = new ArrayList<PlacedGlyph>();
+		for (int index = 0; index < ids.length; index++) {
+			placedGlyphs.add(new PlacedGlyph(new SizedGlyph(ids[index], 0, 5, 1), 10 * index, 0, request, index));
+		}
+		return placedGlyphs;
+	}
+
+	@Test
+	public void testPinGlyphs() {
+		// Each glyph is 5x10 = 50 bytes, so the buffer can hold 2 glyphs
+		var byteBuffer = memCalloc(100);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 50);
+		var rasterizer = new DummyRasterizer();
+
+		glyphs.startFrame();
+		glyphs.pinGlyphs(rasterizer, placeGlyphs(1));
+		var pinnedSections = glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+		glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+		assertEquals(0, glyphs.countAvailableSpace());
+
+		// Glyph 1 is older than glyph 3, but it is pinned, so glyph 2 and 3 must be evicted instead
+		for (int id = 3; id <= 4; id++) {
+			glyphs.startFrame();
+			glyphs.getSections(rasterizer, new SizedGlyph(id, 0, 5, 1), null);
+			assertSame(pinnedSections, glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null));
+		}
+		glyphs.startFrame();
+		assertEquals(50, glyphs.countAvailableSpace());
+
+		// Pinned twice, so it must be unpinned twice
+		glyphs.pinGlyphs(rasterizer, placeGlyphs(1));
+		glyphs.unpinGlyphs(rasterizer, placeGlyphs(1));
+		glyphs.startFrame();
+		glyphs.getSections(rasterizer, new SizedGlyph(5, 0, 5, 1), null);
+		assertSame(pinnedSections, glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null));
+
+		glyphs.unpinGlyphs(rasterizer, placeGlyphs(1));
+		assertThrows(IllegalArgumentException.class, () -> glyphs.unpinGlyphs(rasterizer, placeGlyphs(1)));
+		assertThrows(IllegalArgumentException.class, () -> glyphs.unpinGlyphs(rasterizer, placeGlyphs(5)));
+
+		// Now that glyph 1 is no longer pinned, it can be evicted like any other glyph
+		glyphs.startFrame();
+		glyphs.getSections(rasterizer, new SizedGlyph(6, 0, 5, 1), null);
+		glyphs.getSections(rasterizer, new SizedGlyph(7, 0, 5, 1), null);
+		glyphs.startFrame();
+		assertNotSame(pinnedSections, glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null));
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testGenerationalEviction() {
+		// The buffer can hold 3 glyphs of 5x10 = 50 bytes
+		var byteBuffer = memCalloc(150);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 50);
+		glyphs.setEvictionPolicy(GlyphEvictionPolicy.generational(0.5));
+		var rasterizer = new DummyRasterizer();
+
+		glyphs.startFrame();
+		var sections1 = glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+
+		// Using glyph 1 during a second frame will promote it to the old generation
+		glyphs.startFrame();
+		glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+
+		glyphs.startFrame();
+		var sections2 = glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+		glyphs.getSections(rasterizer, new SizedGlyph(3, 0, 5, 1), null);
+
+		// LRU would evict glyph 1, but the generational policy evicts the oldest young glyph (2) instead
+		glyphs.startFrame();
+		glyphs.getSections(rasterizer, new SizedGlyph(4, 0, 5, 1), null);
+		assertSame(sections1, glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null));
+		assertNotSame(sections2, glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null));
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testFrequencyAwareAdmission() {
+		var byteBuffer = memCalloc(100);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 50);
+		glyphs.setEvictionPolicy(GlyphEvictionPolicy.frequencyAware(8, 1024));
+		glyphs.setPageProvider(pageIndex -> ByteBuffer.allocate(200));
+		var rasterizer = new DummyRasterizer();
+
+		List<BitmapGlyphSection> sections1 = null, sections2 = null;
+		for (int frame = 0; frame < 3; frame++) {
+			glyphs.startFrame();
+			sections1 = glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+			sections2 = glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+		}
+
+		// Glyph 3 is used less frequently than glyph 1 and 2, so it is spilled rather than evicting them
+		glyphs.startFrame();
+		assertEquals(1, glyphs.getSections(rasterizer, new SizedGlyph(3, 0, 5, 1), null).get(0).page());
+		assertSame(sections1, glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null));
+		assertSame(sections2, glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null));
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testFrequencyAwareAdmissionWithAutoResize() {
+		var glyphs = new BitmapGlyphsBuffer(memAddress(memCalloc(100)), 100, 50);
+		glyphs.setEvictionPolicy(GlyphEvictionPolicy.frequencyAware(8, 1024));
+		glyphs.setPageProvider(pageIndex -> ByteBuffer.allocate(200));
+		glyphs.setAutoResize(MemoryUtil::memRealloc, 400, 0);
+		var rasterizer = new DummyRasterizer();
+
+		for (int frame = 0; frame < 3; frame++) {
+			glyphs.startFrame();
+			glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+			glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+		}
+
+		// Glyph 3 is rejected, so it should be spilled rather than growing the buffer
+		glyphs.startFrame();
+		assertEquals(1, glyphs.getSections(rasterizer, new SizedGlyph(3, 0, 5, 1), null).get(0).page());
+		assertEquals(100, glyphs.getPage(0).capacity());
+
+		// When no glyph can be evicted, the buffer should grow instead
+		glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+		glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+		assertEquals(0, glyphs.getSections(rasterizer, new SizedGlyph(4, 0, 5, 1), null).get(0).page());
+		assertEquals(200, glyphs.getPage(0).capacity());
+		memFree(glyphs.getPage(0));
+	}
+
+	@Test
+	public void testDeduplicateBitmaps() {
+		// The dummy rasterizer gives all glyphs with the same size the same bitmap
+		var byteBuffer = memCalloc(100);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 50);
+		glyphs.setDeduplicateBitmaps(true);
+		var rasterizer = new DummyRasterizer();
+
+		glyphs.startFrame();
+		var sections1 = glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+		var sections2 = glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+		assertEquals(sections1, sections2);
+		assertEquals(50, glyphs.getUsedSpace());
+
+		// Glyph 1 is evicted first, but that doesn't free any space since glyph 2 still uses its bitmap
+		glyphs.startFrame();
+		glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 5, 1), null);
+		assertEquals(50, glyphs.countAvailableSpace());
+		var sections3 = glyphs.getSections(rasterizer, new SizedGlyph(3, 0, 4, 1), null);
+		assertEquals(0, glyphs.countAvailableSpace());
+		assertNotEquals(sections1.get(0).bufferIndex(), sections3.get(0).bufferIndex());
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+				rasterizer, new SizedGlyph(4, 0, 3, 1), null
+		));
+		for (int index = 0; index < 50; index++) {
+			assertEquals((byte) (index + 1), byteBuffer.get(sections1.get(0).bufferIndex() + index));
+		}
+
+		// Once glyph 2 is evicted as well, the space of the shared bitmap can be reused
+		glyphs.startFrame();
+		var sections4 = glyphs.getSections(rasterizer, new SizedGlyph(4, 0, 3, 1), null);
+		assertEquals(sections1.get(0).bufferIndex(), sections4.get(0).bufferIndex());
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testAutoResize() {
+		var glyphs = new BitmapGlyphsBuffer(memAddress(memCalloc(100)), 100, 50);
+		glyphs.setAutoResize(MemoryUtil::memRealloc, 400, 2);
+		var rasterizer = new DummyRasterizer();
+
+		// Each glyph is 5x10 = 50 bytes, so the buffer must grow from 100 to 200 to 400 bytes
+		glyphs.startFrame();
+		var sections1 = glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+		for (int id = 2; id <= 8; id++) glyphs.getSections(rasterizer, new SizedGlyph(id, 0, 5, 1), null);
+		assertEquals(400, glyphs.getPage(0).capacity());
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+				rasterizer, new SizedGlyph(9, 0, 5, 1), null
+		));
+		for (int index = 0; index < 50; index++) {
+			assertEquals((byte) (index + 1), glyphs.getPage(0).get(sections1.get(0).bufferIndex() + index));
+		}
+
+		// Frame 2 uses only glyph 1, so the buffer shrinks after frame 3
+		glyphs.startFrame();
+		glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+		glyphs.startFrame();
+		assertEquals(400, glyphs.getPage(0).capacity());
+		glyphs.startFrame();
+		assertEquals(200, glyphs.getPage(0).capacity());
+		assertSame(sections1, glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null));
+
+		// The buffer can't shrink below its initial size
+		for (int counter = 0; counter < 10; counter++) glyphs.startFrame();
+		assertEquals(100, glyphs.getPage(0).capacity());
+		assertSame(sections1, glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null));
+		memFree(glyphs.getPage(0));
+	}
+
+	@Test
+	public void testAutoResizeKeepsUnevictableGlyphs() {
+		var glyphs = new BitmapGlyphsBuffer(memAddress(memCalloc(100)), 100, 50);
+		glyphs.setAutoResize(MemoryUtil::memRealloc, 400, 1);
+		var rasterizer = new DummyRasterizer();
+
+		// Glyph 5 and 6 are stored in the upper half of the 400 bytes, and glyph 6 is pinned
+		glyphs.startFrame();
+		for (int id = 1; id <= 5; id++) glyphs.getSections(rasterizer, new SizedGlyph(id, 0, 5, 1), null);
+		glyphs.pinGlyphs(rasterizer, placeGlyphs(6));
+		var sections5 = glyphs.getSections(rasterizer, new SizedGlyph(5, 0, 5, 1), null);
+		assertEquals(400, glyphs.getPage(0).capacity());
+		assertTrue(sections5.get(0).bufferIndex() >= 200);
+
+		// The buffer can't shrink while glyph 6 is pinned, so glyph 5 should not be evicted either
+		for (int counter = 0; counter < 3; counter++) glyphs.startFrame();
+		assertEquals(400, glyphs.getPage(0).capacity());
+		assertSame(sections5, glyphs.getSections(rasterizer, new SizedGlyph(5, 0, 5, 1), null));
+
+		// Glyph 5 and 6 were used during the current frame, so the buffer can only shrink after the next frame
+		glyphs.unpinGlyphs(rasterizer, placeGlyphs(6));
+		glyphs.startFrame();
+		assertEquals(400, glyphs.getPage(0).capacity());
+		glyphs.startFrame();
+		assertEquals(200, glyphs.getPage(0).capacity());
+		memFree(glyphs.getPage(0));
+	}
+
+	/**
+	 * Remembers which glyphs it rasterized
+	 */
+	private static class RecordingRasterizer extends DummyRasterizer {
+
+		final List<SizedGlyph> rasterizedGlyphs = new ArrayList<>();
+
+		@Override
+		public void set(SizedGlyph glyph, Object userData) {
+			rasterizedGlyphs.add(glyph);
+			super.set(glyph, userData);
+		}
+	}
+
+	private static void assertQuad(GlyphQuad quad, int charIndex, int minX, int width, int height, int scale) {
+		assertEquals(charIndex, quad.charIndex);
+		assertEquals(minX, quad.minX);
+		assertEquals(0, quad.minY);
+		assertEquals(width, quad.getWidth());
+		assertEquals(height, quad.getHeight());
+		assertEquals(scale, quad.scale);
+	}
+
+	@Test
+	public void testRasterizationBudget() {
+		var byteBuffer = memCalloc(2000);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 200);
+
+		// The background rasterizer runs on the calling thread, so its glyphs are ready during the next frame
+		var backgroundRasterizer = new RecordingRasterizer();
+		glyphs.setRasterizationBudget(2, Long.MAX_VALUE, Runnable::run, backgroundRasterizer);
+		var rasterizer = new RecordingRasterizer();
+
+		// Each glyph of size 5 needs 1 section, but only 2 glyphs can be rasterized during the first frame
+		glyphs.startFrame();
+		var quads = glyphs.bufferGlyphs(rasterizer, placeGlyphs(1, 2, 3, 4, 5));
+		assertEquals(2, quads.size());
+		assertQuad(quads.get(0), 0, 0, 5, 10, 1);
+		assertQuad(quads.get(1), 1, 10, 5, 10, 1);
+		assertEquals(List.of(1, 2), rasterizer.rasterizedGlyphs.stream().map(glyph -> glyph.id).toList());
+		assertEquals(List.of(3, 4, 5), backgroundRasterizer.rasterizedGlyphs.stream().map(glyph -> glyph.id).toList());
+
+		// The glyphs that were rasterized in the background are available during the next frame
+		glyphs.startFrame();
+		quads = glyphs.bufferGlyphs(rasterizer, placeGlyphs(1, 2, 3, 4, 5));
+		assertEquals(5, quads.size());
+		for (int index = 0; index < 5; index++) assertQuad(quads.get(index), index, 10 * index, 5, 10, 1);
+		assertEquals(2, rasterizer.rasterizedGlyphs.size());
+		assertEquals(3, backgroundRasterizer.rasterizedGlyphs.size());
+
+		// When the budget is exhausted, glyph 1 with size 10 is upscaled from glyph 1 with size 5
+		var request = new TextPlaceRequest("abcdefg", 0, 0, 1000, 1000, 0, 5, 1, TextAlignment.DEFAULT, null);
+		var placedGlyphs = placeGlyphs(6, 7);
+		var largeGlyph = new SizedGlyph(1, 0, 10, 1);
+		placedGlyphs.add(new PlacedGlyph(largeGlyph, 100, 0, request, 2));
+		glyphs.startFrame();
+		quads = glyphs.bufferGlyphs(rasterizer, placedGlyphs);
+		assertEquals(3, quads.size());
+		assertQuad(quads.get(2), 2, 100, 10, 20, 2);
+		assertEquals(4, rasterizer.rasterizedGlyphs.size());
+		assertEquals(largeGlyph, backgroundRasterizer.rasterizedGlyphs.get(3));
+
+		// The real glyph comes from the background rasterizer, and is not rasterized again
+		glyphs.startFrame();
+		quads = glyphs.bufferGlyphs(rasterizer, placedGlyphs);
+		assertEquals(3, quads.size());
+		assertQuad(quads.get(2), 2, 100, 10, 20, 1);
+		assertEquals(4, rasterizer.rasterizedGlyphs.size());
+		assertEquals(4, backgroundRasterizer.rasterizedGlyphs.size());
+
+		// Glyph 10 is rasterized in the background, but it is only needed 2 frames later
+		glyphs.startFrame();
+		assertEquals(2, glyphs.bufferGlyphs(rasterizer, placeGlyphs(8, 9, 10)).size());
+		glyphs.startFrame();
+		glyphs.startFrame();
+		quads = glyphs.bufferGlyphs(rasterizer, placeGlyphs(10));
+		assertEquals(1, quads.size());
+		assertQuad(quads.get(0), 0, 0, 5, 10, 1);
+		assertEquals(6, rasterizer.rasterizedGlyphs.size());
+		assertEquals(5, backgroundRasterizer.rasterizedGlyphs.size());
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testRasterizationBudgetWithNonDivisibleSizes() {
+		var byteBuffer = memCalloc(2000);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 200);
+		glyphs.setRasterizationBudget(1, Long.MAX_VALUE, Runnable::run, new RecordingRasterizer());
+		var rasterizer = new RecordingRasterizer();
+		var request = new TextPlaceRequest("abcdefg", 0, 0, 1000, 1000, 0, 5, 1, TextAlignment.DEFAULT, null);
+
+		glyphs.startFrame();
+		var placedGlyphs = List.of(new PlacedGlyph(new SizedGlyph(1, 0, 7, 1), 0, 0, request, 0));
+		assertEquals(1, glyphs.bufferGlyphs(rasterizer, placedGlyphs).size());
+
+		// Size 7 doesn't divide size 10, but it is the closest smaller size, so it is drawn without upscaling
+		glyphs.startFrame();
+		placedGlyphs = List.of(
+				new PlacedGlyph(new SizedGlyph(2, 0, 5, 1), 0, 0, request, 0),
+				new PlacedGlyph(new SizedGlyph(1, 0, 10, 1), 100, 0, request, 1)
+		);
+		var quads = glyphs.bufferGlyphs(rasterizer, placedGlyphs);
+		assertEquals(2, quads.size());
+		assertQuad(quads.get(1), 1, 100, 7, 14, 1);
+
+		// Size 5 upscaled by 2 (10) is closer to size 12 than size 7 (7)
+		glyphs.startFrame();
+		placedGlyphs = List.of(
+				new PlacedGlyph(new SizedGlyph(1, 0, 5, 1), 0, 0, request, 0),
+				new PlacedGlyph(new SizedGlyph(1, 0, 12, 1), 100, 0, request, 1)
+		);
+		quads = glyphs.bufferGlyphs(rasterizer, placedGlyphs);
+		assertEquals(2, quads.size());
+		assertQuad(quads.get(1), 1, 100, 10, 20, 2);
+
+		// Size 5 upscaled by 3 (15) is closer to size 15 than size 7 upscaled by 2 (14). Size 10 was rasterized in the
+		// background, but it is not a candidate, since it wasn't stored in the buffer yet.
+		glyphs.startFrame();
+		placedGlyphs = List.of(
+				new PlacedGlyph(new SizedGlyph(3, 0, 5, 1), 0, 0, request, 0),
+				new PlacedGlyph(new SizedGlyph(1, 0, 15, 1), 100, 0, request, 1)
+		);
+		quads = glyphs.bufferGlyphs(rasterizer, placedGlyphs);
+		assertEquals(2, quads.size());
+		assertQuad(quads.get(1), 1, 100, 15, 30, 3);
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testFailedBackgroundRasterization() {
+		var byteBuffer = memCalloc(2000);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 200);
+		var failure = new IllegalArgumentException("Can't rasterize glyph 3");
+		var backgroundRasterizer = new RecordingRasterizer() {
+
+			@Override
+			public void set(SizedGlyph glyph, Object userData) {
+				super.set(glyph, userData);
+				if (glyph.id == 3) throw failure;
+			}
+		};
+		glyphs.setRasterizationBudget(1, Long.MAX_VALUE, Runnable::run, backgroundRasterizer);
+		var rasterizer = new RecordingRasterizer();
+
+		glyphs.startFrame();
+		assertEquals(1, glyphs.bufferGlyphs(rasterizer, placeGlyphs(1, 3)).size());
+		assertEquals(1, backgroundRasterizer.rasterizedGlyphs.size());
+
+		// The failure should be reported whenever glyph 3 is needed, but it shouldn't be rasterized again
+		for (int frame = 0; frame < 3; frame++) {
+			glyphs.startFrame();
+			assertSame(failure, assertThrows(
+					IllegalArgumentException.class, () -> glyphs.bufferGlyphs(rasterizer, placeGlyphs(1, 3))
+			));
+		}
+		assertEquals(1, backgroundRasterizer.rasterizedGlyphs.size());
+		assertEquals(1, rasterizer.rasterizedGlyphs.size());
+
+		glyphs.startFrame();
+		assertEquals(2, glyphs.bufferGlyphs(rasterizer, placeGlyphs(1, 2)).size());
+		memFree(byteBuffer);
+	}
+
+	private static class SlowRasterizer extends RecordingRasterizer {
+
+		@Override
+		public void set(SizedGlyph glyph, Object userData) {
+			long endTime = System.nanoTime() + 30_000_000L;
+			while (System.nanoTime() < endTime) Thread.onSpinWait();
+			super.set(glyph, userData);
+		}
+	}
+
+	@Test
+	public void testParallelRasterizationWithTimeBudget() {
+		var byteBuffer = memCalloc(2000);
+		var glyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 200);
+		var backgroundRasterizer = new RecordingRasterizer();
+		glyphs.setRasterizationBudget(10, 10_000_000L, Runnable::run, backgroundRasterizer);
+
+		// The executor runs the task on the calling thread, before the main rasterizer starts. The task claims the
+		// first glyph, which takes 30ms, so neither the task nor the main rasterizer may claim another glyph.
+		var rasterizers = new SlowRasterizer[] { new SlowRasterizer(), new SlowRasterizer() };
+		glyphs.startFrame();
+		var quads = glyphs.bufferGlyphs(rasterizers, Runnable::run, placeGlyphs(1, 2, 3, 4, 5, 6));
+		assertEquals(1, quads.size());
+		assertEquals(0, rasterizers[0].rasterizedGlyphs.size());
+		assertEquals(List.of(1), rasterizers[1].rasterizedGlyphs.stream().map(glyph -> glyph.id).toList());
+		assertEquals(
+				List.of(2, 3, 4, 5, 6),
+				backgroundRasterizer.rasterizedGlyphs.stream().map(glyph -> glyph.id).toList()
+		);
+
+		glyphs.startFrame();
+		quads = glyphs.bufferGlyphs(rasterizers, Runnable::run, placeGlyphs(1, 2, 3, 4, 5, 6));
+		assertEquals(6, quads.size());
+		assertEquals(0, rasterizers[0].rasterizedGlyphs.size());
+		assertEquals(1, rasterizers[1].rasterizedGlyphs.size());
+		memFree(byteBuffer);
+	}
 }
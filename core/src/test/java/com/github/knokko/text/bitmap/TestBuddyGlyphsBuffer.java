@@ -0,0 +1,221 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.SizedGlyph;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.BufferUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+public class TestBuddyGlyphsBuffer {
+
+	private static class DummyRasterizer implements GlyphRasterizer {
+
+		private ByteBuffer buffer;
+		private int size;
+
+		@Override
+		public void set(SizedGlyph glyph, Object userData) {
+			int capacity = glyph.size * glyph.size;
+			buffer = BufferUtils.createByteBuffer(capacity);
+			for (int counter = 0; counter < capacity; counter++) {
+				buffer.put((byte) (1 + counter % 100 + glyph.id));
+			}
+			buffer.position(0);
+			this.size = glyph.size;
+		}
+
+		@Override
+		public String getUserDataKey(Object userData) {
+			return "";
+		}
+
+		@Override
+		public int getBufferWidth() {
+			return size;
+		}
+
+		@Override
+		public int getBufferHeight() {
+			return size;
+		}
+
+		@Override
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		@Override
+		public void destroy() {}
+	}
+
+	@Test
+	public void testSplitAndCoalesce() {
+		var allocator = new BuddyAllocator(256, 16, 256);
+		assertEquals(256, allocator.getFreeSpace());
+
+		assertEquals(0, allocator.allocate(10));
+		assertEquals(32, allocator.allocate(30));
+		assertEquals(16, allocator.allocate(16));
+		assertEquals(64, allocator.allocate(40));
+		assertEquals(256 - 16 - 32 - 16 - 64, allocator.getFreeSpace());
+		assertEquals(-1, allocator.allocate(129));
+
+		allocator.free(0, 10);
+		allocator.free(16, 16);
+		allocator.free(32, 30);
+		assertEquals(0, allocator.allocate(64));
+		allocator.free(0, 64);
+		allocator.free(64, 40);
+		assertEquals(256, allocator.getFreeSpace());
+		assertEquals(0, allocator.allocate(256));
+	}
+
+	@Test
+	public void testSizeIsNotPowerOfTwo() {
+		var allocator = new BuddyAllocator(100, 16, 64);
+		assertEquals(96, allocator.getFreeSpace());
+		assertEquals(0, allocator.allocate(64));
+		assertEquals(64, allocator.allocate(32));
+		assertEquals(-1, allocator.allocate(1));
+
+		allocator.free(64, 32);
+		assertEquals(64, allocator.allocate(16));
+		assertEquals(80, allocator.allocate(16));
+	}
+
+	@Test
+	public void testRandomAllocationsDontOverlap() {
+		var rng = new Random(35);
+		int size = 5000;
+		var allocator = new BuddyAllocator(size, 8, 1024);
+		var owners = new int[size];
+		var blocks = new ArrayList<int[]>();
+		int initialFreeSpace = allocator.getFreeSpace();
+
+		for (int counter = 1; counter < 5000; counter++) {
+			if (rng.nextInt(3) != 0 || blocks.isEmpty()) {
+				int blockSize = 1 + rng.nextInt(300);
+				int offset = allocator.allocate(blockSize);
+				if (offset == -1) continue;
+
+				for (int index = offset; index < offset + allocator.roundSize(blockSize); index++) {
+					assertEquals(0, owners[index]);
+					owners[index] = counter;
+				}
+				blocks.add(new int[] { offset, blockSize });
+			} else {
+				var block = blocks.remove(rng.nextInt(blocks.size()));
+				allocator.free(block[0], block[1]);
+				for (int index = block[0]; index < block[0] + allocator.roundSize(block[1]); index++) owners[index] = 0;
+			}
+		}
+
+		for (var block : blocks) allocator.free(block[0], block[1]);
+		assertEquals(initialFreeSpace, allocator.getFreeSpace());
+		assertEquals(0, allocator.allocate(1024));
+	}
+
+	@Test
+	public void testGlyphsAreContiguous() {
+		var byteBuffer = memCalloc(4000);
+		var glyphs = new BuddyGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 16, 256);
+		assertEquals(256, glyphs.getMaxBlockSize());
+		var rasterizer = new DummyRasterizer();
+		glyphs.startFrame();
+
+		// 5x5 = 25 bytes, which needs a block of 32 bytes
+		var small = glyphs.getSections(rasterizer, new SizedGlyph(1, 0, 5, 1), null);
+		assertEquals(1, small.size());
+		assertEquals(new BitmapGlyphSection(small.get(0).bufferIndex(), 0, 0, 5, 5), small.get(0));
+		assertEquals(0, small.get(0).bufferIndex() % 32);
+		assertEquals(32, glyphs.getUsedSpace() - 4000 % 16);
+
+		// 30x30 = 900 bytes, which needs 3 tiles of 30x8 bytes (240 bytes) and 1 tile of 30x6 bytes
+		var large = glyphs.getSections(rasterizer, new SizedGlyph(2, 0, 30, 1), null);
+		assertEquals(4, large.size());
+		for (int index = 0; index < 4; index++) {
+			var section = large.get(index);
+			assertEquals(0, section.offsetX());
+			assertEquals(8 * index, section.offsetY());
+			assertEquals(30, section.width());
+			assertEquals(Math.min(8, 30 - 8 * index), section.height());
+
+			for (int y = 0; y < section.height(); y++) {
+				for (int x = 0; x < 30; x++) {
+					int bitmapIndex = x + (y + section.offsetY()) * 30;
+					assertEquals((byte) (1 + bitmapIndex % 100 + 2), byteBuffer.get(section.bufferIndex() + x + y * 30));
+				}
+			}
+		}
+
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testEvictionCoalesces() {
+		var byteBuffer = memCalloc(256);
+		var glyphs = new BuddyGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 16, 256);
+		var rasterizer = new DummyRasterizer();
+
+		// 4x4 = 16 bytes, so the buffer can hold 16 of these glyphs
+		glyphs.startFrame();
+		for (int id = 1; id <= 16; id++) glyphs.getSections(rasterizer, new SizedGlyph(id, 0, 4, 1), null);
+		assertEquals(0, glyphs.countAvailableSpace());
+
+		// 16x16 = 256 bytes, which requires all small glyphs to be evicted and coalesced
+		glyphs.startFrame();
+		var sections = glyphs.getSections(rasterizer, new SizedGlyph(20, 0, 16, 1), null);
+		assertEquals(1, sections.size());
+		assertEquals(0, sections.get(0).bufferIndex());
+		assertEquals(256, glyphs.getUsedSpace());
+
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+				rasterizer, new SizedGlyph(1, 0, 4, 1), null
+		));
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testCompaction() {
+		var byteBuffer = memCalloc(256);
+		var glyphs = new BuddyGlyphsBuffer(memAddress(byteBuffer), byteBuffer.capacity(), 16, 256);
+		var movedBytes = new int[1];
+		glyphs.setCompactionBudget(1_000_000_000L, (oldIndex, newIndex, length) -> {
+			assertTrue(newIndex < oldIndex);
+			assertEquals(16, length);
+			movedBytes[0] += length;
+		});
+		var rasterizer = new DummyRasterizer();
+
+		glyphs.startFrame();
+		for (int id = 1; id <= 16; id++) glyphs.getSections(rasterizer, new SizedGlyph(id, 0, 4, 1), null);
+
+		// Evicting all odd glyphs leaves 128 free bytes, but no free block of 64 bytes
+		glyphs.startFrame();
+		for (int id = 2; id <= 16; id += 2) glyphs.getSections(rasterizer, new SizedGlyph(id, 0, 4, 1), null);
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+				rasterizer, new SizedGlyph(100, 0, 8, 1), null
+		));
+		assertEquals(0, movedBytes[0]);
+
+		// Compaction should move the even glyphs to the first half of the buffer
+		glyphs.startFrame();
+		assertTrue(movedBytes[0] > 0);
+		for (int id = 2; id <= 16; id += 2) {
+			var section = glyphs.getSections(rasterizer, new SizedGlyph(id, 0, 4, 1), null).get(0);
+			assertTrue(section.bufferIndex() < 128);
+			for (int index = 0; index < 16; index++) {
+				assertEquals((byte) (1 + index + id), byteBuffer.get(section.bufferIndex() + index));
+			}
+		}
+		var largeSection = glyphs.getSections(rasterizer, new SizedGlyph(100, 0, 8, 1), null).get(0);
+		assertTrue(largeSection.bufferIndex() >= 128);
+
+		memFree(byteBuffer);
+	}
+}
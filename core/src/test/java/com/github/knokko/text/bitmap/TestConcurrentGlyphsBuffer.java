@@ -0,0 +1,162 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.SizedGlyph;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+public class TestConcurrentGlyphsBuffer {
+
+	/**
+	 * Rasterizes each glyph as a 4x4 square filled with its ID, and counts how often each glyph is rasterized
+	 */
+	private static class CountingRasterizer implements GlyphRasterizer {
+
+		private final AtomicIntegerArray counters;
+		private final ByteBuffer buffer = ByteBuffer.allocate(16);
+
+		CountingRasterizer(AtomicIntegerArray counters) {
+			this.counters = counters;
+		}
+
+		@Override
+		public void set(SizedGlyph glyph, Object userData) {
+			counters.incrementAndGet(glyph.id);
+			for (int index = 0; index < 16; index++) buffer.put(index, (byte) glyph.id);
+		}
+
+		@Override
+		public String getUserDataKey(Object userData) {
+			return "";
+		}
+
+		@Override
+		public int getBufferWidth() {
+			return 4;
+		}
+
+		@Override
+		public int getBufferHeight() {
+			return 4;
+		}
+
+		@Override
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		@Override
+		public void destroy() {}
+	}
+
+	@Test
+	public void testRasterizeOnce() throws Exception {
+		int numGlyphs = 100;
+		var byteBuffer = memCalloc(16 * numGlyphs);
+		var glyphs = new ConcurrentGlyphsBuffer(new BitmapGlyphsBuffer(memAddress(byteBuffer), 16 * numGlyphs, 16));
+		var counters = new AtomicIntegerArray(numGlyphs + 1);
+
+		var executor = Executors.newFixedThreadPool(8);
+		var tasks = new ArrayList<Future<?>>();
+		for (int thread = 0; thread < 8; thread++) {
+			int offset = 13 * thread;
+			tasks.add(executor.submit(() -> {
+				var rasterizer = new CountingRasterizer(counters);
+				for (int frame = 0; frame < 50; frame++) {
+					long frameToken = glyphs.startFrame();
+					for (int counter = 0; counter < numGlyphs; counter++) {
+						int id = 1 + (offset + frame + counter) % numGlyphs;
+						var sections = glyphs.getSections(frameToken, rasterizer, new SizedGlyph(id, 0, 4, 1), null);
+						assertEquals(1, sections.size());
+						var page = glyphs.getPage(0);
+						for (int index = 0; index < 16; index++) {
+							assertEquals((byte) id, page.get(sections.get(0).bufferIndex() + index));
+						}
+					}
+					glyphs.frameCompleted(frameToken);
+				}
+			}));
+		}
+		for (var task : tasks) task.get();
+		executor.shutdown();
+
+		for (int id = 1; id <= numGlyphs; id++) assertEquals(1, counters.get(id));
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testPendingFramesProtectGlyphs() {
+		var byteBuffer = memCalloc(32);
+		var glyphs = new ConcurrentGlyphsBuffer(new BitmapGlyphsBuffer(memAddress(byteBuffer), 32, 16));
+		var counters = new AtomicIntegerArray(4);
+		var rasterizer = new CountingRasterizer(counters);
+
+		long frame1 = glyphs.startFrame();
+		glyphs.getSections(frame1, rasterizer, new SizedGlyph(1, 0, 4, 1), null);
+		glyphs.getSections(frame1, rasterizer, new SizedGlyph(2, 0, 4, 1), null);
+
+		// Glyph 1 and 2 can't be evicted while frame 1 is pending
+		long frame2 = glyphs.startFrame();
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+				frame2, rasterizer, new SizedGlyph(3, 0, 4, 1), null
+		));
+
+		// Using glyph 2 during frame 2 protects it after frame 1 is completed
+		glyphs.getSections(frame2, rasterizer, new SizedGlyph(2, 0, 4, 1), null);
+		glyphs.frameCompleted(frame1);
+		var sections3 = glyphs.getSections(frame2, rasterizer, new SizedGlyph(3, 0, 4, 1), null);
+		assertEquals((byte) 3, glyphs.getPage(0).get(sections3.get(0).bufferIndex()));
+		assertEquals(1, counters.get(2));
+		glyphs.frameCompleted(frame2);
+		memFree(byteBuffer);
+	}
+
+	@Test
+	public void testFrameRounds() throws Exception {
+		var byteBuffer = memCalloc(32);
+		var sharedGlyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), 32, 16);
+		var glyphs = new ConcurrentGlyphsBuffer(sharedGlyphs);
+		var counters = new AtomicIntegerArray(4);
+		var rasterizer = new CountingRasterizer(counters);
+
+		long frame1 = glyphs.startFrame();
+		glyphs.getSections(frame1, rasterizer, new SizedGlyph(1, 0, 4, 1), null);
+		glyphs.getSections(frame1, rasterizer, new SizedGlyph(2, 0, 4, 1), null);
+
+		// The frame of the other thread joins the current round, so it shares the glyphs of frame 1
+		var otherThread = Executors.newSingleThreadExecutor();
+		long otherFrame = otherThread.submit(glyphs::startFrame).get();
+		otherThread.shutdown();
+		assertEquals(frame1, otherFrame);
+
+		// The next frame of this thread starts a new round
+		glyphs.frameCompleted(frame1);
+		long frame2 = glyphs.startFrame();
+		assertTrue(frame2 > frame1);
+
+		// Glyph 1 and 2 are still protected by the frame of the other thread
+		assertThrows(GlyphBufferCapacityException.class, () -> glyphs.getSections(
+				frame2, rasterizer, new SizedGlyph(3, 0, 4, 1), null
+		));
+		glyphs.frameCompleted(otherFrame);
+		glyphs.getSections(frame2, rasterizer, new SizedGlyph(3, 0, 4, 1), null);
+		glyphs.frameCompleted(frame2);
+
+		// The per-frame bookkeeping of the shared buffer is not supported
+		assertThrows(IllegalStateException.class, sharedGlyphs::startFrame);
+		assertThrows(IllegalStateException.class, sharedGlyphs::getDirtyRanges);
+		assertThrows(IllegalStateException.class, sharedGlyphs::countAvailableSpace);
+
+		var compactedGlyphs = new BitmapGlyphsBuffer(memAddress(byteBuffer), 32, 16);
+		compactedGlyphs.setCompactionBudget(1000L, null);
+		assertThrows(IllegalArgumentException.class, () -> new ConcurrentGlyphsBuffer(compactedGlyphs));
+		memFree(byteBuffer);
+	}
+}
@@ -0,0 +1,64 @@
+package com.github.knokko.text.bitmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDirtyRanges {
+
+	@Test
+	public void testMerge() {
+		var ranges = new DirtyRanges();
+		ranges.add(10, 20);
+		ranges.add(30, 40);
+		ranges.add(50, 60);
+		ranges.add(0, 5);
+		assertEquals(4, ranges.size());
+
+		// Adjacent to the first range
+		ranges.add(5, 7);
+		assertEquals(4, ranges.size());
+		assertEquals(0, ranges.start(0));
+		assertEquals(7, ranges.end(0));
+
+		// Overlaps 2 ranges
+		ranges.add(15, 35);
+		assertEquals(3, ranges.size());
+		assertEquals(10, ranges.start(1));
+		assertEquals(40, ranges.end(1));
+
+		// Covers everything
+		ranges.add(0, 100);
+		assertEquals(1, ranges.size());
+		assertEquals(0, ranges.start(0));
+		assertEquals(100, ranges.end(0));
+
+		ranges.clear();
+		assertEquals(0, ranges.size());
+	}
+
+	@Test
+	public void testRandomRanges() {
+		var rng = new Random(37);
+		var ranges = new DirtyRanges();
+		var expected = new boolean[1000];
+		for (int counter = 0; counter < 200; counter++) {
+			int start = rng.nextInt(990);
+			int end = start + 1 + rng.nextInt(10);
+			ranges.add(start, end);
+			for (int index = start; index < end; index++) expected[index] = true;
+
+			var actual = new boolean[1000];
+			for (int index = 0; index < ranges.size(); index++) {
+				assertTrue(ranges.start(index) < ranges.end(index));
+				if (index > 0) assertTrue(ranges.end(index - 1) < ranges.start(index));
+				for (int byteIndex = ranges.start(index); byteIndex < ranges.end(index); byteIndex++) {
+					actual[byteIndex] = true;
+				}
+			}
+			assertArrayEquals(expected, actual);
+		}
+	}
+}
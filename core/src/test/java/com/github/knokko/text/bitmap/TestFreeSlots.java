@@ -0,0 +1,115 @@
+package com.github.knokko.text.bitmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFreeSlots {
+
+	@Test
+	public void testAllocateLowestFirst() {
+		var slots = new FreeSlots(200);
+		for (int slot = 0; slot < 200; slot++) assertEquals(slot, slots.allocate());
+		assertEquals(-1, slots.allocate());
+		assertEquals(0, slots.count());
+
+		slots.free(130, 1);
+		slots.free(70, 1);
+		assertEquals(70, slots.allocate());
+		assertEquals(130, slots.allocate());
+		assertThrows(IllegalStateException.class, () -> {
+			slots.free(5, 1);
+			slots.free(5, 1);
+		});
+	}
+
+	@Test
+	public void testAllocateRun() {
+		var slots = new FreeSlots(300);
+		for (int slot = 0; slot < 300; slot++) slots.allocate();
+
+		slots.free(10, 3);
+		slots.free(60, 5);
+		slots.free(125, 10);
+		assertEquals(-1, slots.allocateRun(11));
+		assertEquals(125, slots.allocateRun(6));
+		assertEquals(60, slots.allocateRun(4));
+		assertEquals(10, slots.allocateRun(3));
+		assertEquals(131, slots.allocateRun(4));
+		assertEquals(64, slots.allocate());
+		assertEquals(-1, slots.allocate());
+	}
+
+	@Test
+	public void testCompareWithNaiveImplementation() {
+		var rng = new Random(42);
+		int numSlots = 5000;
+		var slots = new FreeSlots(numSlots);
+		var expected = new boolean[numSlots];
+		for (int slot = 0; slot < numSlots; slot++) expected[slot] = true;
+
+		for (int counter = 0; counter < 20_000; counter++) {
+			if (rng.nextInt(3) != 0) {
+				int count = 1 + rng.nextInt(10);
+				int expectedStart = -1;
+				for (int start = 0; start + count <= numSlots && expectedStart == -1; start++) {
+					boolean allFree = true;
+					for (int slot = start; slot < start + count; slot++) allFree &= expected[slot];
+					if (allFree) expectedStart = start;
+				}
+
+				assertEquals(expectedStart, slots.allocateRun(count));
+				if (expectedStart != -1) {
+					for (int slot = expectedStart; slot < expectedStart + count; slot++) expected[slot] = false;
+				}
+			} else {
+				int slot = rng.nextInt(numSlots);
+				if (!expected[slot]) {
+					slots.free(slot, 1);
+					expected[slot] = true;
+				}
+			}
+		}
+
+		int expectedCount = 0;
+		for (int slot = 0; slot < numSlots; slot++) {
+			assertEquals(expected[slot], slots.isFree(slot));
+			if (expected[slot]) expectedCount += 1;
+		}
+		assertEquals(expectedCount, slots.count());
+	}
+
+	@Test
+	public void testResize() {
+		var slots = new FreeSlots(100);
+		assertEquals(-1, slots.highestUsedSlot());
+		slots.claim(3, 4);
+		slots.claim(63, 3);
+		slots.claim(90, 1);
+		assertEquals(90, slots.highestUsedSlot());
+		assertThrows(IllegalArgumentException.class, () -> slots.resize(90));
+
+		var grown = slots.resize(300);
+		assertEquals(300, grown.numSlots());
+		assertEquals(292, grown.count());
+		assertEquals(90, grown.highestUsedSlot());
+		for (int slot = 0; slot < 300; slot++) {
+			assertEquals(slot < 100 && slots.isFree(slot) || slot >= 100, grown.isFree(slot), "slot " + slot);
+		}
+
+		assertEquals(8, slots.countUsedSlots(0));
+		assertEquals(6, slots.countUsedSlots(5));
+		assertEquals(3, slots.countUsedSlots(64));
+		assertEquals(0, slots.countUsedSlots(91));
+		assertEquals(0, slots.countUsedSlots(100));
+
+		slots.free(90, 1);
+		var shrunk = slots.resize(66);
+		assertEquals(59, shrunk.count());
+		assertEquals(65, shrunk.highestUsedSlot());
+		assertEquals(0, shrunk.allocate());
+		assertEquals(-1, shrunk.allocateRun(60));
+	}
+}
@@ -0,0 +1,34 @@
+package com.github.knokko.text.bitmap;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFrequencySketch {
+
+	@Test
+	public void testCountAndSaturate() {
+		var sketch = new FrequencySketch(1024);
+		assertEquals(0, sketch.frequency(12345L));
+
+		for (int counter = 1; counter <= 20; counter++) {
+			sketch.increment(12345L);
+			assertEquals(Math.min(15, counter), sketch.frequency(12345L));
+		}
+		sketch.increment(-7L);
+		sketch.increment(-7L);
+		assertEquals(2, sketch.frequency(-7L));
+		assertEquals(0, sketch.frequency(98765L));
+	}
+
+	@Test
+	public void testHalveCounters() {
+		// 16 counters, so all counters are halved after 160 increments
+		var sketch = new FrequencySketch(16);
+		for (int counter = 0; counter < 159; counter++) sketch.increment(5L);
+		assertEquals(15, sketch.frequency(5L));
+
+		sketch.increment(5L);
+		assertEquals(7, sketch.frequency(5L));
+	}
+}
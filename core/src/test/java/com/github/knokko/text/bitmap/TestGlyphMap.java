@@ -0,0 +1,46 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.SizedGlyph;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestGlyphMap {
+
+	@Test
+	public void testCompareWithHashMap() {
+		var rng = new Random(1234);
+		var glyphMap = new GlyphMap();
+		var expected = new HashMap<Long, BufferedBitmapGlyph>();
+		var keys = new ArrayList<Long>();
+
+		for (int counter = 0; counter < 100_000; counter++) {
+			// Use a small key space, so that there are many collisions and removals
+			long key = ((long) rng.nextInt(20) << 32) | rng.nextInt(500);
+
+			if (expected.containsKey(key)) {
+				assertSame(expected.get(key), glyphMap.get(key));
+				if (rng.nextBoolean()) {
+					assertSame(expected.remove(key), glyphMap.remove(key));
+					assertNull(glyphMap.get(key));
+				}
+			} else {
+				assertNull(glyphMap.get(key));
+				assertNull(glyphMap.remove(key));
+				var glyph = new BufferedBitmapGlyph(
+						new SizedGlyph((int) key, 0, 10, 1), "", key, new ArrayList<>(), 0, 0
+				);
+				glyphMap.put(key, glyph);
+				expected.put(key, glyph);
+				keys.add(key);
+			}
+			assertEquals(expected.size(), glyphMap.size());
+		}
+
+		for (long key : keys) assertSame(expected.get(key), glyphMap.get(key));
+	}
+}
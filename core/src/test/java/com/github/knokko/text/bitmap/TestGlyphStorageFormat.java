@@ -0,0 +1,87 @@
+package com.github.knokko.text.bitmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestGlyphStorageFormat {
+
+	@Test
+	public void testTexelsPerByte() {
+		assertEquals(1, GlyphStorageFormat.INTENSITY_8.texelsPerByte());
+		assertEquals(2, GlyphStorageFormat.INTENSITY_4.texelsPerByte());
+		assertEquals(8, GlyphStorageFormat.MONOCHROME_1.texelsPerByte());
+	}
+
+	@Test
+	public void testQuantization() {
+		var buffer = ByteBuffer.allocate(4);
+		for (int intensity = 0; intensity < 256; intensity++) {
+			GlyphStorageFormat.INTENSITY_8.writeTexel(buffer, 1, intensity);
+			assertEquals(intensity, GlyphStorageFormat.INTENSITY_8.readTexel(buffer, 1));
+
+			GlyphStorageFormat.INTENSITY_4.writeTexel(buffer, 3, intensity);
+			int packed = GlyphStorageFormat.INTENSITY_4.readTexel(buffer, 3);
+			assertEquals(0, packed % 17);
+			assertTrue(Math.abs(packed - intensity) <= 8, intensity + " became " + packed);
+
+			GlyphStorageFormat.MONOCHROME_1.writeTexel(buffer, 5, intensity);
+			assertEquals(intensity >= 128 ? 255 : 0, GlyphStorageFormat.MONOCHROME_1.readTexel(buffer, 5));
+		}
+	}
+
+	@Test
+	public void testPreserveNeighbours() {
+		var buffer = ByteBuffer.allocate(2);
+		var format = GlyphStorageFormat.INTENSITY_4;
+		format.writeTexel(buffer, 0, 255);
+		format.writeTexel(buffer, 1, 0);
+		format.writeTexel(buffer, 2, 17 * 5);
+		format.writeTexel(buffer, 3, 17 * 9);
+		format.writeTexel(buffer, 1, 17 * 3);
+
+		assertEquals(255, format.readTexel(buffer, 0));
+		assertEquals(17 * 3, format.readTexel(buffer, 1));
+		assertEquals(17 * 5, format.readTexel(buffer, 2));
+		assertEquals(17 * 9, format.readTexel(buffer, 3));
+		assertEquals((byte) 0x3F, buffer.get(0));
+	}
+
+	@Test
+	public void testStoreAndCopyTexels() {
+		var format = GlyphStorageFormat.MONOCHROME_1;
+		var bitmap = ByteBuffer.wrap(new byte[] { 0, (byte) 200, 100, (byte) 255, (byte) 128, 10, 0, (byte) 250, 1 });
+		var buffer = ByteBuffer.allocate(4);
+
+		format.storeTexels(buffer, 3, bitmap, 1, 8);
+		format.copyTexels(buffer, 3, 17, 8);
+		for (int offset = 0; offset < 8; offset++) {
+			int expected = (bitmap.get(1 + offset) & 0xFF) >= 128 ? 255 : 0;
+			assertEquals(expected, format.readTexel(buffer, 3 + offset));
+			assertEquals(expected, format.readTexel(buffer, 17 + offset));
+		}
+		assertEquals(0, format.readTexel(buffer, 2));
+		assertEquals(0, format.readTexel(buffer, 11));
+	}
+
+	@Test
+	public void testTexelsEqual() {
+		var bitmap = ByteBuffer.wrap(new byte[] { 0, (byte) 200, 100, (byte) 255, (byte) 128, 10, 0, (byte) 250 });
+		for (var format : GlyphStorageFormat.values()) {
+			var buffer = ByteBuffer.allocate(16);
+			format.storeTexels(buffer, 5, bitmap, 0, 8);
+			assertTrue(format.texelsEqual(buffer, 5, bitmap, 0, 8));
+			assertFalse(format.texelsEqual(buffer, 4, bitmap, 0, 8));
+		}
+
+		// Bitmaps that only differ by a tiny intensity are equal after quantization
+		var similar = ByteBuffer.wrap(new byte[] { 0, (byte) 201 });
+		var buffer = ByteBuffer.allocate(1);
+		GlyphStorageFormat.INTENSITY_4.storeTexels(buffer, 0, bitmap, 0, 2);
+		assertTrue(GlyphStorageFormat.INTENSITY_4.texelsEqual(buffer, 0, similar, 0, 2));
+		var exact = ByteBuffer.wrap(new byte[] { 0, (byte) 200 });
+		assertFalse(GlyphStorageFormat.INTENSITY_8.texelsEqual(exact, 0, similar, 0, 2));
+	}
+}
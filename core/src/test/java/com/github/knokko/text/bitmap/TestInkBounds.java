@@ -0,0 +1,65 @@
+package com.github.knokko.text.bitmap;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestInkBounds {
+
+	@Test
+	public void testEmptyBitmap() {
+		var bounds = new InkBounds();
+		assertFalse(bounds.compute(ByteBuffer.allocate(100), 10, 10));
+		assertFalse(bounds.compute(ByteBuffer.allocate(0), 0, 5));
+		assertFalse(bounds.compute(ByteBuffer.allocate(0), 5, 0));
+	}
+
+	@Test
+	public void testBounds() {
+		int width = 21;
+		var bitmap = ByteBuffer.allocate(width * 13);
+		bitmap.put(3 + 4 * width, (byte) 1);
+		bitmap.put(17 + 6 * width, (byte) 200);
+		bitmap.put(9 + 10 * width, (byte) 50);
+
+		var bounds = new InkBounds();
+		assertTrue(bounds.compute(bitmap, width, 13));
+		assertEquals(3, bounds.minX);
+		assertEquals(4, bounds.minY);
+		assertEquals(17, bounds.maxX);
+		assertEquals(10, bounds.maxY);
+		assertEquals(15, bounds.getWidth());
+		assertEquals(7, bounds.getHeight());
+	}
+
+	@Test
+	public void testSinglePixelInCorners() {
+		var bounds = new InkBounds();
+		for (int x : new int[] { 0, 12 }) {
+			for (int y : new int[] { 0, 8 }) {
+				var bitmap = ByteBuffer.allocate(13 * 9);
+				bitmap.put(x + 13 * y, (byte) 255);
+				assertTrue(bounds.compute(bitmap, 13, 9));
+				assertEquals(x, bounds.minX);
+				assertEquals(x, bounds.maxX);
+				assertEquals(y, bounds.minY);
+				assertEquals(y, bounds.maxY);
+			}
+		}
+	}
+
+	@Test
+	public void testIsTransparent() {
+		var bitmap = ByteBuffer.allocate(30);
+		bitmap.put(19, (byte) 1);
+		assertTrue(InkBounds.isTransparent(bitmap, 0, 19));
+		assertTrue(InkBounds.isTransparent(bitmap, 20, 10));
+		assertFalse(InkBounds.isTransparent(bitmap, 0, 20));
+		assertFalse(InkBounds.isTransparent(bitmap, 19, 1));
+		assertFalse(InkBounds.isTransparent(bitmap, 10, 4, 1, 6, 2));
+		assertTrue(InkBounds.isTransparent(bitmap, 10, 3, 1, 6, 2));
+		assertTrue(InkBounds.isTransparent(bitmap, 10, 0, 0, 9, 3));
+	}
+}
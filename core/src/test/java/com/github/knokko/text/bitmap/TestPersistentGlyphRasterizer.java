@@ -0,0 +1,153 @@
+package com.github.knokko.text.bitmap;
+
+import com.github.knokko.text.SizedGlyph;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.BufferUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestPersistentGlyphRasterizer {
+
+	private static class CountingRasterizer implements GlyphRasterizer {
+
+		int numRasterizations;
+		boolean destroyed;
+		String rasterizationKey = "counting";
+		private ByteBuffer buffer;
+		private SizedGlyph glyph;
+
+		@Override
+		public void set(SizedGlyph glyph, Object userData) {
+			numRasterizations += 1;
+			this.glyph = glyph;
+			buffer = BufferUtils.createByteBuffer(glyph.size * (glyph.size + 1));
+			for (int index = 0; index < buffer.capacity(); index++) {
+				buffer.put(index, (byte) (index + glyph.id + (userData != null ? 100 : 0)));
+			}
+		}
+
+		@Override
+		public String getUserDataKey(Object userData) {
+			return userData != null ? userData.toString() : "";
+		}
+
+		@Override
+		public String getRasterizationKey() {
+			return rasterizationKey;
+		}
+
+		@Override
+		public int getBufferWidth() {
+			return glyph.size;
+		}
+
+		@Override
+		public int getBufferHeight() {
+			return glyph.size + 1;
+		}
+
+		@Override
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+
+		@Override
+		public void destroy() {
+			destroyed = true;
+		}
+	}
+
+	private static void assertGlyph(GlyphRasterizer rasterizer, SizedGlyph glyph, Object userData) {
+		rasterizer.set(glyph, userData);
+		assertEquals(glyph.size, rasterizer.getBufferWidth());
+		assertEquals(glyph.size + 1, rasterizer.getBufferHeight());
+		for (int index = 0; index < glyph.size * (glyph.size + 1); index++) {
+			assertEquals((byte) (index + glyph.id + (userData != null ? 100 : 0)), rasterizer.getBuffer().get(index));
+		}
+	}
+
+	@Test
+	public void testWarmStart() throws IOException {
+		File directory = Files.createTempDirectory("persistent-glyphs").toFile();
+
+		var coldRasterizer = new CountingRasterizer();
+		var cold = new PersistentGlyphRasterizer(coldRasterizer, directory, "test-font", 1_000_000);
+		assertEquals(0, cold.getNumCachedGlyphs());
+		assertGlyph(cold, new SizedGlyph(1, 0, 10, 1), null);
+		assertGlyph(cold, new SizedGlyph(2, 0, 20, 1), null);
+		assertGlyph(cold, new SizedGlyph(2, 0, 20, 1), "bold");
+		assertGlyph(cold, new SizedGlyph(1, 0, 10, 1), null);
+		assertEquals(3, coldRasterizer.numRasterizations);
+		cold.destroy();
+		assertTrue(coldRasterizer.destroyed);
+
+		var warmRasterizer = new CountingRasterizer();
+		var warm = new PersistentGlyphRasterizer(warmRasterizer, directory, "test-font", 1_000_000);
+		assertEquals(3, warm.getNumCachedGlyphs());
+		assertGlyph(warm, new SizedGlyph(2, 0, 20, 1), "bold");
+		assertGlyph(warm, new SizedGlyph(1, 0, 10, 1), null);
+		assertGlyph(warm, new SizedGlyph(2, 0, 20, 1), null);
+		assertEquals(0, warmRasterizer.numRasterizations);
+
+		// Another scale is another glyph
+		assertGlyph(warm, new SizedGlyph(1, 0, 10, 2), null);
+		assertEquals(1, warmRasterizer.numRasterizations);
+		warm.destroy();
+
+		// Another font should use another file
+		var otherRasterizer = new CountingRasterizer();
+		var other = new PersistentGlyphRasterizer(otherRasterizer, directory, "other-font", 1_000_000);
+		assertEquals(0, other.getNumCachedGlyphs());
+		other.destroy();
+	}
+
+	@Test
+	public void testRasterizationKey() throws IOException {
+		File directory = Files.createTempDirectory("persistent-glyphs").toFile();
+
+		var oldRasterizer = new CountingRasterizer();
+		oldRasterizer.rasterizationKey = "FreeType 2.13.2";
+		var old = new PersistentGlyphRasterizer(oldRasterizer, directory, "test-font", 1_000_000);
+		assertGlyph(old, new SizedGlyph(1, 0, 10, 1), null);
+		old.destroy();
+
+		// Another rasterization key (e.g. another FreeType version) should use another file
+		var newRasterizer = new CountingRasterizer();
+		newRasterizer.rasterizationKey = "FreeType 2.14.0";
+		var upgraded = new PersistentGlyphRasterizer(newRasterizer, directory, "test-font", 1_000_000);
+		assertEquals(0, upgraded.getNumCachedGlyphs());
+		assertGlyph(upgraded, new SizedGlyph(1, 0, 10, 1), null);
+		assertEquals(1, newRasterizer.numRasterizations);
+		upgraded.destroy();
+
+		var same = new PersistentGlyphRasterizer(new CountingRasterizer(), directory, "test-font", 1_000_000);
+		assertEquals(0, same.getNumCachedGlyphs());
+		same.destroy();
+
+		var reopened = new PersistentGlyphRasterizer(oldRasterizer, directory, "test-font", 1_000_000);
+		assertEquals(1, reopened.getNumCachedGlyphs());
+		reopened.destroy();
+
+		assertEquals(3, directory.list().length);
+	}
+
+	@Test
+	public void testMaxFileSize() throws IOException {
+		File directory = Files.createTempDirectory("persistent-glyphs").toFile();
+
+		// Each glyph record needs 28 + 10 * 11 = 138 bytes, and the header needs 16 bytes
+		var rasterizer = new PersistentGlyphRasterizer(new CountingRasterizer(), directory, "small", 16 + 2 * 138 + 100);
+		for (int id = 0; id < 5; id++) assertGlyph(rasterizer, new SizedGlyph(id, 0, 10, 1), null);
+		assertEquals(2, rasterizer.getNumCachedGlyphs());
+		rasterizer.destroy();
+
+		var reloaded = new PersistentGlyphRasterizer(new CountingRasterizer(), directory, "small", 16 + 2 * 138 + 100);
+		assertEquals(2, reloaded.getNumCachedGlyphs());
+		reloaded.destroy();
+	}
+}
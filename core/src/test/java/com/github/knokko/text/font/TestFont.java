@@ -4,12 +4,16 @@ import com.github.knokko.text.TextInstance;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static com.github.knokko.text.FreeTypeFailureException.assertFtSuccess;
-import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.lwjgl.util.freetype.FreeType.FT_LOAD_BITMAP_METRICS_ONLY;
-import static org.lwjgl.util.freetype.FreeType.FT_Load_Char;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.util.freetype.FreeType.*;
 
 public class TestFont {
 
@@ -64,4 +68,190 @@ public class TestFont {
 		font.destroy();
 		instance.destroy();
 	}
+
+	@Test
+	public void testFreeTypeCache() {
+		var instance = new TextInstance();
+		var font = new FontData(instance, new FilesFontSource(new File(
+				"../unicode-fonts/src/main/resources/fonts/unicode-freeserif.ttf"
+		)));
+		font.enableFreeTypeCache(1024 * 1024);
+
+		for (int counter = 0; counter < 2; counter++) {
+			var face = font.borrowFaceWithHeightA(0, 15, 1);
+			assertFtSuccess(FT_Load_Char(
+					face.ftFace, 'A', FT_LOAD_BITMAP_METRICS_ONLY
+			), "Load_Char", "TestFont.testFreeTypeCache");
+
+			long height = Objects.requireNonNull(face.ftFace.glyph()).metrics().height() / 64;
+			assertTrue(height >= 14 && height <= 16, "Font height (" + height + ") should be in range [14, 16]");
+
+			var sbit = font.lookupSmallBitmap(face, FT_Get_Char_Index(face.ftFace, 'A'));
+			assertNotNull(sbit);
+			int bitmapHeight = Byte.toUnsignedInt(sbit.height());
+			assertTrue(Math.abs(bitmapHeight - height) <= 1, "Bitmap height (" + bitmapHeight + ") should be close to " + height);
+			font.returnFace(face);
+		}
+
+		font.destroy();
+		instance.destroy();
+	}
+
+	@Test
+	public void testShardedFreeTypeCache() throws InterruptedException {
+		var instance = TextInstance.sharded(2);
+		var font = new FontData(instance, new FilesFontSource(new File(
+				"../unicode-fonts/src/main/resources/fonts/unicode-freeserif.ttf"
+		)));
+		font.enableFreeTypeCache(1024 * 1024);
+
+		// While this thread has borrowed a face, a thread with another shard must still be able to use the cache
+		var face = font.borrowFaceWithSize(0, 20 * 64, 1);
+		var failures = new ConcurrentLinkedQueue<Throwable>();
+		var shards = new int[1];
+		var done = new CountDownLatch(1);
+		var otherThread = new Thread(() -> {
+			shards[0] = instance.getCurrentShard();
+			var otherFace = font.borrowFaceWithSize(0, 30 * 64, 1);
+			assertNotNull(font.lookupSmallBitmap(otherFace, FT_Get_Char_Index(otherFace.ftFace, 'A')));
+			font.returnFace(otherFace);
+			done.countDown();
+		});
+		otherThread.setUncaughtExceptionHandler((thread, failure) -> failures.add(failure));
+		otherThread.start();
+
+		assertTrue(done.await(10, TimeUnit.SECONDS), "The other thread should not wait for the shard of this thread");
+		assertNotEquals(instance.getCurrentShard(), shards[0]);
+		assertNotNull(font.lookupSmallBitmap(face, FT_Get_Char_Index(face.ftFace, 'A')));
+		font.returnFace(face);
+		otherThread.join();
+		assertTrue(failures.isEmpty(), "Failures: " + failures);
+
+		font.destroy();
+		instance.destroy();
+	}
+
+	@Test
+	public void testShardedInstance() throws InterruptedException {
+		var instance = TextInstance.sharded(4);
+		var font = new FontData(instance, new ClasspathFontsSource("fonts/unicode-polyglott.ttf"));
+
+		var threads = new Thread[8];
+		var failures = new ConcurrentLinkedQueue<Throwable>();
+		for (int threadIndex = 0; threadIndex < threads.length; threadIndex++) {
+			int minSize = 5 + 10 * threadIndex;
+			threads[threadIndex] = new Thread(() -> {
+				for (int size = minSize; size < minSize + 10; size++) {
+					var face = font.borrowFaceWithSize(0, size * 64, 1);
+					assertFtSuccess(FT_Load_Char(
+							face.ftFace, 'A', FT_LOAD_BITMAP_METRICS_ONLY
+					), "Load_Char", "TestFont.testShardedInstance");
+					font.returnFace(face);
+				}
+			});
+			threads[threadIndex].setUncaughtExceptionHandler((thread, failure) -> failures.add(failure));
+			threads[threadIndex].start();
+		}
+		for (var thread : threads) thread.join();
+
+		assertTrue(failures.isEmpty(), "Failures: " + failures);
+
+		// While thread A is waiting for the lock of its shard, thread B must still be able to create a face of the
+		// same font on another shard
+		var shards = new int[2];
+		var ready = new CountDownLatch(2);
+		var startA = new CountDownLatch(1);
+		var startB = new CountDownLatch(1);
+		var doneB = new CountDownLatch(1);
+		var threadA = new Thread(() -> {
+			shards[0] = instance.getCurrentShard();
+			ready.countDown();
+			try {
+				startA.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			font.returnFace(font.borrowFaceWithSize(0, 200 * 64, 1));
+		});
+		var threadB = new Thread(() -> {
+			shards[1] = instance.getCurrentShard();
+			ready.countDown();
+			try {
+				startB.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			font.returnFace(font.borrowFaceWithSize(0, 300 * 64, 1));
+			doneB.countDown();
+		});
+		threadA.setUncaughtExceptionHandler((thread, failure) -> failures.add(failure));
+		threadB.setUncaughtExceptionHandler((thread, failure) -> failures.add(failure));
+		threadA.start();
+		threadB.start();
+		assertTrue(ready.await(10, TimeUnit.SECONDS));
+		assertNotEquals(shards[0], shards[1]);
+
+		synchronized (instance.getShardLock(shards[0])) {
+			startA.countDown();
+			long deadline = System.nanoTime() + 10_000_000_000L;
+			while (threadA.getState() != Thread.State.BLOCKED) {
+				assertTrue(System.nanoTime() < deadline, "Thread A should block on the lock of its shard");
+				Thread.sleep(1);
+			}
+			startB.countDown();
+			assertTrue(doneB.await(10, TimeUnit.SECONDS), "Thread B should not wait for the shard of thread A");
+		}
+		threadA.join();
+		threadB.join();
+		assertTrue(failures.isEmpty(), "Failures: " + failures);
+
+		font.destroy();
+		instance.destroy();
+	}
+
+	@Test
+	public void testSubsetFontSource() throws IOException {
+		var cacheDirectory = Files.createTempDirectory("subset-fonts").toFile();
+		var instance = new TextInstance();
+
+		for (int counter = 0; counter < 2; counter++) {
+			var source = new SubsetFontSource(new FilesFontSource(new File(
+					"../unicode-fonts/src/main/resources/fonts/unicode-freeserif.ttf"
+			)), Character.UnicodeScript.LATIN);
+			source.setCacheDirectory(cacheDirectory);
+			var font = new FontData(instance, source);
+
+			var face = font.borrowFaceWithHeightA(0, 15, 1);
+			assertNotEquals(0, FT_Get_Char_Index(face.ftFace, 'A'));
+			assertNotEquals(0, FT_Get_Char_Index(face.ftFace, '!'));
+			assertEquals(0, FT_Get_Char_Index(face.ftFace, 'ש'));
+			font.returnFace(face);
+
+			font.destroy();
+			assertEquals(1, Objects.requireNonNull(cacheDirectory.listFiles()).length);
+		}
+
+		instance.destroy();
+		for (var file : Objects.requireNonNull(cacheDirectory.listFiles())) assertTrue(file.delete());
+		assertTrue(cacheDirectory.delete());
+	}
+
+	@Test
+	public void testContentHash() {
+		var instance = new TextInstance();
+		var font1 = new FontData(instance, new ClasspathFontsSource("fonts/unicode-polyglott.ttf"));
+		var font2 = new FontData(instance, new ClasspathFontsSource("fonts/unicode-polyglott.ttf"));
+		var font3 = new FontData(instance, new FilesFontSource(new File(
+				"../unicode-fonts/src/main/resources/fonts/unicode-freeserif.ttf"
+		)));
+
+		assertEquals(64, font1.getContentHash().length());
+		assertEquals(font1.getContentHash(), font2.getContentHash());
+		assertNotEquals(font1.getContentHash(), font3.getContentHash());
+
+		font1.destroy();
+		font2.destroy();
+		font3.destroy();
+		instance.destroy();
+	}
 }
@@ -3,6 +3,7 @@ package com.github.knokko.text.placement;
 import com.github.knokko.text.TextInstance;
 import com.github.knokko.text.font.ClasspathFontsSource;
 import com.github.knokko.text.font.FontData;
+import com.github.knokko.text.font.ShapingBackend;
 import com.github.knokko.text.font.UnicodeFonts;
 import com.github.knokko.text.util.UnicodeLines;
 import org.junit.jupiter.api.Test;
@@ -78,6 +79,47 @@ public class TestTextPlacer {
 		instance.destroy();
 	}
 
+	@Test
+	public void testHarfBuzzShapingBackend() {
+		var instance = new TextInstance();
+		var ftFont = new FontData(instance, new ClasspathFontsSource(
+				"fonts/unicode-freeserif.ttf", "fonts/unicode-quivira.ttf"
+		));
+		var hbFont = new FontData(instance, new ClasspathFontsSource(
+				"fonts/unicode-freeserif.ttf", "fonts/unicode-quivira.ttf"
+		));
+		hbFont.setShapingBackend(ShapingBackend.HARFBUZZ);
+		var ftPlacer = new TextPlacer(ftFont);
+		var hbPlacer = new TextPlacer(hbFont);
+
+		List<TextPlaceRequest> requests = new ArrayList<>();
+		requests.add(new TextPlaceRequest(
+				"hello 𐌀 𐌁 𐌂 world", 0, 5, 5000, 45,
+				20, 20, 1, TextAlignment.DEFAULT, null
+		));
+
+		var ftResult = ftPlacer.place(requests);
+		var hbResult = hbPlacer.place(requests);
+
+		// The glyph advances of the backends may differ slightly due to hinting, but the glyphs must be the same
+		assertEquals(ftResult.size(), hbResult.size());
+		for (int index = 0; index < ftResult.size(); index++) {
+			assertEquals(ftResult.get(index).glyph, hbResult.get(index).glyph);
+			assertEquals(ftResult.get(index).charIndex, hbResult.get(index).charIndex);
+			assertTrue(Math.abs(ftResult.get(index).minY - hbResult.get(index).minY) <= 1);
+
+			// The bitmap size from the HarfBuzz extents must be large enough to cull glyphs conservatively
+			assertTrue(hbResult.get(index).width >= ftResult.get(index).width);
+			assertTrue(hbResult.get(index).height >= ftResult.get(index).height);
+		}
+
+		ftPlacer.destroy();
+		hbPlacer.destroy();
+		ftFont.destroy();
+		hbFont.destroy();
+		instance.destroy();
+	}
+
 	@Test
 	public void testRegressionParallel() {
 		var instance = new TextInstance();
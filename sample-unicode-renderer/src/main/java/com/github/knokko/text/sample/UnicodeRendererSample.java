@@ -13,6 +13,7 @@ import com.github.knokko.profiler.SampleProfiler;
 import com.github.knokko.profiler.storage.FrequencyThreadStorage;
 import com.github.knokko.profiler.storage.SampleStorage;
 import com.github.knokko.text.TextInstance;
+import com.github.knokko.text.bitmap.BitmapGlyphsBuffer;
 import com.github.knokko.text.font.FontData;
 import com.github.knokko.text.font.UnicodeFonts;
 import com.github.knokko.text.placement.TextAlignment;
@@ -98,8 +99,10 @@ public class UnicodeRendererSample extends SimpleWindowRenderLoop {
 	private VulkanTextInstance vkTextInstance;
 	private VulkanTextPipeline vkTextPipeline;
 	private final VulkanTextRenderer[] vkTextRenderers = new VulkanTextRenderer[numFramesInFlight];
-	private final MappedVkbBuffer[] glyphBuffers = new MappedVkbBuffer[numFramesInFlight],
-			quadBuffers = new MappedVkbBuffer[numFramesInFlight];
+	private final long[] frameTokens = new long[numFramesInFlight];
+	private MappedVkbBuffer glyphBuffer;
+	private BitmapGlyphsBuffer glyphsBuffer;
+	private final MappedVkbBuffer[] quadBuffers = new MappedVkbBuffer[numFramesInFlight];
 	private HomogeneousDescriptorPool textDescriptorPool;
 
 	private List<String> unicodeTestCase;
@@ -137,12 +140,17 @@ public class UnicodeRendererSample extends SimpleWindowRenderLoop {
 
 		long[] descriptorSets = textDescriptorPool.allocate(numFramesInFlight);
 
+		// All frames in flight share the same glyph buffer, so each glyph only needs to be rasterized once
+		glyphBuffer = boiler.buffers.createMapped(30_000_000, VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, "GlyphBuffer");
+		var glyphRange = glyphBuffer.fullMappedRange();
+		glyphsBuffer = new BitmapGlyphsBuffer(glyphRange.hostAddress(), glyphRange.intSize(), 360);
+		glyphsBuffer.setTrackFrameCompletion(true);
+
 		for (int index = 0; index < numFramesInFlight; index++) {
-			glyphBuffers[index] = boiler.buffers.createMapped(30_000_000, VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, "GlyphBuffer");
 			quadBuffers[index] = boiler.buffers.createMapped(10_000_000, VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, "QuadBuffer");
 			vkTextRenderers[index] = vkTextPipeline.createRenderer(
-					unicodeFont, descriptorSets[index], glyphBuffers[index].fullMappedRange(),
-					quadBuffers[index].fullMappedRange(), 360, 3
+					unicodeFont, descriptorSets[index], glyphRange,
+					quadBuffers[index].fullMappedRange(), glyphsBuffer, 3
 			);
 		}
 		unicodeTestCase = UnicodeLines.get();
@@ -212,14 +220,19 @@ public class UnicodeRendererSample extends SimpleWindowRenderLoop {
 				VK_ATTACHMENT_STORE_OP_STORE, 0.2f, 0.2f, 0.2f, 1f
 		);
 		recorder.beginSimpleDynamicRendering(acquiredImage.width(), acquiredImage.height(), colorAttachments, null, null);
-		vkTextRenderers[frameIndex].recordCommands(recorder, acquiredImage.width(), acquiredImage.height(), requests);
+		// The fence of the previous frame with this frameIndex has been signalled before this method is called
+		if (frameTokens[frameIndex] != 0L) glyphsBuffer.frameCompleted(frameTokens[frameIndex]);
+		frameTokens[frameIndex] = 0L;
+		frameTokens[frameIndex] = vkTextRenderers[frameIndex].recordCommands(
+				recorder, acquiredImage.width(), acquiredImage.height(), requests
+		);
 		recorder.endDynamicRendering();
 	}
 
 	@Override
 	protected void cleanUp(BoilerInstance boiler) {
 		super.cleanUp(boiler);
-		for (var glyphBuffer : glyphBuffers) glyphBuffer.destroy(boiler);
+		glyphBuffer.destroy(boiler);
 		for (var quadBuffer : quadBuffers) quadBuffer.destroy(boiler);
 		textDescriptorPool.destroy();
 		for (var renderer : vkTextRenderers) renderer.destroy();
@@ -43,7 +43,7 @@ public class VulkanTextInstance {
 			var pushConstants = VkPushConstantRange.calloc(1, stack);
 			pushConstants.stageFlags(VK_SHADER_STAGE_VERTEX_BIT | VK_SHADER_STAGE_FRAGMENT_BIT);
 			pushConstants.offset(0);
-			pushConstants.size(8);
+			pushConstants.size(12);
 			pipelineLayout = boiler.pipelines.createLayout(
 					pushConstants, "TextPipelineLayout", descriptorSetLayout.vkDescriptorSetLayout
 			);
@@ -2,6 +2,7 @@ package com.github.knokko.text.vulkan;
 
 import com.github.knokko.boiler.buffers.MappedVkbBufferRange;
 import com.github.knokko.text.bitmap.BitmapGlyphsBuffer;
+import com.github.knokko.text.bitmap.GlyphStorageFormat;
 import com.github.knokko.text.font.FontData;
 import org.lwjgl.vulkan.VkWriteDescriptorSet;
 
@@ -47,6 +48,48 @@ public class VulkanTextPipeline {
 			MappedVkbBufferRange glyphBuffer,
 			MappedVkbBufferRange quadBuffer,
 			int glyphSlotSize, int numTextPlacerThreads
+	) {
+		var glyphsBuffer = new BitmapGlyphsBuffer(glyphBuffer.hostAddress(), glyphBuffer.intSize(), glyphSlotSize);
+		return createRenderer(font, descriptorSet, glyphBuffer, quadBuffer, glyphsBuffer, numTextPlacerThreads);
+	}
+
+	/**
+	 * Creates a {@link VulkanTextRenderer} that will use this graphics pipeline and the given glyphs buffer. This can
+	 * be used to render with an {@link com.github.knokko.text.bitmap.AtlasGlyphsBuffer} instead.
+	 * @param font The font(s) that the renderer will use
+	 * @param descriptorSet The <i>VkDescriptorSet</i> that the renderer will bind before drawing
+	 * @param glyphBuffer the buffer where the <i>glyphsBuffer</i> will store its rasterized glyphs
+	 * @param quadBuffer the buffer where the renderer will store the quads
+	 * @param glyphsBuffer The glyphs buffer that will be used by the renderer. It must have been created with the
+	 *                     host address and size of <i>glyphBuffer</i>. It can use any {@link GlyphStorageFormat},
+	 *                     since the fragment shader unpacks the texels of the packed formats.
+	 * @param numTextPlacerThreads The number of threads that the {@link com.github.knokko.text.placement.TextPlacer}
+	 *                             of the renderer will use
+	 * @return The created renderer
+	 */
+	public VulkanTextRenderer createRenderer(
+			FontData font, long descriptorSet,
+			MappedVkbBufferRange glyphBuffer,
+			MappedVkbBufferRange quadBuffer,
+			BitmapGlyphsBuffer glyphsBuffer, int numTextPlacerThreads
+	) {
+		writeDescriptorSet(descriptorSet, glyphBuffer, quadBuffer);
+		return new VulkanTextRenderer(
+				font, instance, this, descriptorSet, glyphsBuffer, quadBuffer.intBuffer(), numTextPlacerThreads
+		);
+	}
+
+	/**
+	 * Updates the given descriptor set such that it can be used to render glyphs from the given glyph buffer (or
+	 * page), using the quads in the given quad buffer. This is done automatically by <i>createRenderer</i>, but you
+	 * need to call it yourself for the descriptor sets of spill-over pages, see
+	 * {@link VulkanTextRenderer#setPageDescriptorSet(int, long)}.
+	 * @param descriptorSet The descriptor set to update, which must have the layout of this pipeline
+	 * @param glyphBuffer The buffer or spill-over page that contains the rasterized glyphs
+	 * @param quadBuffer The quad buffer of the renderer that will use the descriptor set
+	 */
+	public void writeDescriptorSet(
+			long descriptorSet, MappedVkbBufferRange glyphBuffer, MappedVkbBufferRange quadBuffer
 	) {
 		try (var stack = stackPush()) {
 			var descriptorWrites = VkWriteDescriptorSet.calloc(2, stack);
@@ -60,11 +103,6 @@ public class VulkanTextPipeline {
 			);
 			vkUpdateDescriptorSets(instance.boiler.vkDevice(), descriptorWrites, null);
 		}
-
-		var glyphsBuffer = new BitmapGlyphsBuffer(glyphBuffer.hostAddress(), glyphBuffer.intSize(), glyphSlotSize);
-		return new VulkanTextRenderer(
-				font, instance, this, descriptorSet, glyphsBuffer, quadBuffer.intBuffer(), numTextPlacerThreads
-		);
 	}
 
 	/**
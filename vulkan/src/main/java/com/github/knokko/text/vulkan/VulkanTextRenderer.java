@@ -4,8 +4,11 @@ import com.github.knokko.boiler.commands.CommandRecorder;
 import com.github.knokko.boiler.utilities.ColorPacker;
 import com.github.knokko.text.bitmap.BitmapGlyphsBuffer;
 import com.github.knokko.text.bitmap.FreeTypeGlyphRasterizer;
+import com.github.knokko.text.bitmap.GlyphPrewarmer;
 import com.github.knokko.text.bitmap.GlyphQuad;
+import com.github.knokko.text.bitmap.GlyphQuadSink;
 import com.github.knokko.text.bitmap.GlyphRasterizer;
+import com.github.knokko.text.bitmap.PrewarmedGlyphRasterizer;
 import com.github.knokko.text.font.FontData;
 import com.github.knokko.text.placement.PlacedGlyph;
 import com.github.knokko.text.placement.TextPlaceRequest;
@@ -15,14 +18,21 @@ import org.lwjgl.vulkan.VkCommandBuffer;
 
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import static org.lwjgl.system.MemoryUtil.*;
 import static org.lwjgl.vulkan.VK10.*;
 
 /**
  * This class is responsible for actually rendering the text. It is not thread-safe at all, and you need 1 instance of
- * this class per frame in-flight.
+ * this class per frame in-flight. The renderers of different frames in-flight can share a single
+ * {@link BitmapGlyphsBuffer} (and glyph buffer) when frame completion is tracked, see
+ * {@link BitmapGlyphsBuffer#setTrackFrameCompletion(boolean)}. This avoids rasterizing each glyph once per frame
+ * in-flight.
  */
 public class VulkanTextRenderer {
 
@@ -35,9 +45,14 @@ public class VulkanTextRenderer {
 	private final BitmapGlyphsBuffer glyphsBuffer;
 	private final IntBuffer quadBuffer;
 
+	private final FontData font;
 	private final TextPlacer placer;
-	private final GlyphRasterizer rasterizer;
+	private final PrewarmedGlyphRasterizer rasterizer;
+	private GlyphRasterizer[] rasterizers;
+	private Executor rasterizationExecutor;
 	private final int numTextPlacerThreads;
+	private final QuadWriter quadWriter = new QuadWriter();
+	private long[] pageDescriptorSets = new long[0];
 
 	VulkanTextRenderer(
 			FontData font, VulkanTextInstance instance, VulkanTextPipeline pipeline,
@@ -50,11 +65,72 @@ public class VulkanTextRenderer {
 		this.glyphsBuffer = glyphsBuffer;
 		this.quadBuffer = quadBuffer;
 
+		this.font = font;
 		this.placer = new TextPlacer(font);
-		this.rasterizer = new FreeTypeGlyphRasterizer(font);
+		this.rasterizer = new PrewarmedGlyphRasterizer(
+				new FreeTypeGlyphRasterizer(font), new FreeTypeGlyphRasterizer(font)
+		);
+		this.rasterizers = new GlyphRasterizer[] { rasterizer };
 		this.numTextPlacerThreads = numTextPlacerThreads;
 	}
 
+	/**
+	 * Makes this renderer rasterize new glyphs on {@code numThreads} threads: the render thread and
+	 * {@code numThreads - 1} tasks on the given executor, see
+	 * {@link BitmapGlyphsBuffer#bufferGlyphs(GlyphRasterizer[], Executor, List)}. This is useful when many new glyphs
+	 * can appear at the same time, for instance when a page of Chinese text is shown for the first time.
+	 * <p>
+	 *     When the font uses a FreeType cache (see {@link FontData#enableFreeTypeCache}), the threads can only
+	 *     rasterize concurrently when they use different shards of the <i>TextInstance</i>.
+	 * </p>
+	 * <p>
+	 *     This method must be called <b>before</b> using this renderer.
+	 * </p>
+	 * @param executor The executor on which the other threads will rasterize glyphs
+	 * @param numThreads The total number of threads that will rasterize glyphs, including the render thread
+	 */
+	public void setParallelRasterization(Executor executor, int numThreads) {
+		if (numThreads < 1) throw new IllegalArgumentException("numThreads (" + numThreads + ") must be positive");
+		for (int index = 1; index < rasterizers.length; index++) rasterizers[index].destroy();
+
+		this.rasterizers = new GlyphRasterizer[numThreads];
+		this.rasterizers[0] = rasterizer;
+		for (int index = 1; index < numThreads; index++) rasterizers[index] = new FreeTypeGlyphRasterizer(font);
+		this.rasterizationExecutor = executor;
+	}
+
+	/**
+	 * Sets the descriptor set that should be bound to render the quads whose glyphs are stored in the spill-over page
+	 * with the given index, see {@link BitmapGlyphsBuffer#setPageProvider}. The descriptor set must have been
+	 * written using {@link VulkanTextPipeline#writeDescriptorSet}, with the page and the quad buffer of this
+	 * renderer. You should typically call this from your
+	 * {@link com.github.knokko.text.bitmap.GlyphPageProvider}, for every renderer that uses the glyphs buffer.
+	 * @param pageIndex The index of the page, which must be at least 1
+	 * @param descriptorSet The descriptor set of the page
+	 */
+	public void setPageDescriptorSet(int pageIndex, long descriptorSet) {
+		if (pageIndex < 1) throw new IllegalArgumentException("Page index (" + pageIndex + ") must be at least 1");
+		if (pageIndex > pageDescriptorSets.length) pageDescriptorSets = Arrays.copyOf(pageDescriptorSets, pageIndex);
+		pageDescriptorSets[pageIndex - 1] = descriptorSet;
+	}
+
+	/**
+	 * Prepares the given strings on the given executor, such that the first {@link #recordCommands} call that uses
+	 * them won't need to wait for the font sizes to be computed or the glyphs to be rasterized. See
+	 * {@link GlyphPrewarmer}.
+	 * @param executor The executor on which the strings should be prepared
+	 * @param strings The strings that will be rendered soon
+	 * @param userData The user data that will be used to render the strings
+	 * @param heightAs The heights with which the strings will be rendered
+	 * @return A future that will be completed when the strings have been prepared. You must wait until it is completed
+	 * before destroying this renderer.
+	 */
+	public CompletableFuture<Void> prewarm(
+			Executor executor, Collection<String> strings, Object userData, int... heightAs
+	) {
+		return new GlyphPrewarmer(placer, rasterizer, executor).prewarm(strings, userData, heightAs);
+	}
+
 	/**
 	 * Records commands to:
 	 * <ol>
@@ -63,6 +139,7 @@ public class VulkanTextRenderer {
 	 *     <li>Binds the descriptor set of this renderer</li>
 	 *     <li>Sets push constant state</li>
 	 *     <li>Draw the text quads</li>
+	 *     <li>Bind the descriptor set of each spill-over page that is used, and draw its quads</li>
 	 * </ol>
 	 * Furthermore, it will
 	 * <ol>
@@ -75,10 +152,15 @@ public class VulkanTextRenderer {
 	 * @param framebufferWidth The width of the framebuffer/target image, in pixels
 	 * @param framebufferHeight The height of the framebuffer/target image, in pixels
 	 * @param requests The requests to be rendered
+	 * @return The frame token that was returned by {@link BitmapGlyphsBuffer#startFrame()}. When multiple renderers
+	 * share the same glyphs buffer (one renderer per frame in flight) and frame completion is tracked (see
+	 * {@link BitmapGlyphsBuffer#setTrackFrameCompletion(boolean)}), you must pass this token to
+	 * {@link BitmapGlyphsBuffer#frameCompleted(long)} once the submission has completed.
 	 * @throws QuadBufferOverflowException When the quad buffer of this renderer is too small to render this frame.
-	 * Consider recreating the renderer with a larger quad buffer when this happens.
+	 * Consider recreating the renderer with a larger quad buffer when this happens. When this method throws, the frame
+	 * has already been completed, so you must not pass its token to {@link BitmapGlyphsBuffer#frameCompleted(long)}.
 	 */
-	public void recordCommands(
+	public long recordCommands(
 			CommandRecorder recorder, int framebufferWidth, int framebufferHeight, List<TextPlaceRequest> requests
 	) {
 		var filteredRequests = new ArrayList<TextPlaceRequest>(requests.size());
@@ -91,43 +173,46 @@ public class VulkanTextRenderer {
 		}
 
 		var placedGlyphs = placer.place(filteredRequests, numTextPlacerThreads);
-		var filteredPlacedGlyphs = new ArrayList<PlacedGlyph>(placedGlyphs.size());
-		for (var placedGlyph : placedGlyphs) {
-			if (placedGlyph.minX < framebufferWidth &&
-					placedGlyph.minX > -5 * placedGlyph.glyph.scale * placedGlyph.glyph.size
-			) {
-				filteredPlacedGlyphs.add(placedGlyph);
-			}
-		}
 
-		glyphsBuffer.startFrame();
+		long frameToken = glyphsBuffer.startFrame();
+		try {
+			quadWriter.start(memAddress(quadBuffer), quadBuffer.remaining() / QUAD_INTS);
+			int numQuads = glyphsBuffer.bufferGlyphs(
+					rasterizers, rasterizationExecutor, placedGlyphs,
+					0, 0, framebufferWidth - 1, framebufferHeight - 1, quadWriter
+			);
+			if (numQuads * QUAD_INTS > quadBuffer.remaining()) {
+				throw new QuadBufferOverflowException(quadBuffer.remaining(), numQuads * QUAD_INTS);
+			}
 
-		var placedQuads = glyphsBuffer.bufferGlyphs(rasterizer, filteredPlacedGlyphs);
-		var filteredPlacedQuads = new ArrayList<GlyphQuad>(placedQuads.size());
-		for (var quad : placedQuads) {
-			if (quad.minX < framebufferWidth && quad.minY < framebufferHeight && quad.maxX >= 0 && quad.maxY >= 0) {
-				filteredPlacedQuads.add(quad);
+			vkCmdBindPipeline(recorder.commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.graphicsPipeline);
+			if (pipeline.hasDynamicViewport) {
+				recorder.dynamicViewportAndScissor(framebufferWidth, framebufferHeight);
 			}
-		}
+			recorder.bindGraphicsDescriptors(instance.pipelineLayout, descriptorSet);
+			pushConstants(recorder.commandBuffer, recorder.stack, framebufferWidth, framebufferHeight);
 
-		if (filteredPlacedQuads.size() * QUAD_INTS > quadBuffer.remaining()) {
-			throw new QuadBufferOverflowException(filteredPlacedQuads.size() * QUAD_INTS, quadBuffer.remaining());
-		}
+			vkCmdDraw(recorder.commandBuffer, 6 * quadWriter.numMainQuads, 1, 0, 0);
 
-		vkCmdBindPipeline(recorder.commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.graphicsPipeline);
-		if (pipeline.hasDynamicViewport) {
-			recorder.dynamicViewportAndScissor(framebufferWidth, framebufferHeight);
-		}
-		recorder.bindGraphicsDescriptors(instance.pipelineLayout, descriptorSet);
-		pushConstants(recorder.commandBuffer, recorder.stack, framebufferWidth, framebufferHeight);
+			// The quads of the spill-over pages are stored after the quads of page 0, grouped by page
+			int firstQuad = quadWriter.numMainQuads;
+			for (int pageIndex = 1; pageIndex < glyphsBuffer.getNumPages(); pageIndex++) {
+				int numPageQuads = quadWriter.writeSpilledQuads(pageIndex, firstQuad);
+				if (numPageQuads == 0) continue;
+				if (pageIndex > pageDescriptorSets.length || pageDescriptorSets[pageIndex - 1] == VK_NULL_HANDLE) {
+					throw new IllegalStateException("Missing descriptor set for page " + pageIndex);
+				}
 
-		int quadIndex = 0;
-		for (var quad : filteredPlacedQuads) {
-			putQuad(memAddress(quadBuffer), quadIndex, quad);
-			quadIndex += 1;
+				recorder.bindGraphicsDescriptors(instance.pipelineLayout, pageDescriptorSets[pageIndex - 1]);
+				vkCmdDraw(recorder.commandBuffer, 6 * numPageQuads, 1, 6 * firstQuad, 0);
+				firstQuad += numPageQuads;
+			}
+		} catch (RuntimeException failed) {
+			// The caller never receives the token, so it can't complete the frame, which would block evictions forever
+			if (glyphsBuffer.isTrackingFrameCompletion()) glyphsBuffer.frameCompleted(frameToken);
+			throw failed;
 		}
-
-		vkCmdDraw(recorder.commandBuffer, 6 * filteredPlacedQuads.size(), 1, 0, 0);
+		return frameToken;
 	}
 
 	private void pushConstants(
@@ -136,24 +221,92 @@ public class VulkanTextRenderer {
 	) {
 		vkCmdPushConstants(
 				commandBuffer, instance.pipelineLayout, VK_SHADER_STAGE_VERTEX_BIT | VK_SHADER_STAGE_FRAGMENT_BIT,
-				0, stack.ints(framebufferWidth, framebufferHeight)
+				0, stack.ints(framebufferWidth, framebufferHeight, glyphsBuffer.getStorageFormat().bitsPerTexel())
 		);
 	}
 
-	private void putQuad(long bufferAddress, int index, GlyphQuad quad) {
-		long address = bufferAddress + (long) QUAD_BYTES * index;
-		memPutInt(address, quad.minX);
-		memPutInt(address + 4, quad.minY);
-		memPutInt(address + 8, quad.getWidth());
-		memPutInt(address + 12, quad.getHeight());
-		memPutInt(address + 16, quad.bufferIndex);
-		memPutInt(address + 20, quad.sectionWidth);
-		memPutInt(address + 24, quad.scale);
+	/**
+	 * Puts the quads directly into the quad buffer, using the layout that the shaders expect:
+	 * (minX, minY, width, height, bufferIndex, sectionWidth, scale, color). The quads that don't fit are counted, but
+	 * not written. The quads of spill-over pages are collected separately, since each page needs its own draw call.
+	 */
+	private static class QuadWriter implements GlyphQuadSink {
+
+		private long address;
+		private int capacity;
+		int numMainQuads;
 
-		int color = ColorPacker.rgba(0, 0, 0, 255);
-		if (quad.request.userData instanceof Integer) color = (Integer) quad.request.userData;
+		/**
+		 * The spilled quads: QUAD_INTS + 1 ints per quad, where the last int is the page index
+		 */
+		private int[] spilledQuads = new int[0];
+		private int numSpilledQuads;
+
+		void start(long address, int capacity) {
+			this.address = address;
+			this.capacity = capacity;
+			this.numMainQuads = 0;
+			this.numSpilledQuads = 0;
+		}
 
-		memPutInt(address + 28, color);
+		@Override
+		public void addQuad(
+				int page, int bufferIndex, int minX, int minY, int maxX, int maxY,
+				int scale, int sectionWidth, PlacedGlyph placedGlyph
+		) {
+			int color = ColorPacker.rgba(0, 0, 0, 255);
+			if (placedGlyph.request.userData instanceof Integer) color = (Integer) placedGlyph.request.userData;
+
+			if (page != 0) {
+				int offset = (QUAD_INTS + 1) * numSpilledQuads;
+				if (offset + QUAD_INTS + 1 > spilledQuads.length) {
+					spilledQuads = Arrays.copyOf(spilledQuads, Math.max(8 * (QUAD_INTS + 1), 2 * spilledQuads.length));
+				}
+				spilledQuads[offset] = minX;
+				spilledQuads[offset + 1] = minY;
+				spilledQuads[offset + 2] = 1 + maxX - minX;
+				spilledQuads[offset + 3] = 1 + maxY - minY;
+				spilledQuads[offset + 4] = bufferIndex;
+				spilledQuads[offset + 5] = sectionWidth;
+				spilledQuads[offset + 6] = scale;
+				spilledQuads[offset + 7] = color;
+				spilledQuads[offset + QUAD_INTS] = page;
+				numSpilledQuads += 1;
+				return;
+			}
+
+			if (numMainQuads < capacity) {
+				long quadAddress = address + (long) QUAD_BYTES * numMainQuads;
+				memPutInt(quadAddress, minX);
+				memPutInt(quadAddress + 4, minY);
+				memPutInt(quadAddress + 8, 1 + maxX - minX);
+				memPutInt(quadAddress + 12, 1 + maxY - minY);
+				memPutInt(quadAddress + 16, bufferIndex);
+				memPutInt(quadAddress + 20, sectionWidth);
+				memPutInt(quadAddress + 24, scale);
+				memPutInt(quadAddress + 28, color);
+			}
+			numMainQuads += 1;
+		}
+
+		/**
+		 * Writes the spilled quads of the given page to the quad buffer, starting at quad index {@code firstQuad}
+		 * @return The number of quads that were written
+		 */
+		int writeSpilledQuads(int page, int firstQuad) {
+			int numWritten = 0;
+			for (int index = 0; index < numSpilledQuads; index++) {
+				int offset = (QUAD_INTS + 1) * index;
+				if (spilledQuads[offset + QUAD_INTS] != page) continue;
+
+				long quadAddress = address + (long) QUAD_BYTES * (firstQuad + numWritten);
+				for (int intIndex = 0; intIndex < QUAD_INTS; intIndex++) {
+					memPutInt(quadAddress + 4L * intIndex, spilledQuads[offset + intIndex]);
+				}
+				numWritten += 1;
+			}
+			return numWritten;
+		}
 	}
 
 	/**
@@ -162,6 +315,6 @@ public class VulkanTextRenderer {
 	 */
 	public void destroy() {
 		placer.destroy();
-		rasterizer.destroy();
+		for (var rasterizer : rasterizers) rasterizer.destroy();
 	}
 }
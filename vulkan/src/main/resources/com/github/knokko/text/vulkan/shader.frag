@@ -5,6 +5,7 @@ layout(origin_upper_left) in vec4 gl_FragCoord;
 layout(push_constant) uniform pc {
 	int framebufferWidth;
 	int framebufferHeight;
+	int bitsPerTexel;
 };
 
 layout(set = 0, binding = 1) readonly buffer sb {
@@ -31,16 +32,19 @@ void main() {
 		return;
 	}
 
-	int intensityIndex = bufferIndex + offset.x / scale + (offset.y / scale) * sectionWidth;
-	int rawIntensityIndex = intensityIndex / 4;
-	int byteIntensityIndex = intensityIndex % 4;
-	uint rawIntensity = intensities[rawIntensityIndex];
-	uint intensity = (rawIntensity >> (8 * byteIntensityIndex)) & 255u;
+	int texelIndex = bufferIndex + offset.x / scale + (offset.y / scale) * sectionWidth;
+
+	// Texel i is stored in the bits starting at bit (i % texelsPerWord) * bitsPerTexel of word i / texelsPerWord
+	int texelsPerWord = 32 / bitsPerTexel;
+	uint rawIntensities = intensities[texelIndex / texelsPerWord];
+	uint mask = (1u << bitsPerTexel) - 1u;
+	uint texel = (rawIntensities >> ((texelIndex % texelsPerWord) * bitsPerTexel)) & mask;
+	float intensity = float(texel) / float(mask);
 
 	int red = rawColor & 255;
 	int green = (rawColor >> 8) & 255;
 	int blue = (rawColor >> 16) & 255;
 	int alpha = (rawColor >> 24) & 255;
 
-	outColor = vec4(red / 255.0, green / 255.0, blue / 255.0, (alpha / 255.0) * intensity / 255.0);
+	outColor = vec4(red / 255.0, green / 255.0, blue / 255.0, (alpha / 255.0) * intensity);
 }